@@ -0,0 +1,182 @@
+#include "edge_pipeline.h"
+#include "flam_log.h"
+
+#include <algorithm>
+#include <chrono>
+#include <vector>
+#include <opencv2/imgproc.hpp>
+
+namespace flam {
+
+namespace {
+
+int64_t nowNs() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(
+            std::chrono::steady_clock::now().time_since_epoch()).count();
+}
+
+} // namespace
+
+bool EdgePipeline::process(const uint8_t *nv21, int width, int height, uint32_t *outPixels,
+                           bool enableProcessing, StageTimings *timings, uint8_t *bitmapPixels,
+                           int pyramidLevels) {
+    StageTimings local;
+    StageTimings &t = timings != nullptr ? *timings : local;
+    t = StageTimings();
+
+    int64_t start;
+    const cv::Mat *output = &rgbMat;
+    if (enableProcessing && pyramidLevels > 0) {
+        // The NV21 Y plane already is the gray image: no RGB round trip at reduced scale
+        cv::Mat luma(height, width, CV_8UC1, const_cast<uint8_t *>(nv21));
+        try {
+            start = nowNs();
+            const cv::Mat *level = &luma;
+            for (int i = 0; i < pyramidLevels; i++) {
+                cv::Mat &next = pyramidMats[i % 2];
+                cv::pyrDown(*level, next);
+                level = &next;
+            }
+            t.pyramidNs = nowNs() - start;
+
+            start = nowNs();
+            cv::Canny(*level, edgesMat, kCannyLow, kCannyHigh);
+            t.cannyNs = nowNs() - start;
+
+            start = nowNs();
+            cv::cvtColor(edgesMat, processedMat, cv::COLOR_GRAY2RGB);
+            t.grayToRgbNs = nowNs() - start;
+        } catch (cv::Exception &e) {
+            LOGE("❌ OpenCV pyramid processing error: %s", e.what());
+            edgesMat.release(); // no mask for this frame, not the previous one's
+            return false;
+        }
+        output = &processedMat;
+        width = scaledSize(width, pyramidLevels);
+        height = scaledSize(height, pyramidLevels);
+        LOGV("✅ Canny edge detection applied at 1/%d scale: %dx%d", 1 << pyramidLevels, width, height);
+    } else {
+        // NV21 format: Y plane (width*height) + interleaved VU plane (width*height/2)
+        int yuvHeight = height + height / 2;
+        cv::Mat yuvMat(yuvHeight, width, CV_8UC1, const_cast<uint8_t *>(nv21));
+
+        start = nowNs();
+        try {
+            cv::cvtColor(yuvMat, rgbMat, cv::COLOR_YUV2RGB_NV21);
+        } catch (cv::Exception &e) {
+            LOGE("❌ OpenCV conversion error: %s", e.what());
+            return false;
+        } catch (...) {
+            LOGE("❌ Unknown exception during YUV to RGB conversion");
+            return false;
+        }
+        if (rgbMat.empty()) {
+            LOGE("❌ RGB Mat is empty after conversion!");
+            return false;
+        }
+        t.yuvToRgbNs = nowNs() - start;
+        LOGV("✅ YUV to RGB conversion successful: %dx%d", rgbMat.cols, rgbMat.rows);
+
+        if (enableProcessing) {
+            try {
+                start = nowNs();
+                cv::cvtColor(rgbMat, grayMat, cv::COLOR_RGB2GRAY);
+                t.grayNs = nowNs() - start;
+
+                start = nowNs();
+                cv::Canny(grayMat, edgesMat, kCannyLow, kCannyHigh);
+                t.cannyNs = nowNs() - start;
+
+                // Convert back to RGB for display
+                start = nowNs();
+                cv::cvtColor(edgesMat, processedMat, cv::COLOR_GRAY2RGB);
+                t.grayToRgbNs = nowNs() - start;
+                output = &processedMat;
+                LOGV("✅ Canny edge detection applied: %dx%d", edgesMat.cols, edgesMat.rows);
+            } catch (cv::Exception &e) {
+                LOGE("❌ OpenCV processing error: %s", e.what());
+                output = &rgbMat; // Fallback to original
+                edgesMat.release(); // so packEdgeBits cannot pack the previous frame's mask
+            }
+        } else {
+            edgesMat.release();
+        }
+    }
+
+    if (output->rows != height || output->cols != width) {
+        LOGE("Size mismatch: Mat(%d,%d) vs expected(%d,%d)", output->cols, output->rows, width, height);
+        return false;
+    }
+
+    // Pack as R G B A (OpenGL byte order on little-endian GL upload).
+    // Channel 2 goes to the top byte, matching the original packing.
+    // The bitmap copy is packed in the same pass while the row is in cache.
+    start = nowNs();
+    for (int y = 0; y < height; y++) {
+        const cv::Vec3b *row = output->ptr<cv::Vec3b>(y);
+        uint32_t *dst = outPixels + (size_t) y * width;
+        if (bitmapPixels == nullptr) {
+            for (int x = 0; x < width; x++) {
+                const cv::Vec3b &pixel = row[x];
+                dst[x] = ((uint32_t) pixel[2] << 24) | ((uint32_t) pixel[1] << 16) | ((uint32_t) pixel[0] << 8) | 0xFF;
+            }
+            continue;
+        }
+        uint8_t *bitmapRow = bitmapPixels + (size_t) y * width * 4;
+        for (int x = 0; x < width; x++) {
+            const cv::Vec3b &pixel = row[x];
+            dst[x] = ((uint32_t) pixel[2] << 24) | ((uint32_t) pixel[1] << 16) | ((uint32_t) pixel[0] << 8) | 0xFF;
+            uint8_t *out = bitmapRow + x * 4;
+            out[0] = pixel[0]; // R
+            out[1] = pixel[1]; // G
+            out[2] = pixel[2]; // B
+            out[3] = 0xFF;     // A
+        }
+    }
+    t.packNs = nowNs() - start;
+    return true;
+}
+
+bool EdgePipeline::warmUp(int width, int height, int pyramidLevels) {
+    if (width <= 0 || height <= 0) {
+        return false;
+    }
+    // Checkerboard-ish luma so Canny's hysteresis actually runs; neutral chroma
+    std::vector<uint8_t> nv21((size_t) width * height + (size_t) width * height / 2, 128);
+    for (int y = 0; y < height; y++) {
+        uint8_t *row = nv21.data() + (size_t) y * width;
+        for (int x = 0; x < width; x++) {
+            row[x] = (uint8_t) (((x >> 4) ^ (y >> 4)) & 1 ? 200 : 40);
+        }
+    }
+    std::vector<uint32_t> pixels((size_t) scaledSize(width, pyramidLevels) * scaledSize(height, pyramidLevels));
+    int64_t start = nowNs();
+    bool ok = process(nv21.data(), width, height, pixels.data(), true, nullptr, nullptr, pyramidLevels);
+    LOGI("🔥 Pipeline warm-up %dx%d (pyramid levels %d): %s in %lld us", width, height, pyramidLevels,
+         ok ? "ok" : "failed", (long long) ((nowNs() - start) / 1000));
+    return ok;
+}
+
+bool EdgePipeline::packEdgeBits(uint8_t *out, size_t capacity) const {
+    if (edgesMat.empty()) {
+        return false;
+    }
+    size_t pixels = (size_t) edgesMat.rows * edgesMat.cols;
+    size_t bytes = (pixels + 63) / 64 * 8;
+    if (capacity < bytes) {
+        return false;
+    }
+    std::fill(out, out + bytes, 0);
+    size_t bit = 0;
+    for (int y = 0; y < edgesMat.rows; y++) {
+        const uint8_t *row = edgesMat.ptr<uint8_t>(y);
+        for (int x = 0; x < edgesMat.cols; x++, bit++) {
+            if (row[x]) {
+                out[bit >> 3] |= (uint8_t) (1u << (bit & 7));
+            }
+        }
+    }
+    return true;
+}
+
+} // namespace flam
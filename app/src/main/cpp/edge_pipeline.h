@@ -0,0 +1,72 @@
+#ifndef FLAM_EDGE_PIPELINE_H
+#define FLAM_EDGE_PIPELINE_H
+
+#include <cstdint>
+#include <opencv2/core.hpp>
+
+namespace flam {
+
+// Per-stage wall time of the last EdgePipeline::process call, in nanoseconds
+struct StageTimings {
+    int64_t yuvToRgbNs = 0;
+    int64_t grayNs = 0;
+    int64_t pyramidNs = 0;
+    int64_t cannyNs = 0;
+    int64_t grayToRgbNs = 0;
+    int64_t packNs = 0;
+
+    int64_t totalNs() const {
+        return yuvToRgbNs + grayNs + pyramidNs + cannyNs + grayToRgbNs + packNs;
+    }
+};
+
+// OpenCV processing core, free of JNI so it also builds as a host Linux library.
+// Intermediate Mats are members and are reused across frames of the same size.
+// Not thread-safe: one instance per processing thread.
+class EdgePipeline {
+public:
+    static constexpr double kCannyLow = 50;
+    static constexpr double kCannyHigh = 150;
+
+    // nv21: width*height luma followed by width*height/2 interleaved VU bytes.
+    // outPixels: width*height packed pixels (R<<24 | G<<16 | B<<8 | A) for GL upload.
+    // bitmapPixels (optional): width*height*4 bytes in android.graphics.Bitmap ARGB_8888
+    // memory order (R, G, B, A), ready for Bitmap.copyPixelsFromBuffer.
+    // pyramidLevels > 0 (edges only): Canny runs on the luma plane after that many
+    // cv::pyrDown levels, skipping the RGB conversion, and both outputs are
+    // scaledSize(width, levels) x scaledSize(height, levels) pixels instead.
+    // Returns false (and leaves the outputs untouched) if OpenCV fails.
+    bool process(const uint8_t *nv21, int width, int height, uint32_t *outPixels,
+                 bool enableProcessing, StageTimings *timings = nullptr,
+                 uint8_t *bitmapPixels = nullptr, int pyramidLevels = 0);
+
+    // Runs one synthetic width x height frame through the edge path so every Mat for
+    // that size (and OpenCV's own lazy state) is allocated before the first real frame.
+    bool warmUp(int width, int height, int pyramidLevels = 0);
+
+    // Size of one dimension after pyramidLevels pyrDown steps (each rounds up)
+    static int scaledSize(int size, int pyramidLevels) {
+        for (int i = 0; i < pyramidLevels; i++) {
+            size = (size + 1) / 2;
+        }
+        return size;
+    }
+
+    // Edge mask (CV_8UC1, 0/255) of the last processed frame; empty if processing was disabled or Canny failed
+    const cv::Mat &edges() const { return edgesMat; }
+
+    // Packs the last edge mask as LSB-first bits (bit i = pixel i, row-major), zero-padded
+    // to whole 64-bit words, for EdgeDeltaEncoder. False if there is no mask or out is too small.
+    bool packEdgeBits(uint8_t *out, size_t capacity) const;
+
+private:
+    cv::Mat rgbMat;
+    cv::Mat grayMat;
+    cv::Mat pyramidMats[2]; // ping-pong pyrDown targets
+    cv::Mat edgesMat;
+    cv::Mat processedMat;
+};
+
+} // namespace flam
+
+#endif // FLAM_EDGE_PIPELINE_H
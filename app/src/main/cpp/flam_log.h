@@ -0,0 +1,26 @@
+#ifndef FLAM_LOG_H
+#define FLAM_LOG_H
+
+// Logging shared by the Android (logcat) and host Linux (stderr) builds.
+// LOGV is for per-frame detail and compiles out unless FLAM_VERBOSE_LOGGING is set,
+// so it does not distort processing-time measurements.
+
+#define LOG_TAG "OpenCVProcessing"
+
+#ifdef __ANDROID__
+#include <android/log.h>
+#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#else
+#include <cstdio>
+#define LOGI(...) do { fprintf(stderr, "I/" LOG_TAG ": " __VA_ARGS__); fputc('\n', stderr); } while (0)
+#define LOGE(...) do { fprintf(stderr, "E/" LOG_TAG ": " __VA_ARGS__); fputc('\n', stderr); } while (0)
+#endif
+
+#ifdef FLAM_VERBOSE_LOGGING
+#define LOGV(...) LOGI(__VA_ARGS__)
+#else
+#define LOGV(...) do { } while (0)
+#endif
+
+#endif // FLAM_LOG_H
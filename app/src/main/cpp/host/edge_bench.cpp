@@ -0,0 +1,262 @@
+// Host benchmark for flam::EdgePipeline: per-stage ns/frame and throughput.
+//
+//   edge_bench [--iterations N] [--warmup N] [--raw] [--bitmap] [--scales]
+//              [--streams N [--slots N]] [frame_WxH.nv21 ...]
+//
+// --bitmap also fills the Bitmap-ready RGBA copy used by FrameSender on send frames.
+// --scales runs edges at full, 1/2 and 1/4 scale (FrameProcessor's ProcessingScale) and
+// scores each reduced mask against the full-scale one: precision/recall/F1 of edge
+// pixels, matched within one reduced-scale pixel after nearest-neighbour upsampling.
+// --streams feeds N concurrent streams (one thread and EdgePipeline each, like one
+// FrameProcessor per camera) through a shared StreamGate of --slots slots
+// (default 2, as on the device) and reports per-stream throughput and queue wait.
+//
+// Without input files it runs synthetic 480p/720p/1080p frames.
+
+#include <chrono>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <thread>
+#include <vector>
+
+#include <opencv2/imgproc.hpp>
+
+#include "edge_pipeline.h"
+#include "nv21_io.h"
+#include "stream_gate.h"
+
+using flam::EdgePipeline;
+using flam::StageTimings;
+using flam::host::Nv21Frame;
+
+struct EdgeQuality {
+    double precision = 1;
+    double recall = 1;
+    double f1 = 1;
+};
+
+// Scores a reduced-scale mask against the full-scale mask of the same frame
+static EdgeQuality scoreAgainstFullScale(const cv::Mat &reference, const cv::Mat &scaled, int pyramidLevels) {
+    cv::Mat upsampled;
+    cv::resize(scaled, upsampled, reference.size(), 0, 0, cv::INTER_NEAREST);
+    int tolerance = 1 << pyramidLevels;
+    cv::Mat kernel = cv::getStructuringElement(cv::MORPH_RECT, cv::Size(2 * tolerance + 1, 2 * tolerance + 1));
+    cv::Mat referenceNear;
+    cv::Mat upsampledNear;
+    cv::dilate(reference, referenceNear, kernel);
+    cv::dilate(upsampled, upsampledNear, kernel);
+
+    EdgeQuality quality;
+    int predicted = cv::countNonZero(upsampled);
+    int actual = cv::countNonZero(reference);
+    if (predicted > 0) {
+        quality.precision = (double) cv::countNonZero(upsampled & referenceNear) / predicted;
+    }
+    if (actual > 0) {
+        quality.recall = (double) cv::countNonZero(reference & upsampledNear) / actual;
+    }
+    double sum = quality.precision + quality.recall;
+    quality.f1 = sum > 0 ? 2 * quality.precision * quality.recall / sum : 0;
+    return quality;
+}
+
+static void runBenchmark(const Nv21Frame &frame, int warmup, int iterations, bool enableProcessing,
+                         bool bitmap, int pyramidLevels, const cv::Mat *reference) {
+    EdgePipeline pipeline;
+    int outWidth = EdgePipeline::scaledSize(frame.width, pyramidLevels);
+    int outHeight = EdgePipeline::scaledSize(frame.height, pyramidLevels);
+    std::vector<uint32_t> output((size_t) outWidth * outHeight);
+    std::vector<uint8_t> bitmapPixels(bitmap ? (size_t) outWidth * outHeight * 4 : 0);
+    uint8_t *bitmapOut = bitmap ? bitmapPixels.data() : nullptr;
+    StageTimings timings;
+    StageTimings sum;
+
+    for (int i = 0; i < warmup; i++) {
+        pipeline.process(frame.data.data(), frame.width, frame.height, output.data(), enableProcessing,
+                         nullptr, bitmapOut, pyramidLevels);
+    }
+
+    auto start = std::chrono::steady_clock::now();
+    for (int i = 0; i < iterations; i++) {
+        if (!pipeline.process(frame.data.data(), frame.width, frame.height, output.data(),
+                              enableProcessing, &timings, bitmapOut, pyramidLevels)) {
+            std::fprintf(stderr, "❌ %s: processing failed\n", frame.name.c_str());
+            return;
+        }
+        sum.yuvToRgbNs += timings.yuvToRgbNs;
+        sum.grayNs += timings.grayNs;
+        sum.pyramidNs += timings.pyramidNs;
+        sum.cannyNs += timings.cannyNs;
+        sum.grayToRgbNs += timings.grayToRgbNs;
+        sum.packNs += timings.packNs;
+    }
+    double wallNs = (double) std::chrono::duration_cast<std::chrono::nanoseconds>(
+            std::chrono::steady_clock::now() - start).count();
+
+    char scale[8];
+    std::snprintf(scale, sizeof(scale), "1/%d", 1 << pyramidLevels);
+    std::printf("%-24s %5dx%-5d %-5s %-5s %10lld %10lld %10lld %10lld %10lld %10lld %11lld %9.1f",
+                frame.name.c_str(), frame.width, frame.height, enableProcessing ? "edges" : "raw",
+                pyramidLevels > 0 ? scale : "1x",
+                (long long) (sum.yuvToRgbNs / iterations),
+                (long long) (sum.grayNs / iterations),
+                (long long) (sum.pyramidNs / iterations),
+                (long long) (sum.cannyNs / iterations),
+                (long long) (sum.grayToRgbNs / iterations),
+                (long long) (sum.packNs / iterations),
+                (long long) (sum.totalNs() / iterations),
+                iterations * 1e9 / wallNs);
+    if (reference != nullptr) {
+        EdgeQuality quality = scoreAgainstFullScale(*reference, pipeline.edges(), pyramidLevels);
+        std::printf(" %9.3f %9.3f %9.3f", quality.precision, quality.recall, quality.f1);
+    }
+    std::printf("\n");
+}
+
+// Every stream pushes its frames through the same gate as fast as the gate admits them
+static void runStreams(const Nv21Frame &frame, int warmup, int iterations, bool enableProcessing,
+                       int streamCount, unsigned slots) {
+    flam::StreamGate gate(slots);
+    std::vector<int> ids;
+    std::vector<std::thread> producers;
+    std::vector<double> wallNs(streamCount);
+    for (int s = 0; s < streamCount; s++) {
+        ids.push_back(gate.openStream());
+    }
+    auto wallStart = std::chrono::steady_clock::now();
+    for (int s = 0; s < streamCount; s++) {
+        producers.emplace_back([&, s] {
+            EdgePipeline pipeline;
+            std::vector<uint32_t> output((size_t) frame.width * frame.height);
+            // Inline on this thread once admitted, as on the device's analyzer threads
+            auto process = [&] {
+                flam::StreamGate::Pass pass(gate, ids[s]);
+                pipeline.process(frame.data.data(), frame.width, frame.height, output.data(), enableProcessing);
+            };
+            for (int i = 0; i < warmup; i++) {
+                process();
+            }
+            auto start = std::chrono::steady_clock::now();
+            for (int i = 0; i < iterations; i++) {
+                process();
+            }
+            wallNs[s] = (double) std::chrono::duration_cast<std::chrono::nanoseconds>(
+                    std::chrono::steady_clock::now() - start).count();
+        });
+    }
+    for (auto &producer : producers) {
+        producer.join();
+    }
+    double totalWallNs = (double) std::chrono::duration_cast<std::chrono::nanoseconds>(
+            std::chrono::steady_clock::now() - wallStart).count();
+
+    for (int s = 0; s < streamCount; s++) {
+        // Gate stats include the warm-up frames
+        flam::StreamGate::StreamStats stats = gate.stats(ids[s]);
+        uint64_t jobs = stats.jobs > 0 ? stats.jobs : 1;
+        std::printf("%-24s %5dx%-5d %-5s %6d %7u %12lld %12lld %9.1f\n",
+                    frame.name.c_str(), frame.width, frame.height, enableProcessing ? "edges" : "raw",
+                    s, gate.slotCount(),
+                    (long long) (stats.queueWaitNs / (int64_t) jobs / 1000),
+                    (long long) (stats.runNs / (int64_t) jobs / 1000),
+                    iterations * 1e9 / wallNs[s]);
+    }
+    std::printf("%-24s %5dx%-5d %-5s %6s %7u %12s %12s %9.1f\n",
+                frame.name.c_str(), frame.width, frame.height, enableProcessing ? "edges" : "raw",
+                "all", gate.slotCount(), "", "",
+                (double) streamCount * (warmup + iterations) * 1e9 / totalWallNs);
+}
+
+int main(int argc, char **argv) {
+    int iterations = 200;
+    int warmup = 20;
+    bool enableProcessing = true;
+    bool bitmap = false;
+    bool scales = false;
+    int streams = 0;
+    int slots = 2;
+    std::vector<std::string> inputs;
+
+    for (int i = 1; i < argc; i++) {
+        if (std::strcmp(argv[i], "--iterations") == 0 && i + 1 < argc) {
+            iterations = std::atoi(argv[++i]);
+        } else if (std::strcmp(argv[i], "--warmup") == 0 && i + 1 < argc) {
+            warmup = std::atoi(argv[++i]);
+        } else if (std::strcmp(argv[i], "--raw") == 0) {
+            enableProcessing = false;
+        } else if (std::strcmp(argv[i], "--bitmap") == 0) {
+            bitmap = true;
+        } else if (std::strcmp(argv[i], "--scales") == 0) {
+            scales = true;
+        } else if (std::strcmp(argv[i], "--streams") == 0 && i + 1 < argc) {
+            streams = std::atoi(argv[++i]);
+        } else if (std::strcmp(argv[i], "--slots") == 0 && i + 1 < argc) {
+            slots = std::atoi(argv[++i]);
+        } else {
+            inputs.emplace_back(argv[i]);
+        }
+    }
+    if (iterations <= 0) {
+        std::fprintf(stderr, "❌ --iterations must be positive\n");
+        return 2;
+    }
+
+    std::vector<Nv21Frame> frames;
+    if (inputs.empty()) {
+        const int sizes[][2] = {{640, 480}, {1280, 720}, {1920, 1080}};
+        for (const auto &size : sizes) {
+            frames.push_back(flam::host::syntheticNv21(size[0], size[1]));
+        }
+    } else {
+        for (const auto &path : inputs) {
+            Nv21Frame frame;
+            if (!flam::host::loadNv21(path, frame)) {
+                return 1;
+            }
+            frames.push_back(std::move(frame));
+        }
+    }
+
+    if (scales && !enableProcessing) {
+        std::fprintf(stderr, "❌ --scales only applies to edge processing, not --raw\n");
+        return 2;
+    }
+
+    if (streams > 0) {
+        if (scales || slots <= 0) {
+            std::fprintf(stderr, "❌ --streams needs a positive --slots and cannot be combined with --scales\n");
+            return 2;
+        }
+        std::printf("%-24s %-11s %-5s %6s %7s %12s %12s %9s\n",
+                    "frame", "size", "mode", "stream", "slots", "queue us", "run us", "frames/s");
+        for (const auto &frame : frames) {
+            runStreams(frame, warmup, iterations, enableProcessing, streams, (unsigned) slots);
+        }
+        return 0;
+    }
+
+    std::printf("%-24s %-11s %-5s %-5s %10s %10s %10s %10s %10s %10s %11s %9s%s\n",
+                "frame", "size", "mode", "scale", "yuv2rgb", "gray", "pyramid", "canny", "gray2rgb", "pack",
+                "total ns", "frames/s", scales ? "  precision    recall        f1" : "");
+    for (const auto &frame : frames) {
+        if (!scales) {
+            runBenchmark(frame, warmup, iterations, enableProcessing, bitmap, 0, nullptr);
+            continue;
+        }
+        // Full-scale mask of this frame as the quality reference
+        EdgePipeline referencePipeline;
+        std::vector<uint32_t> referenceOutput((size_t) frame.width * frame.height);
+        if (!referencePipeline.process(frame.data.data(), frame.width, frame.height,
+                                       referenceOutput.data(), true)) {
+            std::fprintf(stderr, "❌ %s: reference processing failed\n", frame.name.c_str());
+            return 1;
+        }
+        cv::Mat reference = referencePipeline.edges().clone();
+        for (int levels = 0; levels <= 2; levels++) {
+            runBenchmark(frame, warmup, iterations, true, bitmap, levels, &reference);
+        }
+    }
+    return 0;
+}
@@ -0,0 +1,233 @@
+// Golden-image test for flam::EdgePipeline.
+//
+//   edge_golden <dir> [--update] [--tolerance FRACTION]
+//   edge_golden --synthetic
+//
+// Every <name>_<W>x<H>.nv21 in <dir> is run through the pipeline and its edge
+// mask compared with <name>_<W>x<H>.edges.pgm. A small fraction of differing
+// pixels is allowed (default 0.1%) because Canny output can shift by a pixel
+// between OpenCV builds / SIMD dispatch paths. --update (re)writes the goldens.
+// With no recorded frames in <dir> the run exits with kSkipped, which ctest
+// reports as skipped rather than passed.
+//
+// --synthetic needs no recorded data: it checks frames whose edges are known
+// by construction (a flat frame has none, a bright rectangle has them along its
+// border only) at full and reduced scale.
+
+#include <dirent.h>
+
+#include <algorithm>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <vector>
+
+#include <opencv2/core.hpp>
+
+#include "edge_pipeline.h"
+#include "nv21_io.h"
+
+using flam::host::Nv21Frame;
+
+// ctest SKIP_RETURN_CODE (see CMakeLists.txt)
+static const int kSkipped = 77;
+
+static std::vector<std::string> listFrames(const std::string &dir) {
+    std::vector<std::string> paths;
+    DIR *handle = opendir(dir.c_str());
+    if (handle == nullptr) {
+        return paths;
+    }
+    while (struct dirent *entry = readdir(handle)) {
+        std::string name = entry->d_name;
+        if (name.size() > 5 && name.compare(name.size() - 5, 5, ".nv21") == 0) {
+            paths.push_back(dir + "/" + name);
+        }
+    }
+    closedir(handle);
+    std::sort(paths.begin(), paths.end());
+    return paths;
+}
+
+// Flat 40-luma frame with a 220-luma rectangle [left, right) x [top, bottom), neutral chroma
+static Nv21Frame rectangleNv21(int width, int height, int left, int top, int right, int bottom) {
+    Nv21Frame frame;
+    frame.width = width;
+    frame.height = height;
+    frame.data.assign((size_t) width * height * 3 / 2, 128);
+    for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+            bool inside = x >= left && x < right && y >= top && y < bottom;
+            frame.data[(size_t) y * width + x] = inside ? 220 : 40;
+        }
+    }
+    return frame;
+}
+
+// Edge pixels of the mask that lie more than slack pixels from the rectangle's border,
+// and how many of the border's rows/columns have no edge pixel within slack
+struct BorderCheck {
+    int strayEdges = 0;
+    int uncoveredBorder = 0;
+    int borderLength = 0;
+};
+
+static BorderCheck checkBorder(const cv::Mat &edges, int left, int top, int right, int bottom, int slack) {
+    BorderCheck check;
+    auto near = [slack](int value, int line) { return std::abs(value - line) <= slack; };
+    for (int y = 0; y < edges.rows; y++) {
+        const uint8_t *row = edges.ptr<uint8_t>(y);
+        for (int x = 0; x < edges.cols; x++) {
+            if (row[x] == 0) {
+                continue;
+            }
+            bool withinX = x >= left - slack && x <= right - 1 + slack;
+            bool withinY = y >= top - slack && y <= bottom - 1 + slack;
+            bool onVertical = withinY && (near(x, left) || near(x, right - 1));
+            bool onHorizontal = withinX && (near(y, top) || near(y, bottom - 1));
+            if (!onVertical && !onHorizontal) {
+                check.strayEdges++;
+            }
+        }
+    }
+    // Corners are left to non-maximum suppression; check the straight runs between them
+    auto edgeNear = [&](int cx, int cy) {
+        for (int y = std::max(0, cy - slack); y <= std::min(edges.rows - 1, cy + slack); y++) {
+            for (int x = std::max(0, cx - slack); x <= std::min(edges.cols - 1, cx + slack); x++) {
+                if (edges.ptr<uint8_t>(y)[x] != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    };
+    for (int y = top + slack + 1; y < bottom - slack - 1; y++) {
+        check.borderLength += 2;
+        check.uncoveredBorder += !edgeNear(left, y) + !edgeNear(right - 1, y);
+    }
+    for (int x = left + slack + 1; x < right - slack - 1; x++) {
+        check.borderLength += 2;
+        check.uncoveredBorder += !edgeNear(x, top) + !edgeNear(x, bottom - 1);
+    }
+    return check;
+}
+
+static int runSynthetic() {
+    const int width = 160;
+    const int height = 120;
+    flam::EdgePipeline pipeline;
+    std::vector<uint32_t> output((size_t) width * height);
+    int failures = 0;
+
+    Nv21Frame flat = rectangleNv21(width, height, 0, 0, 0, 0);
+    if (!pipeline.process(flat.data.data(), width, height, output.data(), true)) {
+        std::printf("❌ flat: processing failed\n");
+        failures++;
+    } else {
+        int edges = cv::countNonZero(pipeline.edges());
+        std::printf("%s flat: %d edge pixels (expected 0)\n", edges == 0 ? "✅" : "❌", edges);
+        failures += edges != 0;
+    }
+
+    // Same rectangle at full, 1/2 and 1/4 scale; pyrDown blurs the step, so allow more slack
+    for (int levels = 0; levels <= 2; levels++) {
+        Nv21Frame frame = rectangleNv21(width, height, 40, 32, 120, 88);
+        if (!pipeline.process(frame.data.data(), width, height, output.data(), true, nullptr, nullptr, levels)) {
+            std::printf("❌ rectangle (levels %d): processing failed\n", levels);
+            failures++;
+            continue;
+        }
+        int scale = 1 << levels;
+        int slack = 2 + levels;
+        BorderCheck check = checkBorder(pipeline.edges(), 40 / scale, 32 / scale, 120 / scale, 88 / scale, slack);
+        // Straight border runs should be (almost) fully traced, with no edges elsewhere
+        bool pass = check.strayEdges == 0 && check.borderLength > 0
+                && check.uncoveredBorder * 10 <= check.borderLength;
+        std::printf("%s rectangle (levels %d, %dx%d): %d stray edge pixels, %d/%d border points uncovered\n",
+                    pass ? "✅" : "❌", levels, pipeline.edges().cols, pipeline.edges().rows,
+                    check.strayEdges, check.uncoveredBorder, check.borderLength);
+        failures += !pass;
+    }
+
+    std::printf("synthetic: %d failed\n", failures);
+    return failures == 0 ? 0 : 1;
+}
+
+int main(int argc, char **argv) {
+    std::string dir;
+    bool update = false;
+    double tolerance = 0.001;
+
+    for (int i = 1; i < argc; i++) {
+        if (std::strcmp(argv[i], "--update") == 0) {
+            update = true;
+        } else if (std::strcmp(argv[i], "--tolerance") == 0 && i + 1 < argc) {
+            tolerance = std::atof(argv[++i]);
+        } else if (std::strcmp(argv[i], "--synthetic") == 0) {
+            return runSynthetic();
+        } else {
+            dir = argv[i];
+        }
+    }
+    if (dir.empty()) {
+        std::fprintf(stderr, "usage: edge_golden <dir> [--update] [--tolerance FRACTION] | --synthetic\n");
+        return 2;
+    }
+
+    std::vector<std::string> paths = listFrames(dir);
+    if (paths.empty()) {
+        std::printf("⚠️ No recorded .nv21 frames in %s - skipped\n", dir.c_str());
+        return kSkipped;
+    }
+
+    flam::EdgePipeline pipeline;
+    int failures = 0;
+    for (const auto &path : paths) {
+        Nv21Frame frame;
+        if (!flam::host::loadNv21(path, frame)) {
+            failures++;
+            continue;
+        }
+        std::vector<uint32_t> output((size_t) frame.width * frame.height);
+        if (!pipeline.process(frame.data.data(), frame.width, frame.height, output.data(), true)) {
+            std::printf("❌ %s: processing failed\n", frame.name.c_str());
+            failures++;
+            continue;
+        }
+
+        std::string goldenPath = dir + "/" + frame.name + ".edges.pgm";
+        if (update) {
+            if (!flam::host::writePgm(goldenPath, pipeline.edges())) {
+                std::printf("❌ %s: could not write %s\n", frame.name.c_str(), goldenPath.c_str());
+                failures++;
+            } else {
+                std::printf("✅ %s: golden updated\n", frame.name.c_str());
+            }
+            continue;
+        }
+
+        cv::Mat golden;
+        if (!flam::host::readPgm(goldenPath, golden) ||
+            golden.cols != frame.width || golden.rows != frame.height) {
+            std::printf("❌ %s: missing or mis-sized golden %s (run with --update)\n",
+                        frame.name.c_str(), goldenPath.c_str());
+            failures++;
+            continue;
+        }
+
+        cv::Mat diff;
+        cv::compare(golden, pipeline.edges(), diff, cv::CMP_NE);
+        int mismatched = cv::countNonZero(diff);
+        double fraction = (double) mismatched / ((double) frame.width * frame.height);
+        bool pass = fraction <= tolerance;
+        std::printf("%s %s: %d pixels differ (%.4f%%, limit %.4f%%)\n", pass ? "✅" : "❌",
+                    frame.name.c_str(), mismatched, fraction * 100.0, tolerance * 100.0);
+        if (!pass) {
+            failures++;
+        }
+    }
+
+    std::printf("%zu frames, %d failed\n", paths.size(), failures);
+    return failures == 0 ? 0 : 1;
+}
@@ -0,0 +1,127 @@
+// Parity test for the web viewer's edge kernel (web/wasm/edge_kernel.c, built natively)
+// against the OpenCV pipeline it documents parity with.
+//
+//   edge_kernel_parity [golden_dir] [--tolerance FRACTION]
+//
+// Every <name>_<W>x<H>.nv21 in golden_dir, plus synthetic 480p and 720p frames, runs
+// through flam::EdgePipeline for the OpenCV mask and, as RGBA from the same cvtColor,
+// through the kernel in canny mode. The kernel keeps the 1-pixel border ring at 0 where
+// OpenCV replicates it, which also changes NMS and hysteresis right next to the ring, so
+// pixels within kBorderBand of the frame edge are not compared. Elsewhere at most
+// FRACTION (default 0.5%) of OpenCV's edge pixels may differ; the slack covers grayscale
+// rounding, which differs by one level for a few RGB values between OpenCV versions.
+
+#include <dirent.h>
+
+#include <algorithm>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <vector>
+
+#include <opencv2/imgproc.hpp>
+
+#include "edge_pipeline.h"
+#include "nv21_io.h"
+
+extern "C" {
+uint8_t *edge_prepare(int width, int height);
+uint8_t *edge_output(void);
+uint32_t edge_process(int mode, int low, int high);
+}
+
+using flam::host::Nv21Frame;
+
+static const int kEdgeModeCanny = 1; // EDGE_MODE_CANNY in edge_kernel.c
+static const int kBorderBand = 2;
+
+static std::vector<std::string> listFrames(const std::string &dir) {
+    std::vector<std::string> paths;
+    DIR *handle = opendir(dir.c_str());
+    if (handle == nullptr) {
+        return paths;
+    }
+    while (struct dirent *entry = readdir(handle)) {
+        std::string name = entry->d_name;
+        if (name.size() > 5 && name.compare(name.size() - 5, 5, ".nv21") == 0) {
+            paths.push_back(dir + "/" + name);
+        }
+    }
+    closedir(handle);
+    std::sort(paths.begin(), paths.end());
+    return paths;
+}
+
+// Returns false if the kernel's mask differs from OpenCV's by more than tolerance
+static bool checkFrame(const Nv21Frame &frame, double tolerance) {
+    flam::EdgePipeline pipeline;
+    std::vector<uint32_t> output((size_t) frame.width * frame.height);
+    if (!pipeline.process(frame.data.data(), frame.width, frame.height, output.data(), true)) {
+        std::printf("❌ %s: OpenCV processing failed\n", frame.name.c_str());
+        return false;
+    }
+    const cv::Mat &reference = pipeline.edges();
+
+    // Same NV21 -> RGB conversion as the pipeline, with the alpha byte the kernel skips
+    cv::Mat yuv(frame.height + frame.height / 2, frame.width, CV_8UC1, (void *) frame.data.data());
+    cv::Mat rgba;
+    cv::cvtColor(yuv, rgba, cv::COLOR_YUV2RGBA_NV21);
+    uint8_t *input = edge_prepare(frame.width, frame.height);
+    if (input == nullptr) {
+        std::printf("❌ %s: kernel could not reserve memory\n", frame.name.c_str());
+        return false;
+    }
+    std::memcpy(input, rgba.data, (size_t) frame.width * frame.height * 4);
+    edge_process(kEdgeModeCanny, 50, 150);
+    const uint8_t *kernel = edge_output();
+
+    int referenceEdges = 0;
+    int mismatched = 0;
+    for (int y = kBorderBand; y < frame.height - kBorderBand; y++) {
+        const uint8_t *row = reference.ptr<uint8_t>(y);
+        for (int x = kBorderBand; x < frame.width - kBorderBand; x++) {
+            referenceEdges += row[x] != 0;
+            mismatched += (row[x] != 0) != (kernel[(size_t) y * frame.width + x] != 0);
+        }
+    }
+    double fraction = (double) mismatched / std::max(1, referenceEdges);
+    // A frame without edges must not pass by comparing nothing
+    bool pass = referenceEdges > 0 && fraction <= tolerance;
+    std::printf("%s %s: %d of %d OpenCV edge pixels differ (%.3f%%, limit %.3f%%)\n", pass ? "✅" : "❌",
+                frame.name.c_str(), mismatched, referenceEdges, fraction * 100.0, tolerance * 100.0);
+    return pass;
+}
+
+int main(int argc, char **argv) {
+    std::string dir;
+    double tolerance = 0.005;
+
+    for (int i = 1; i < argc; i++) {
+        if (std::strcmp(argv[i], "--tolerance") == 0 && i + 1 < argc) {
+            tolerance = std::atof(argv[++i]);
+        } else {
+            dir = argv[i];
+        }
+    }
+
+    std::vector<Nv21Frame> frames;
+    if (!dir.empty()) {
+        for (const auto &path : listFrames(dir)) {
+            Nv21Frame frame;
+            if (!flam::host::loadNv21(path, frame)) {
+                return 1;
+            }
+            frames.push_back(std::move(frame));
+        }
+    }
+    frames.push_back(flam::host::syntheticNv21(640, 480));
+    frames.push_back(flam::host::syntheticNv21(1280, 720));
+
+    int failures = 0;
+    for (const auto &frame : frames) {
+        failures += !checkFrame(frame, tolerance);
+    }
+    std::printf("%zu frames, %d failed\n", frames.size(), failures);
+    return failures == 0 ? 0 : 1;
+}
@@ -0,0 +1,102 @@
+#include "nv21_io.h"
+
+#include <cstdio>
+#include <fstream>
+
+namespace flam {
+namespace host {
+
+static std::string baseName(const std::string &path) {
+    size_t slash = path.find_last_of('/');
+    return slash == std::string::npos ? path : path.substr(slash + 1);
+}
+
+bool loadNv21(const std::string &path, Nv21Frame &frame) {
+    std::string file = baseName(path);
+    const std::string ext = ".nv21";
+    if (file.size() <= ext.size() || file.compare(file.size() - ext.size(), ext.size(), ext) != 0) {
+        return false;
+    }
+    std::string stem = file.substr(0, file.size() - ext.size());
+    size_t sep = stem.find_last_of('_');
+    if (sep == std::string::npos ||
+        std::sscanf(stem.c_str() + sep + 1, "%dx%d", &frame.width, &frame.height) != 2 ||
+        frame.width <= 0 || frame.height <= 0) {
+        std::fprintf(stderr, "❌ Expected <name>_<W>x<H>.nv21, got %s\n", file.c_str());
+        return false;
+    }
+    frame.name = stem;
+
+    std::ifstream in(path, std::ios::binary);
+    size_t expected = (size_t) frame.width * frame.height * 3 / 2;
+    frame.data.resize(expected);
+    in.read(reinterpret_cast<char *>(frame.data.data()), (std::streamsize) expected);
+    if ((size_t) in.gcount() != expected) {
+        std::fprintf(stderr, "❌ %s: expected %zu bytes, read %zu\n",
+                     file.c_str(), expected, (size_t) in.gcount());
+        return false;
+    }
+    return true;
+}
+
+Nv21Frame syntheticNv21(int width, int height, uint32_t seed) {
+    Nv21Frame frame;
+    frame.name = "synthetic";
+    frame.width = width;
+    frame.height = height;
+    frame.data.resize((size_t) width * height * 3 / 2);
+
+    uint32_t state = seed;
+    auto noise = [&state]() {
+        state = state * 1664525u + 1013904223u;
+        return (int) (state >> 28); // 0..15
+    };
+
+    uint8_t *y = frame.data.data();
+    for (int row = 0; row < height; row++) {
+        for (int col = 0; col < width; col++) {
+            int value = (col * 160) / width + (row * 64) / height;
+            // A few hard-edged blocks and stripes so Canny has something to find
+            if ((col / (width / 8 + 1) + row / (height / 6 + 1)) % 3 == 0) value += 70;
+            if ((col + row) % 97 < 3) value = 20;
+            value += noise();
+            y[row * width + col] = (uint8_t) (value > 255 ? 255 : value);
+        }
+    }
+    uint8_t *vu = y + (size_t) width * height;
+    for (int row = 0; row < height / 2; row++) {
+        for (int col = 0; col < width / 2; col++) {
+            vu[row * width + col * 2] = (uint8_t) (128 + (col * 40) / width);     // V
+            vu[row * width + col * 2 + 1] = (uint8_t) (128 - (row * 40) / height); // U
+        }
+    }
+    return frame;
+}
+
+bool readPgm(const std::string &path, cv::Mat &out) {
+    std::ifstream in(path, std::ios::binary);
+    std::string magic;
+    int width = 0, height = 0, maxValue = 0;
+    if (!(in >> magic >> width >> height >> maxValue) || magic != "P5" || maxValue != 255) {
+        return false;
+    }
+    in.get(); // single whitespace after the header
+    out.create(height, width, CV_8UC1);
+    in.read(reinterpret_cast<char *>(out.data), (std::streamsize) width * height);
+    return in.gcount() == (std::streamsize) width * height;
+}
+
+bool writePgm(const std::string &path, const cv::Mat &mask) {
+    if (mask.type() != CV_8UC1) {
+        return false;
+    }
+    std::ofstream out(path, std::ios::binary);
+    out << "P5\n" << mask.cols << " " << mask.rows << "\n255\n";
+    for (int row = 0; row < mask.rows; row++) {
+        out.write(reinterpret_cast<const char *>(mask.ptr<uint8_t>(row)), mask.cols);
+    }
+    return (bool) out;
+}
+
+} // namespace host
+} // namespace flam
@@ -0,0 +1,33 @@
+#ifndef FLAM_NV21_IO_H
+#define FLAM_NV21_IO_H
+
+#include <cstdint>
+#include <string>
+#include <vector>
+
+#include <opencv2/core.hpp>
+
+namespace flam {
+namespace host {
+
+struct Nv21Frame {
+    std::string name;
+    int width = 0;
+    int height = 0;
+    std::vector<uint8_t> data; // width*height luma + width*height/2 interleaved VU
+};
+
+// Parses "<name>_<W>x<H>.nv21" and reads the raw frame. Returns false on any mismatch.
+bool loadNv21(const std::string &path, Nv21Frame &frame);
+
+// Deterministic camera-like test frame (gradients, shapes and noise) for benchmarks
+Nv21Frame syntheticNv21(int width, int height, uint32_t seed = 1);
+
+// Binary PGM (P5) for 8-bit single-channel masks
+bool readPgm(const std::string &path, cv::Mat &out);
+bool writePgm(const std::string &path, const cv::Mat &mask);
+
+} // namespace host
+} // namespace flam
+
+#endif // FLAM_NV21_IO_H
@@ -0,0 +1,82 @@
+#include "jni_benchmark.h"
+
+// Natives for JniBenchmark: the same JNI transitions and array access modes as
+// processFrame, minus the processing, so call overhead can be timed on its own.
+
+namespace {
+
+void nativeEmpty(JNIEnv *, jclass) {
+}
+
+// GetPrimitiveArrayCritical on both frame arrays, as processFrame does now
+jint nativeCriticalArrays(JNIEnv *env, jclass, jbyteArray input, jintArray output) {
+    auto *in = static_cast<jbyte *>(env->GetPrimitiveArrayCritical(input, nullptr));
+    if (in == nullptr) {
+        return -1;
+    }
+    auto *out = static_cast<jint *>(env->GetPrimitiveArrayCritical(output, nullptr));
+    if (out == nullptr) {
+        env->ReleasePrimitiveArrayCritical(input, in, JNI_ABORT);
+        return -1;
+    }
+    out[0] = in[0];
+    jint result = out[0];
+    env->ReleasePrimitiveArrayCritical(output, out, 0);
+    env->ReleasePrimitiveArrayCritical(input, in, JNI_ABORT);
+    return result;
+}
+
+// Get<Type>ArrayElements with a copy-back release, as processFrame did before
+jint nativeCopiedArrays(JNIEnv *env, jclass, jbyteArray input, jintArray output) {
+    jbyte *in = env->GetByteArrayElements(input, nullptr);
+    jint *out = env->GetIntArrayElements(output, nullptr);
+    if (in == nullptr || out == nullptr) {
+        if (in != nullptr) env->ReleaseByteArrayElements(input, in, JNI_ABORT);
+        if (out != nullptr) env->ReleaseIntArrayElements(output, out, JNI_ABORT);
+        return -1;
+    }
+    out[0] = in[0];
+    jint result = out[0];
+    env->ReleaseIntArrayElements(output, out, 0);
+    env->ReleaseByteArrayElements(input, in, JNI_ABORT);
+    return result;
+}
+
+// Direct ByteBuffers: address lookup only, never copied
+jint nativeDirectBuffers(JNIEnv *env, jclass, jobject input, jobject output) {
+    auto *in = static_cast<jbyte *>(env->GetDirectBufferAddress(input));
+    auto *out = static_cast<jbyte *>(env->GetDirectBufferAddress(output));
+    if (in == nullptr || out == nullptr) {
+        return -1;
+    }
+    out[0] = in[0];
+    return out[0];
+}
+
+const JNINativeMethod kMethods[] = {
+        {"nativeEmpty", "()V", reinterpret_cast<void *>(nativeEmpty)},
+        {"nativeCriticalArrays", "([B[I)I", reinterpret_cast<void *>(nativeCriticalArrays)},
+        {"nativeCopiedArrays", "([B[I)I", reinterpret_cast<void *>(nativeCopiedArrays)},
+        {"nativeDirectBuffers", "(Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I",
+                reinterpret_cast<void *>(nativeDirectBuffers)},
+};
+
+} // namespace
+
+namespace flam {
+
+bool registerJniBenchmarkNatives(JNIEnv *env) {
+    jclass clazz = env->FindClass("com/flam/edgedetection/JniBenchmark");
+    if (clazz == nullptr) {
+        env->ExceptionClear();
+        return false;
+    }
+    bool ok = env->RegisterNatives(clazz, kMethods, sizeof(kMethods) / sizeof(kMethods[0])) == JNI_OK;
+    if (!ok) {
+        env->ExceptionClear();
+    }
+    env->DeleteLocalRef(clazz);
+    return ok;
+}
+
+} // namespace flam
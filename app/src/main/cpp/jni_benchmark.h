@@ -0,0 +1,14 @@
+#ifndef FLAM_JNI_BENCHMARK_H
+#define FLAM_JNI_BENCHMARK_H
+
+#include <jni.h>
+
+namespace flam {
+
+// Registers com.flam.edgedetection.JniBenchmark's natives. Returns false (with any
+// pending exception cleared) if the class is missing, e.g. stripped from a release build.
+bool registerJniBenchmarkNatives(JNIEnv *env);
+
+} // namespace flam
+
+#endif // FLAM_JNI_BENCHMARK_H
@@ -1,143 +1,235 @@
 #include <jni.h>
-#include <string>
-#include <android/log.h>
-#include <opencv2/opencv.hpp>
-#include <opencv2/imgproc.hpp>
+#include <cstdint>
+#include <time.h>
 
-#define LOG_TAG "OpenCVProcessing"
-#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
-#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#include "edge_pipeline.h"
+#include "flam_log.h"
+#include "jni_benchmark.h"
+#include "stream_gate.h"
 
-using namespace cv;
+// JNI glue for FrameProcessor. All OpenCV work lives in edge_pipeline.cpp, and the
+// shared stream gate in stream_gate.cpp; both also build on desktop Linux (see CMakeLists.txt).
 
-extern "C" {
+// CLOCK_MONOTONIC in ns - the same clock as Java's System.nanoTime() on Android
+static jlong monotonicNanos() {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (jlong) ts.tv_sec * 1000000000LL + ts.tv_nsec;
+}
+
+// Writes {entry, exit, gate queue wait} to the Java trace array on every return path
+// (the queue wait only if the array has room for it)
+struct NativeTraceScope {
+    JNIEnv *env;
+    jlongArray traceNanos;
+    jlong enterNanos;
+    jlong queueWaitNanos = 0;
 
-JNIEXPORT void JNICALL
-Java_com_flam_edgedetection_FrameProcessor_processFrame(
+    NativeTraceScope(JNIEnv *env, jlongArray traceNanos)
+            : env(env), traceNanos(traceNanos), enterNanos(monotonicNanos()) {}
+
+    ~NativeTraceScope() {
+        if (traceNanos == nullptr) {
+            return;
+        }
+        jsize length = env->GetArrayLength(traceNanos);
+        if (length >= 2) {
+            jlong values[3] = {enterNanos, monotonicNanos(), queueWaitNanos};
+            env->SetLongArrayRegion(traceNanos, 0, length >= 3 ? 3 : 2, values);
+        }
+    }
+};
+
+// Edge work from every camera stream passes one shared gate: with front and back
+// streams both active, OpenCV never occupies more than kMaxSlots cores, and the
+// gate's round-robin keeps one stream from starving the other. Each FrameProcessor
+// owns a StreamPipeline (created with nativeCreatePipeline); the gate admits at most
+// one caller per stream at a time, so the EdgePipeline needs no lock of its own.
+static constexpr unsigned kMaxSlots = 2;
+
+static flam::StreamGate &sharedGate() {
+    // Never destroyed: the gate must outlive any stream still in flight at process exit
+    static flam::StreamGate *gate = new flam::StreamGate(flam::StreamGate::defaultSlotCount(kMaxSlots));
+    return *gate;
+}
+
+struct StreamPipeline {
+    flam::EdgePipeline pipeline;
+    int gateStream;
+};
+
+static StreamPipeline *fromHandle(jlong handle) {
+    return reinterpret_cast<StreamPipeline *>(static_cast<intptr_t>(handle));
+}
+
+static jlong createPipeline(JNIEnv *env, jclass clazz) {
+    auto *stream = new StreamPipeline();
+    stream->gateStream = sharedGate().openStream();
+    LOGI("✅ Pipeline created for gate stream %d (%u slots)", stream->gateStream, sharedGate().slotCount());
+    return static_cast<jlong>(reinterpret_cast<intptr_t>(stream));
+}
+
+static void destroyPipeline(JNIEnv *env, jclass clazz, jlong handle) {
+    StreamPipeline *stream = fromHandle(handle);
+    if (stream == nullptr) {
+        return;
+    }
+    // Waits for a frame or warm-up of this stream still inside the gate or waiting for it
+    sharedGate().closeStream(stream->gateStream);
+    delete stream;
+}
+
+// Registered in JNI_OnLoad (no exported Java_* symbols, no lazy symbol lookup).
+// The frame arrays are accessed with GetPrimitiveArrayCritical: everything that
+// needs the JNIEnv (lengths, direct buffer addresses) happens before the critical
+// section, and nothing inside it calls back into the VM.
+//
+// The edge work runs inline on this (analyzer) thread once the shared gate admits
+// the stream. The wait for a slot (behind other streams' frames) happens before the
+// critical section, so a queued frame never holds the arrays or blocks the GC.
+//
+// Returns false if any requested output was not written for this frame (bad
+// arguments, stream closed, OpenCV failure, no edge mask to pack): the caller must
+// drop the frame rather than send what its buffers held before.
+static jboolean processFrame(
         JNIEnv *env,
-        jobject thiz,
+        jclass clazz,
+        jlong handle,
         jbyteArray yuvData,
         jint width,
         jint height,
         jintArray outputPixels,
-        jboolean enableProcessing) {
-    
-    LOGI("=== OpenCV Native Function Called ===");
-    LOGI("Processing frame: %dx%d, processing: %d", width, height, enableProcessing);
-    
-    // Verify OpenCV is working
-    try {
-        cv::Mat testMat(10, 10, CV_8UC1);
-        LOGI("✅ OpenCV is initialized and working!");
-    } catch (cv::Exception& e) {
-        LOGE("❌ OpenCV initialization failed: %s", e.what());
-        return;
+        jboolean enableProcessing,
+        jlongArray traceNanos,
+        jobject sendPixels,
+        jobject edgeBits,
+        jint pyramidLevels) {
+    NativeTraceScope traceScope(env, traceNanos);
+    StreamPipeline *stream = fromHandle(handle);
+    if (stream == nullptr) {
+        LOGE("❌ processFrame called without a pipeline");
+        return JNI_FALSE;
     }
-    
-    // Get input data
-    LOGI("Getting JNI array elements...");
-    jbyte* yuvBytes = env->GetByteArrayElements(yuvData, nullptr);
-    jint* outputInts = env->GetIntArrayElements(outputPixels, nullptr);
-    
-    if (yuvBytes == nullptr || outputInts == nullptr) {
-        LOGE("❌ Failed to get array elements from JNI");
-        if (yuvBytes == nullptr) LOGE("  - yuvBytes is NULL");
-        if (outputInts == nullptr) LOGE("  - outputInts is NULL");
-        return;
+    LOGV("Processing frame: %dx%d, processing: %d, pyramid levels: %d", width, height, enableProcessing, pyramidLevels);
+
+    // Outputs are at the reduced size when edges run on a pyramid level
+    if (!enableProcessing || pyramidLevels < 0) {
+        pyramidLevels = 0;
     }
-    
+    jint outWidth = flam::EdgePipeline::scaledSize(width, pyramidLevels);
+    jint outHeight = flam::EdgePipeline::scaledSize(height, pyramidLevels);
+
     jsize yuvLength = env->GetArrayLength(yuvData);
     jsize outputLength = env->GetArrayLength(outputPixels);
-    LOGI("Array lengths - YUV: %d, Output: %d (expected: %d)", 
-         yuvLength, outputLength, width * height);
-    
-    // Convert YUV to Mat
-    // NV21 format: Y plane (width*height) + interleaved VU plane (width*height/2)
-    int yuvHeight = height + height / 2;
-    Mat yuvMat(yuvHeight, width, CV_8UC1, (unsigned char*)yuvBytes);
-    Mat rgbMat;
-    
-    LOGI("YUV Mat created: %dx%d", yuvMat.cols, yuvMat.rows);
-    
-    // Convert YUV to RGB (NV21 format)
-    LOGI("Converting YUV to RGB using OpenCV...");
-    try {
-        cvtColor(yuvMat, rgbMat, COLOR_YUV2RGB_NV21);
-        LOGI("✅ YUV to RGB conversion successful: %dx%d", rgbMat.cols, rgbMat.rows);
-        if (rgbMat.empty()) {
-            LOGE("❌ RGB Mat is empty after conversion!");
-            env->ReleaseByteArrayElements(yuvData, yuvBytes, JNI_ABORT);
-            env->ReleaseIntArrayElements(outputPixels, outputInts, JNI_ABORT);
-            return;
-        }
-    } catch (cv::Exception& e) {
-        LOGE("❌ OpenCV conversion error: %s", e.what());
-        env->ReleaseByteArrayElements(yuvData, yuvBytes, JNI_ABORT);
-        env->ReleaseIntArrayElements(outputPixels, outputInts, JNI_ABORT);
-        return;
-    } catch (...) {
-        LOGE("❌ Unknown exception during YUV to RGB conversion");
-        env->ReleaseByteArrayElements(yuvData, yuvBytes, JNI_ABORT);
-        env->ReleaseIntArrayElements(outputPixels, outputInts, JNI_ABORT);
-        return;
+    if (yuvLength < width * height + width * height / 2 || outputLength < outWidth * outHeight) {
+        LOGE("❌ Array lengths too small - YUV: %d, Output: %d for %dx%d (output %dx%d)",
+             yuvLength, outputLength, width, height, outWidth, outHeight);
+        return JNI_FALSE;
     }
-    
-    Mat processedMat;
-    
-    if (enableProcessing) {
-        LOGI("Applying edge detection (Canny)...");
-        try {
-            // Convert to grayscale
-            Mat grayMat;
-            cvtColor(rgbMat, grayMat, COLOR_RGB2GRAY);
-            LOGI("✅ Converted to grayscale: %dx%d", grayMat.cols, grayMat.rows);
-            
-            // Apply Canny edge detection
-            Mat edges;
-            Canny(grayMat, edges, 50, 150);
-            LOGI("✅ Canny edge detection applied: %dx%d", edges.cols, edges.rows);
-            
-            // Convert back to RGB for display
-            cvtColor(edges, processedMat, COLOR_GRAY2RGB);
-            LOGI("✅ Converted edges back to RGB: %dx%d", processedMat.cols, processedMat.rows);
-        } catch (cv::Exception& e) {
-            LOGE("❌ OpenCV processing error: %s", e.what());
-            processedMat = rgbMat.clone(); // Fallback to original
+
+    // Optional direct ByteBuffer for FrameSender, filled in Bitmap (RGBA byte) order
+    uint8_t *bitmapPixels = nullptr;
+    if (sendPixels != nullptr) {
+        bitmapPixels = static_cast<uint8_t *>(env->GetDirectBufferAddress(sendPixels));
+        if (bitmapPixels == nullptr || env->GetDirectBufferCapacity(sendPixels) < (jlong) outWidth * outHeight * 4) {
+            LOGE("❌ Send buffer is not a direct buffer of %d bytes", outWidth * outHeight * 4);
+            return JNI_FALSE;
         }
-    } else {
-        LOGI("Processing disabled, using original frame");
-        processedMat = rgbMat.clone();
-    }
-    
-    // Convert Mat to int array (ARGB format)
-    // Ensure processedMat has correct size
-    if (processedMat.rows != height || processedMat.cols != width) {
-        LOGE("Size mismatch: Mat(%d,%d) vs expected(%d,%d)", 
-             processedMat.cols, processedMat.rows, width, height);
-        env->ReleaseByteArrayElements(yuvData, yuvBytes, JNI_ABORT);
-        env->ReleaseIntArrayElements(outputPixels, outputInts, JNI_ABORT);
-        return;
     }
-    
-    int* pixels = outputInts;
-    for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-            Vec3b pixel = processedMat.at<Vec3b>(y, x);
-            // Convert BGR to RGBA (OpenGL format: R G B A)
-            // OpenCV uses BGR, so pixel[0]=B, pixel[1]=G, pixel[2]=R
-            // OpenGL expects RGBA, so we need: R G B A
-            int rgba = (pixel[2] << 24) | (pixel[1] << 16) | (pixel[0] << 8) | 0xFF;
-            pixels[y * width + x] = rgba;
+
+    // Optional direct ByteBuffer for the delta-coded edge stream
+    uint8_t *bits = nullptr;
+    size_t bitsCapacity = 0;
+    if (edgeBits != nullptr) {
+        bits = static_cast<uint8_t *>(env->GetDirectBufferAddress(edgeBits));
+        if (bits == nullptr) {
+            LOGE("❌ Edge buffer is not a direct buffer");
+            return JNI_FALSE;
         }
+        bitsCapacity = (size_t) env->GetDirectBufferCapacity(edgeBits);
+    }
+
+    flam::StreamGate::Pass pass(sharedGate(), stream->gateStream);
+    traceScope.queueWaitNanos = pass.queueWaitNs();
+    if (!pass.admitted()) {
+        LOGE("❌ Gate stream %d is closed, frame dropped", stream->gateStream);
+        return JNI_FALSE;
+    }
+
+    // --- critical section: no JNIEnv calls until both arrays are released ---
+    auto *yuvBytes = static_cast<uint8_t *>(env->GetPrimitiveArrayCritical(yuvData, nullptr));
+    if (yuvBytes == nullptr) {
+        LOGE("❌ Failed to get YUV array from JNI");
+        return JNI_FALSE;
+    }
+    auto *outputInts = static_cast<uint32_t *>(env->GetPrimitiveArrayCritical(outputPixels, nullptr));
+    if (outputInts == nullptr) {
+        env->ReleasePrimitiveArrayCritical(yuvData, yuvBytes, JNI_ABORT);
+        LOGE("❌ Failed to get output array from JNI");
+        return JNI_FALSE;
+    }
+
+    flam::EdgePipeline &pipeline = stream->pipeline;
+    bool ok = pipeline.process(yuvBytes, width, height, outputInts, enableProcessing,
+                               nullptr, bitmapPixels, pyramidLevels);
+    // The edge buffer would otherwise still hold an earlier frame's mask
+    if (ok && bits != nullptr && !pipeline.packEdgeBits(bits, bitsCapacity)) {
+        LOGE("❌ No edge mask packed for this frame");
+        ok = false;
     }
-    
-    LOGI("✅ Converted %dx%d pixels to RGBA format", width, height);
-    LOGI("=== OpenCV Processing Complete ===");
-    
-    // Release resources
-    env->ReleaseByteArrayElements(yuvData, yuvBytes, JNI_ABORT);
-    env->ReleaseIntArrayElements(outputPixels, outputInts, 0);
+
+    // Copy output back only if it was written (a no-op unless the VM handed out a copy)
+    env->ReleasePrimitiveArrayCritical(outputPixels, outputInts, ok ? 0 : JNI_ABORT);
+    env->ReleasePrimitiveArrayCritical(yuvData, yuvBytes, JNI_ABORT);
+    // --- end of critical section ---
+    return ok ? JNI_TRUE : JNI_FALSE;
+}
+
+// Passes the gate like a frame, so it runs behind (never alongside) the stream's frames
+static jboolean warmUp(
+        JNIEnv *env,
+        jclass clazz,
+        jlong handle,
+        jint width,
+        jint height,
+        jint pyramidLevels) {
+    StreamPipeline *stream = fromHandle(handle);
+    if (stream == nullptr) {
+        return JNI_FALSE;
+    }
+    flam::StreamGate::Pass pass(sharedGate(), stream->gateStream);
+    if (!pass.admitted()) {
+        LOGE("❌ Gate stream %d is closed, warm-up skipped", stream->gateStream);
+        return JNI_FALSE;
+    }
+    return stream->pipeline.warmUp(width, height, pyramidLevels) ? JNI_TRUE : JNI_FALSE;
 }
 
-} // extern "C"
+static const JNINativeMethod kFrameProcessorMethods[] = {
+        {"nativeCreatePipeline", "()J", reinterpret_cast<void *>(createPipeline)},
+        {"nativeDestroyPipeline", "(J)V", reinterpret_cast<void *>(destroyPipeline)},
+        {"nativeProcessFrame", "(J[BII[IZ[JLjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;I)Z",
+                reinterpret_cast<void *>(processFrame)},
+        {"nativeWarmUp", "(JIII)Z", reinterpret_cast<void *>(warmUp)},
+};
 
+JNIEXPORT jint JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env = nullptr;
+    if (vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+    jclass frameProcessor = env->FindClass("com/flam/edgedetection/FrameProcessor");
+    if (frameProcessor == nullptr ||
+        env->RegisterNatives(frameProcessor, kFrameProcessorMethods,
+                             sizeof(kFrameProcessorMethods) / sizeof(kFrameProcessorMethods[0])) != JNI_OK) {
+        LOGE("❌ Failed to register FrameProcessor natives");
+        return JNI_ERR;
+    }
+    env->DeleteLocalRef(frameProcessor);
+    // The microbenchmark is optional: a missing class must not fail the library load
+    if (!flam::registerJniBenchmarkNatives(env)) {
+        LOGI("JniBenchmark natives not registered");
+    }
+    LOGI("✅ Native methods registered");
+    return JNI_VERSION_1_6;
+}
@@ -0,0 +1,114 @@
+#include "stream_gate.h"
+
+#include <algorithm>
+#include <chrono>
+#include <thread>
+
+namespace flam {
+
+static int64_t nowNs() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(
+            std::chrono::steady_clock::now().time_since_epoch()).count();
+}
+
+unsigned StreamGate::defaultSlotCount(unsigned maxSlots) {
+    unsigned cores = std::thread::hardware_concurrency();
+    return std::max(1u, std::min(maxSlots, cores / 2));
+}
+
+StreamGate::StreamGate(unsigned slots) : slots(std::max(1u, slots)) {}
+
+int StreamGate::openStream() {
+    std::lock_guard<std::mutex> guard(lock);
+    int id = nextStreamId++;
+    streams[id];
+    return id;
+}
+
+void StreamGate::closeStream(int stream) {
+    std::unique_lock<std::mutex> guard(lock);
+    auto it = streams.find(stream);
+    if (it == streams.end()) {
+        return;
+    }
+    it->second.closing = true;
+    changed.wait(guard, [&] { return it->second.waiting == 0 && !it->second.inside; });
+    streams.erase(it);
+}
+
+bool StreamGate::enter(int stream, int64_t *queueWaitNs) {
+    std::unique_lock<std::mutex> guard(lock);
+    auto it = streams.find(stream);
+    if (it == streams.end() || it->second.closing) {
+        return false;
+    }
+    Stream &s = it->second;
+    int64_t startNs = nowNs();
+    s.waiting++;
+    admit();
+    changed.wait(guard, [&] { return s.granted; });
+    s.granted = false;
+    s.waiting--;
+    s.admittedNs = nowNs();
+    int64_t waitNs = s.admittedNs - startNs;
+    s.stats.queueWaitNs += waitNs;
+    if (queueWaitNs != nullptr) {
+        *queueWaitNs = waitNs;
+    }
+    return true;
+}
+
+void StreamGate::leave(int stream) {
+    std::lock_guard<std::mutex> guard(lock);
+    auto it = streams.find(stream);
+    if (it == streams.end() || !it->second.inside) {
+        return;
+    }
+    Stream &s = it->second;
+    s.inside = false;
+    s.stats.jobs++;
+    s.stats.runNs += nowNs() - s.admittedNs;
+    active--;
+    admit();
+    // Also wakes closeStream, which waits for the stream to go idle
+    changed.notify_all();
+}
+
+StreamGate::StreamStats StreamGate::stats(int stream) const {
+    std::lock_guard<std::mutex> guard(lock);
+    auto it = streams.find(stream);
+    return it != streams.end() ? it->second.stats : StreamStats();
+}
+
+void StreamGate::admit() {
+    bool granted = false;
+    while (active < slots) {
+        // Start after the stream admitted last and wrap around, so every waiting
+        // stream gets a slot before any stream gets a second turn
+        auto it = streams.upper_bound(cursor);
+        auto chosen = streams.end();
+        for (size_t i = 0; i < streams.size(); i++, ++it) {
+            if (it == streams.end()) {
+                it = streams.begin();
+            }
+            if (it->second.waiting > 0 && !it->second.inside) {
+                chosen = it;
+                break;
+            }
+        }
+        if (chosen == streams.end()) {
+            break;
+        }
+        // inside is set at grant time so the stream cannot get a second slot
+        chosen->second.inside = true;
+        chosen->second.granted = true;
+        cursor = chosen->first;
+        active++;
+        granted = true;
+    }
+    if (granted) {
+        changed.notify_all();
+    }
+}
+
+} // namespace flam
@@ -0,0 +1,101 @@
+#ifndef FLAM_STREAM_GATE_H
+#define FLAM_STREAM_GATE_H
+
+#include <condition_variable>
+#include <cstdint>
+#include <map>
+#include <mutex>
+
+namespace flam {
+
+// Bounds how many camera streams run native edge work at once, free of JNI so it
+// also builds on the host. Callers run their work on their own thread between
+// enter() and leave(); when every slot is taken they wait, and freed slots go to
+// the waiting streams round-robin, so a stream that is always ready cannot starve
+// the others. At most one caller per stream is inside at a time, which keeps a
+// stream's frames in order and lets it own a non-thread-safe EdgePipeline.
+//
+// The work stays on the calling thread, so a JNI caller can wait for its turn
+// before it takes any critical array, and nothing blocks the GC while it queues.
+class StreamGate {
+public:
+    struct StreamStats {
+        uint64_t jobs = 0;       // completed enter/leave pairs
+        int64_t queueWaitNs = 0; // summed enter() -> admitted
+        int64_t runNs = 0;       // summed admitted -> leave()
+    };
+
+    // Holds a slot for its lifetime; check admitted() before doing the work
+    class Pass {
+    public:
+        Pass(StreamGate &gate, int stream) : gate(gate), stream(stream) {
+            entered = gate.enter(stream, &waitNs);
+        }
+        ~Pass() {
+            if (entered) {
+                gate.leave(stream);
+            }
+        }
+        Pass(const Pass &) = delete;
+        Pass &operator=(const Pass &) = delete;
+
+        bool admitted() const { return entered; }
+        int64_t queueWaitNs() const { return waitNs; }
+
+    private:
+        StreamGate &gate;
+        int stream;
+        bool entered = false;
+        int64_t waitNs = 0;
+    };
+
+    explicit StreamGate(unsigned slots);
+
+    StreamGate(const StreamGate &) = delete;
+    StreamGate &operator=(const StreamGate &) = delete;
+
+    // New stream id; ids are never reused
+    int openStream();
+
+    // Waits until no caller of the stream is inside or waiting, then forgets it
+    void closeStream(int stream);
+
+    // Blocks until the stream is admitted. False (not admitted, do not call leave)
+    // if the stream is unknown or closing. queueWaitNs, if given, receives the wait.
+    bool enter(int stream, int64_t *queueWaitNs = nullptr);
+
+    // Gives the slot to the next waiting stream
+    void leave(int stream);
+
+    StreamStats stats(int stream) const;
+
+    unsigned slotCount() const { return slots; }
+
+    // Slots for the shared gate: half the cores, at most maxSlots
+    static unsigned defaultSlotCount(unsigned maxSlots);
+
+private:
+    struct Stream {
+        int waiting = 0;      // callers blocked in enter()
+        bool granted = false; // a slot was handed to one of the waiters
+        bool inside = false;  // between admission and leave()
+        bool closing = false;
+        int64_t admittedNs = 0;
+        StreamStats stats;
+    };
+
+    // Hands free slots to waiting streams, round-robin after the cursor; lock held
+    void admit();
+
+    const unsigned slots;
+    mutable std::mutex lock;
+    std::condition_variable changed;
+    std::map<int, Stream> streams;
+    unsigned active = 0; // slots granted or in use
+    int nextStreamId = 1;
+    int cursor = 0;      // id of the stream admitted last
+};
+
+} // namespace flam
+
+#endif // FLAM_STREAM_GATE_H
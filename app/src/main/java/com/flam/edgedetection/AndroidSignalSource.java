@@ -0,0 +1,58 @@
+package com.flam.edgedetection;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+import com.flam.edgedetection.core.DeviceSignals;
+import com.flam.edgedetection.core.SignalSource;
+
+/**
+ * Device readings for the governor: PowerManager thermal status (API 29+, NONE
+ * below), the sticky battery broadcast, power-save mode, and the p95 of the
+ * per-frame processing stages from the current PipelineMetrics window.
+ */
+public class AndroidSignalSource implements SignalSource {
+    private final Context context;
+    private final PowerManager powerManager;
+
+    public AndroidSignalSource(Context context) {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    @Override
+    public DeviceSignals read() {
+        int thermalStatus = DeviceSignals.THERMAL_NONE;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermalStatus = powerManager.getCurrentThermalStatus();
+        }
+
+        int batteryPercent = -1;
+        boolean charging = false;
+        // Sticky broadcast: returns the last battery state without registering a receiver
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                batteryPercent = level * 100 / scale;
+            }
+            int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+            charging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+        }
+
+        // Analyzer- and GL-thread work per frame; the stages a profile change actually shrinks
+        PipelineMetrics.Snapshot metrics = PipelineMetrics.snapshot();
+        long frameP95Micros = metrics.get(PipelineMetrics.Stage.REPACK).p95Micros
+                + metrics.get(PipelineMetrics.Stage.NATIVE).p95Micros
+                + metrics.get(PipelineMetrics.Stage.GPU_EDGES).p95Micros;
+        long frameSamples = metrics.get(PipelineMetrics.Stage.REPACK).count;
+
+        return new DeviceSignals(thermalStatus, batteryPercent, charging, powerManager.isPowerSaveMode(),
+                frameP95Micros, frameSamples);
+    }
+}
@@ -4,6 +4,8 @@ import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 
+import com.flam.edgedetection.core.FrameSlot;
+
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
@@ -41,20 +43,48 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
     
     private int effectMode = 0; // 0=normal, 1=grayscale, 2=invert
     
+    /** Which path produces the edge image: OpenCV on the CPU, GpuEdgeEngine, or both side by side. */
+    public enum Engine {
+        CPU("CPU"),
+        GPU("GPU"),
+        PARITY("CPU | GPU");
+        
+        public final String label;
+        
+        Engine(String label) {
+            this.label = label;
+        }
+    }
+    
+    private volatile Engine engine = Engine.CPU;
+    private GpuEdgeEngine gpuEngine;
+    private boolean gpuEngineReady = false;
+    private boolean gpuOutputValid = false; // gpuEngine holds a processed frame
+    private int surfaceWidth;
+    private int surfaceHeight;
+    private int parityFrameCount = 0;
+    private volatile float lastParityMismatch = -1f;
+    
     private Context context;
     private GLSurfaceView glSurfaceView;
     private int program;
-    private int textureHandle;
     private FloatBuffer vertexBuffer;
     private FloatBuffer texCoordBuffer;
     
-    private int[] pixels;
-    private int frameWidth = 0;
-    private int frameHeight = 0;
-    private boolean frameUpdated = false;
-    private final Object frameLock = new Object();
+    // One slot and texture per camera stream (see FrameProcessor.setRenderer). Stream 0
+    // is the primary stream: it alone feeds the GPU engine and the parity view. With
+    // more than one stream the screen is tiled along its longer side.
+    public static final int MAX_STREAMS = 4;
+    private final StreamTexture[] streams = new StreamTexture[MAX_STREAMS];
+    private volatile int streamCount = 1;
     private int drawCallCount = 0; // Track draw calls for reduced logging
     
+    // Texture storage is allocated at the expected frame size up front and only
+    // reallocated when a frame of another size arrives
+    private volatile int expectedWidth = 640;
+    private volatile int expectedHeight = 480;
+    private volatile Runnable firstFrameListener;
+    
     // Quad vertices (full screen)
     private static final float[] QUAD_VERTICES = {
             -1.0f, -1.0f, 0.0f,
@@ -87,6 +117,10 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
         texCoordBuffer = tb.asFloatBuffer();
         texCoordBuffer.put(TEX_COORDS);
         texCoordBuffer.position(0);
+        
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = new StreamTexture();
+        }
     }
     
     public void setGLSurfaceView(GLSurfaceView glSurfaceView) {
@@ -114,6 +148,52 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
         return effectMode;
     }
     
+    /** Size of the first frames (e.g. from the previous run); call before the surface is created. */
+    public void setExpectedFrameSize(int width, int height) {
+        if (width > 0 && height > 0) {
+            this.expectedWidth = width;
+            this.expectedHeight = height;
+        }
+    }
+    
+    /**
+     * Number of camera streams shown side by side (1 to MAX_STREAMS). Textures are created
+     * with the surface, so raise it before then; lowering it (e.g. when a second camera
+     * could not be opened) works at any time.
+     */
+    public void setStreamCount(int count) {
+        this.streamCount = Math.max(1, Math.min(MAX_STREAMS, count));
+    }
+    
+    public int getStreamCount() {
+        return streamCount;
+    }
+    
+    /** Runs once on the GL thread after the first real frame has been drawn. */
+    public void setFirstFrameListener(Runnable listener) {
+        this.firstFrameListener = listener;
+    }
+    
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+    
+    public Engine cycleEngine() {
+        Engine[] engines = Engine.values();
+        engine = engines[(engine.ordinal() + 1) % engines.length];
+        return engine;
+    }
+    
+    /** Read by FrameProcessor on every frame to decide what to compute and publish. */
+    public Engine getEngine() {
+        return engine;
+    }
+    
+    /** Fraction of pixels where the GPU and OpenCV masks disagree at the last parity check, or -1. */
+    public float getLastParityMismatch() {
+        return lastParityMismatch;
+    }
+    
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         android.util.Log.d("EdgeDetectionRenderer", "=== 🎬 OpenGL Surface Created ===");
@@ -141,14 +221,27 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
             program = 0;
         }
         
-        // Generate texture
+        // One texture per stream, each with a placeholder (black image) so something is
+        // always drawn, sized for the expected frames so the first upload does not reallocate
+        int count = streamCount;
+        for (int i = 0; i < count; i++) {
+            createStreamTexture(streams[i]);
+        }
+        android.util.Log.d("EdgeDetectionRenderer", "✅ OpenGL setup complete! (" + count + " stream texture(s))");
+        
+        // New context: any previous engine's GL objects are gone with the old one
+        gpuEngine = new GpuEdgeEngine(vertexBuffer);
+        gpuEngineReady = gpuEngine.init();
+        gpuOutputValid = false;
+    }
+    
+    private void createStreamTexture(StreamTexture stream) {
         int[] textures = new int[1];
         GLES20.glGenTextures(1, textures, 0);
-        textureHandle = textures[0];
-        android.util.Log.d("EdgeDetectionRenderer", "✅ Texture created: " + textureHandle);
-        android.util.Log.d("EdgeDetectionRenderer", "✅ OpenGL setup complete!");
+        stream.texture = textures[0];
+        android.util.Log.d("EdgeDetectionRenderer", "✅ Texture created: " + stream.texture);
         
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, stream.texture);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, 
                                GLES20.GL_LINEAR);
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, 
@@ -158,20 +251,23 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, 
                                GLES20.GL_CLAMP_TO_EDGE);
         
-        // Initialize texture with a placeholder (black image) so something is always drawn
-        int[] placeholder = new int[640 * 480]; // Default size
+        stream.textureWidth = expectedWidth;
+        stream.textureHeight = expectedHeight;
+        int[] placeholder = new int[stream.textureWidth * stream.textureHeight];
         for (int i = 0; i < placeholder.length; i++) {
             placeholder[i] = 0x000000FF; // Black RGBA (R=0, G=0, B=0, A=255)
         }
         IntBuffer placeholderBuffer = IntBuffer.wrap(placeholder);
         GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 
-                           640, 480, 0, 
+                           stream.textureWidth, stream.textureHeight, 0, 
                            GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, placeholderBuffer);
         android.util.Log.d("EdgeDetectionRenderer", "✅ Texture initialized with placeholder");
     }
     
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
+        surfaceWidth = width;
+        surfaceHeight = height;
         GLES20.glViewport(0, 0, width, height);
     }
     
@@ -185,50 +281,167 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
         
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
         
-        synchronized (frameLock) {
-            // Always try to update texture if we have new frame data
-            if (frameUpdated && pixels != null && frameWidth > 0 && frameHeight > 0) {
+        int count = streamCount;
+        for (int i = 0; i < count; i++) {
+            uploadLatest(streams[i], i == 0);
+        }
+        
+        long drawStartTime = System.nanoTime();
+        
+        if (program == 0) {
+            android.util.Log.e("EdgeDetectionRenderer", "❌ Shader program is 0!");
+            return;
+        }
+        
+        if (count == 1) {
+            drawPrimary(0, 0, surfaceWidth, surfaceHeight);
+        } else {
+            // Equal tiles along the longer side: stream 0 on the left (landscape) or top (portrait)
+            boolean landscape = surfaceWidth >= surfaceHeight;
+            for (int i = 0; i < count; i++) {
+                int x = landscape ? surfaceWidth * i / count : 0;
+                int width = landscape ? surfaceWidth * (i + 1) / count - x : surfaceWidth;
+                int top = landscape ? 0 : surfaceHeight * i / count;
+                int height = landscape ? surfaceHeight : surfaceHeight * (i + 1) / count - top;
+                int y = landscape ? 0 : surfaceHeight - top - height; // GL viewports start at the bottom
+                if (i == 0) {
+                    drawPrimary(x, y, width, height);
+                } else {
+                    GLES20.glViewport(x, y, width, height);
+                    drawQuad(streams[i].texture);
+                }
+            }
+            GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+        }
+        
+        PipelineMetrics.record(PipelineMetrics.Stage.DRAW, System.nanoTime() - drawStartTime);
+        for (int i = 0; i < count; i++) {
+            StreamTexture stream = streams[i];
+            if (stream.displayedTrace != null) {
+                stream.displayedTrace.mark(FrameTrace.Hop.RENDER_DRAWN);
+                stream.displayedTrace = null;
+                Runnable listener = firstFrameListener;
+                if (listener != null) {
+                    firstFrameListener = null;
+                    listener.run();
+                }
+            }
+        }
+    }
+    
+    /** Upload the stream's latest frame (if any); the slot lock is not held during the upload. */
+    private void uploadLatest(StreamTexture stream, boolean primary) {
+        FrameSlot.Frame<FrameTrace> currentFrame = stream.current;
+        if (stream.slot.poll(currentFrame)) {
+            int[] pixels = currentFrame.pixels;
+            int frameWidth = currentFrame.width;
+            int frameHeight = currentFrame.height;
+            if (pixels != null && frameWidth > 0 && frameHeight > 0) {
                 if (drawCallCount % 30 == 0) {
-                    android.util.Log.d("EdgeDetectionRenderer", "✅ Updating texture: " + frameWidth + "x" + frameHeight + ", pixels: " + pixels.length);
+                    android.util.Log.d("EdgeDetectionRenderer", "✅ Updating texture " + stream.texture + ": " + frameWidth + "x" + frameHeight + ", pixels: " + pixels.length);
                 }
                 
                 try {
+                    long uploadStartTime = System.nanoTime();
                     // Update texture with new frame
                     IntBuffer pixelBuffer = IntBuffer.wrap(pixels);
-                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
-                    GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 
-                                       frameWidth, frameHeight, 0, 
-                                       GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixelBuffer);
+                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, stream.texture);
+                    if (frameWidth == stream.textureWidth && frameHeight == stream.textureHeight) {
+                        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, frameWidth, frameHeight,
+                                              GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixelBuffer);
+                    } else {
+                        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 
+                                           frameWidth, frameHeight, 0, 
+                                           GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixelBuffer);
+                        stream.textureWidth = frameWidth;
+                        stream.textureHeight = frameHeight;
+                    }
+                    PipelineMetrics.record(PipelineMetrics.Stage.UPLOAD, System.nanoTime() - uploadStartTime);
+                    markUploaded(stream, currentFrame.tag);
                     
                     // Check for OpenGL errors
                     int error = GLES20.glGetError();
                     if (error != GLES20.GL_NO_ERROR) {
-                        android.util.Log.e("EdgeDetectionRenderer", "❌ OpenGL error after glTexImage2D: " + error);
+                        android.util.Log.e("EdgeDetectionRenderer", "❌ OpenGL error after texture upload: " + error);
                     } else if (drawCallCount % 30 == 0) {
                         android.util.Log.d("EdgeDetectionRenderer", "✅ Texture updated successfully");
                     }
-                    
-                    frameUpdated = false;
                 } catch (Exception e) {
                     android.util.Log.e("EdgeDetectionRenderer", "❌ Error updating texture: " + e.getMessage());
                     e.printStackTrace();
                 }
-            } else if (drawCallCount % 30 == 0) {
-                android.util.Log.w("EdgeDetectionRenderer", "⚠️ No frame data - frameUpdated: " + frameUpdated + 
-                                   ", pixels: " + (pixels != null ? "OK" : "NULL") + 
-                                   ", size: " + frameWidth + "x" + frameHeight);
             }
+            if (primary && currentFrame.luma != null && frameWidth > 0 && frameHeight > 0) {
+                processOnGpu(stream, currentFrame.luma, frameWidth, frameHeight, pixels);
+            }
+            // The GPU engine copied the luma into its own buffer; the analyzer reuses the array
+            stream.slot.releaseLuma(currentFrame.luma);
+            // Release references so the pixel array can be collected
+            currentFrame.pixels = null;
+            currentFrame.luma = null;
+            currentFrame.tag = null;
+        } else if (primary && drawCallCount % 30 == 0) {
+            android.util.Log.w("EdgeDetectionRenderer", "⚠️ No new frame data since last draw");
         }
-        
-        // Always bind texture before drawing (even if no new frame)
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
-        
-        // Draw quad with texture (always draw, even if no new frame)
-        if (program == 0) {
-            android.util.Log.e("EdgeDetectionRenderer", "❌ Shader program is 0!");
+    }
+    
+    /** The primary stream in the given viewport, as the current engine shows it. */
+    private void drawPrimary(int x, int y, int width, int height) {
+        int texture = streams[0].texture;
+        Engine drawEngine = engine;
+        boolean gpuAvailable = gpuEngineReady && gpuOutputValid;
+        if (drawEngine == Engine.PARITY && gpuAvailable) {
+            // GPU result on the left, OpenCV result on the right
+            int half = width / 2;
+            GLES20.glViewport(x, y, half, height);
+            drawQuad(gpuEngine.getOutputTexture());
+            GLES20.glViewport(x + half, y, width - half, height);
+            drawQuad(texture);
+        } else {
+            GLES20.glViewport(x, y, width, height);
+            // Always draw, even if no new frame
+            drawQuad(drawEngine == Engine.GPU && gpuAvailable ? gpuEngine.getOutputTexture() : texture);
+        }
+        GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+    }
+    
+    private void markUploaded(StreamTexture stream, FrameTrace trace) {
+        if (trace != null) {
+            trace.mark(FrameTrace.Hop.RENDER_UPLOADED);
+            stream.displayedTrace = trace;
+        }
+    }
+    
+    private void processOnGpu(StreamTexture stream, byte[] luma, int frameWidth, int frameHeight, int[] cpuPixels) {
+        if (!gpuEngineReady) {
             return;
         }
+        long gpuStartTime = System.nanoTime();
+        boolean parity = engine == Engine.PARITY && cpuPixels != null;
+        gpuEngine.setBlurEnabled(!parity);
+        gpuEngine.process(luma, frameWidth, frameHeight);
+        GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+        gpuOutputValid = true;
+        PipelineMetrics.record(PipelineMetrics.Stage.GPU_EDGES, System.nanoTime() - gpuStartTime);
+        if (cpuPixels == null) {
+            // GPU-only frame: nothing went through the CPU upload above
+            markUploaded(stream, stream.current.tag);
+        }
+        
+        int error = GLES20.glGetError();
+        if (error != GLES20.GL_NO_ERROR) {
+            android.util.Log.e("EdgeDetectionRenderer", "❌ OpenGL error in GPU edge passes: " + error);
+        }
         
+        // The readback stalls the pipeline, so only compare every 30th parity frame
+        if (parity && parityFrameCount++ % 30 == 0) {
+            lastParityMismatch = gpuEngine.compareWithCpu(cpuPixels, frameWidth, frameHeight);
+            android.util.Log.d("EdgeDetectionRenderer", "🔍 GPU/CPU edge mismatch: "
+                    + String.format("%.3f", lastParityMismatch * 100) + "% of pixels");
+        }
+    }
+    
+    private void drawQuad(int texture) {
         GLES20.glUseProgram(program);
         
         int positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
@@ -255,7 +468,7 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
             android.util.Log.e("EdgeDetectionRenderer", "❌ texture uniform not found!");
         } else {
             GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
             GLES20.glUniform1i(textureHandleUniform, 0);
         }
         
@@ -265,7 +478,7 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
             GLES20.glUniform1i(effectModeUniform, effectMode);
         }
         
-        android.util.Log.d("EdgeDetectionRenderer", "🎨 Drawing quad with texture " + textureHandle);
+        android.util.Log.d("EdgeDetectionRenderer", "🎨 Drawing quad with texture " + texture);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
         android.util.Log.d("EdgeDetectionRenderer", "✅ Draw complete!");
         
@@ -273,18 +486,51 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
         GLES20.glDisableVertexAttribArray(texCoordHandle);
     }
     
-    public void updateFrame(int[] pixels, int width, int height) {
-        android.util.Log.d("EdgeDetectionRenderer", "=== 🎨 UPDATE FRAME ===");
+    public void updateFrame(int[] pixels, int width, int height, FrameTrace trace) {
+        updateFrame(0, pixels, width, height, trace);
+    }
+    
+    /** Publish a processed frame for the given camera stream's texture. */
+    public void updateFrame(int stream, int[] pixels, int width, int height, FrameTrace trace) {
+        android.util.Log.d("EdgeDetectionRenderer", "=== 🎨 UPDATE FRAME (stream " + stream + ") ===");
         android.util.Log.d("EdgeDetectionRenderer", "Pixels: " + (pixels != null ? pixels.length : 0));
         android.util.Log.d("EdgeDetectionRenderer", "Size: " + width + "x" + height);
         
-        synchronized (frameLock) {
-            this.pixels = pixels;
-            this.frameWidth = width;
-            this.frameHeight = height;
-            this.frameUpdated = true;
-            android.util.Log.d("EdgeDetectionRenderer", "Frame marked as updated");
+        publish(stream, pixels, null, width, height, trace);
+    }
+    
+    /**
+     * Publish a frame for the GPU engine: luma holds width*height Y bytes, edge-detected on
+     * the GL thread. cpuPixels (nullable) is the OpenCV result of the same frame, drawn
+     * next to the GPU result and compared against it in PARITY mode. Primary stream only.
+     */
+    public void updateLumaFrame(byte[] luma, int[] cpuPixels, int width, int height, FrameTrace trace) {
+        publish(0, cpuPixels, luma, width, height, trace);
+    }
+    
+    /**
+     * A luma array of at least size bytes for updateLumaFrame, recycled from frames the GL
+     * thread has consumed or dropped, so the GPU engine does not allocate per frame.
+     */
+    public byte[] acquireLumaBuffer(int size) {
+        return streams[0].slot.acquireLuma(size);
+    }
+    
+    private void publish(int stream, int[] pixels, byte[] luma, int width, int height, FrameTrace trace) {
+        if (stream < 0 || stream >= streamCount) {
+            android.util.Log.e("EdgeDetectionRenderer", "❌ No texture for stream " + stream + " (" + streamCount + " streams)");
+            FrameTrace.recordDrop(FrameTrace.Hop.RENDER_QUEUED);
+            return;
+        }
+        if (trace != null) {
+            trace.mark(FrameTrace.Hop.RENDER_QUEUED);
         }
+        // Pixels and luma of one frame travel together, so parity always compares like with like
+        if (streams[stream].slot.publish(pixels, luma, width, height, trace)) {
+            // Previous frame was replaced before the GL thread uploaded it
+            FrameTrace.recordDrop(FrameTrace.Hop.RENDER_QUEUED);
+        }
+        android.util.Log.d("EdgeDetectionRenderer", "Frame marked as updated");
         
         // Request render when frame is updated
         if (glSurfaceView != null) {
@@ -303,12 +549,31 @@ public class EdgeDetectionRenderer implements GLSurfaceView.Renderer {
         return shader;
     }
     
+    /** Deletes the textures and the GPU engine's GL objects. GL thread only (GLSurfaceView.queueEvent). */
     public void release() {
-        if (textureHandle != 0) {
-            int[] textures = {textureHandle};
-            GLES20.glDeleteTextures(1, textures, 0);
-            textureHandle = 0;
+        for (StreamTexture stream : streams) {
+            if (stream.texture != 0) {
+                int[] textures = {stream.texture};
+                GLES20.glDeleteTextures(1, textures, 0);
+                stream.texture = 0;
+            }
+        }
+        if (gpuEngine != null) {
+            gpuEngine.release();
+            gpuEngineReady = false;
+            gpuOutputValid = false;
         }
     }
+    
+    /** Per-stream hand-off and texture; everything but the slot is only touched on the GL thread. */
+    private static class StreamTexture {
+        // Latest-wins hand-off from the stream's analyzer thread
+        final FrameSlot<FrameTrace> slot = new FrameSlot<>();
+        final FrameSlot.Frame<FrameTrace> current = new FrameSlot.Frame<>();
+        int texture;
+        int textureWidth;
+        int textureHeight;
+        FrameTrace displayedTrace; // Trace of the frame uploaded but not yet drawn
+    }
 }
 
@@ -1,19 +1,40 @@
 package com.flam.edgedetection;
 
 import android.graphics.ImageFormat;
-import android.media.Image;
 
 import androidx.annotation.NonNull;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 
+import com.flam.edgedetection.core.CaptureWriter;
+import com.flam.edgedetection.core.CapturedFrame;
+import com.flam.edgedetection.core.Nv21Repacker;
+import com.flam.edgedetection.core.ProcessingScale;
+import com.flam.edgedetection.core.YuvPlane;
+
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 public class FrameProcessor implements ImageAnalysis.Analyzer {
+    /** Stream id of the single-camera setup. */
+    public static final String DEFAULT_STREAM = "main";
+    
+    // One FrameProcessor per camera stream, each with its own analyzer thread, native
+    // pipeline, renderer texture and sender channel; only the native stream gate is shared
+    private final String streamId;
+    private final FrameSender.Channel sender;
     private EdgeDetectionRenderer renderer;
+    private int renderStream = 0;
     private boolean processingEnabled = true;
+    private volatile ProcessingScale processingScale = ProcessingScale.FULL;
+    private volatile int processEveryNth = 1;   // camera frames per processed frame
+    private volatile int edgeSendInterval = 1;  // processed frames per edge-stream packet
+    private volatile int rawSendInterval = 5;   // processed frames per PNG frame
+    private long skippedFrameCount = 0;
     private FpsCallback fpsCallback;
     private ResolutionCallback resolutionCallback;
+    private ProcessingTimeCallback processingTimeCallback;
     
     private long lastFrameTime = 0;
     private int frameCount = 0;
@@ -22,39 +43,163 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
     private int currentFps = 0;
     private int totalFrameCount = 0; // Total frames processed (never resets)
     
-    // Native methods
-    static {
-        try {
-            android.util.Log.d("FrameProcessor", "Attempting to load native library 'opencv_processing'...");
-            System.loadLibrary("opencv_processing");
-            android.util.Log.d("FrameProcessor", "✅ Native library 'opencv_processing' loaded successfully!");
-        } catch (UnsatisfiedLinkError e) {
-            android.util.Log.e("FrameProcessor", "❌ CRITICAL: Failed to load native library 'opencv_processing'");
-            android.util.Log.e("FrameProcessor", "Error: " + e.getMessage());
-            android.util.Log.e("FrameProcessor", "Stack trace:");
-            e.printStackTrace();
-            android.util.Log.e("FrameProcessor", "Possible causes:");
-            android.util.Log.e("FrameProcessor", "1. Native library not built (check build output)");
-            android.util.Log.e("FrameProcessor", "2. OpenCV not properly configured in CMakeLists.txt");
-            android.util.Log.e("FrameProcessor", "3. Library name mismatch");
-            android.util.Log.e("FrameProcessor", "4. Missing OpenCV dependencies");
-        } catch (Exception e) {
-            android.util.Log.e("FrameProcessor", "❌ Unexpected error loading native library: " + e.getMessage());
-            e.printStackTrace();
+    // Native library: loaded by StartupCoordinator off the UI thread, or on first use
+    private static final Object nativeLoadLock = new Object();
+    private static volatile boolean nativeLoadAttempted = false;
+    private static boolean nativeLoaded = false;
+    
+    /** Load libopencv_processing once; later calls return the first result without blocking. */
+    public static boolean loadNativeLibrary() {
+        if (nativeLoadAttempted) {
+            return nativeLoaded;
+        }
+        synchronized (nativeLoadLock) {
+            if (nativeLoadAttempted) {
+                return nativeLoaded;
+            }
+            try {
+                android.util.Log.d("FrameProcessor", "Attempting to load native library 'opencv_processing'...");
+                System.loadLibrary("opencv_processing");
+                nativeLoaded = true;
+                android.util.Log.d("FrameProcessor", "✅ Native library 'opencv_processing' loaded successfully!");
+            } catch (UnsatisfiedLinkError e) {
+                android.util.Log.e("FrameProcessor", "❌ CRITICAL: Failed to load native library 'opencv_processing'");
+                android.util.Log.e("FrameProcessor", "Error: " + e.getMessage());
+                android.util.Log.e("FrameProcessor", "Stack trace:");
+                e.printStackTrace();
+                android.util.Log.e("FrameProcessor", "Possible causes:");
+                android.util.Log.e("FrameProcessor", "1. Native library not built (check build output)");
+                android.util.Log.e("FrameProcessor", "2. OpenCV not properly configured in CMakeLists.txt");
+                android.util.Log.e("FrameProcessor", "3. Library name mismatch");
+                android.util.Log.e("FrameProcessor", "4. Missing OpenCV dependencies");
+            } catch (Exception e) {
+                android.util.Log.e("FrameProcessor", "❌ Unexpected error loading native library: " + e.getMessage());
+                e.printStackTrace();
+            }
+            nativeLoadAttempted = true;
+            return nativeLoaded;
+        }
+    }
+    
+    // Per-stream native pipeline: edge work runs here once a native gate shared by all streams admits it
+    private static native long nativeCreatePipeline();
+    private static native void nativeDestroyPipeline(long pipeline);
+    private static native boolean nativeProcessFrame(long pipeline, byte[] yuvData, int width, int height,
+                                                  int[] outputPixels, boolean enableProcessing, long[] traceNanos,
+                                                  ByteBuffer sendPixels, ByteBuffer edgeBits, int pyramidLevels);
+    private static native boolean nativeWarmUp(long pipeline, int width, int height, int pyramidLevels);
+    
+    // Guards the pipeline handle: created on first use, destroyed by release()
+    private final Object pipelineLock = new Object();
+    private long pipelineHandle = 0;
+    private boolean pipelineReleased = false;
+    
+    // traceNanos receives the native entry/exit CLOCK_MONOTONIC timestamps (same clock as System.nanoTime)
+    // and, if it has a third element, the time spent waiting for a shared native worker
+    // sendPixels (nullable direct buffer, width*height*4) also receives the frame in Bitmap RGBA byte order
+    // edgeBits (nullable direct buffer, EdgeDeltaEncoder.maskBytes) receives the packed Canny mask
+    // pyramidLevels > 0 runs edges on a pyrDown'ed luma; all outputs are then ProcessingScale-sized
+    // Returns false if the frame was not processed; the outputs and buffers then hold stale data
+    public boolean processFrame(byte[] yuvData, int width, int height,
+                                int[] outputPixels, boolean enableProcessing, long[] traceNanos,
+                                ByteBuffer sendPixels, ByteBuffer edgeBits, int pyramidLevels) {
+        synchronized (pipelineLock) {
+            return nativeProcessFrame(acquirePipeline(), yuvData, width, height, outputPixels, enableProcessing,
+                    traceNanos, sendPixels, edgeBits, pyramidLevels);
+        }
+    }
+    
+    // Pre-allocates this stream's native pipeline for width x height edge frames; safe to
+    // call from another thread before or while frames are processed
+    public boolean warmUp(int width, int height, int pyramidLevels) {
+        synchronized (pipelineLock) {
+            return nativeWarmUp(acquirePipeline(), width, height, pyramidLevels);
+        }
+    }
+    
+    // pipelineLock held
+    private long acquirePipeline() {
+        if (pipelineReleased) {
+            throw new IllegalStateException("FrameProcessor " + streamId + " was released");
+        }
+        if (pipelineHandle == 0) {
+            if (!loadNativeLibrary()) {
+                throw new UnsatisfiedLinkError("opencv_processing not loaded");
+            }
+            pipelineHandle = nativeCreatePipeline();
+            android.util.Log.d("FrameProcessor", "✅ Native pipeline created for stream " + streamId);
         }
+        return pipelineHandle;
     }
     
-    public native void processFrame(byte[] yuvData, int width, int height, 
-                                   int[] outputPixels, boolean enableProcessing);
+    // Entry, exit, gate queue wait; reused: analyze() runs on this stream's single analyzer thread
+    private final long[] nativeTraceNanos = new long[3];
+    
+    // YUV_420_888 -> NV21 repack (Android-free, benchmarked in :frame-core)
+    private final Nv21Repacker repacker = new Nv21Repacker();
+    private final ImagePlaneAdapter yPlane = new ImagePlaneAdapter();
+    private final ImagePlaneAdapter uPlane = new ImagePlaneAdapter();
+    private final ImagePlaneAdapter vPlane = new ImagePlaneAdapter();
+    
+    // Optional capture of the raw camera planes for replay (see ReplayFrameSource)
+    private volatile CaptureWriter recorder;
+    private int recordFrameLimit = 0;
+    
+    public FrameProcessor() {
+        this(DEFAULT_STREAM);
+    }
+    
+    /** streamId names the camera stream in metrics, logs and the web server's ?stream= parameter. */
+    public FrameProcessor(String streamId) {
+        this.streamId = streamId;
+        this.sender = FrameSender.channel(streamId);
+    }
+    
+    public String getStreamId() {
+        return streamId;
+    }
     
     public void setRenderer(EdgeDetectionRenderer renderer) {
+        setRenderer(renderer, 0);
+    }
+    
+    /**
+     * Draw this stream's frames into the renderer's texture for the given stream index
+     * (see EdgeDetectionRenderer.setStreamCount). Only stream 0 can use the GPU engine;
+     * other streams always run OpenCV.
+     */
+    public void setRenderer(EdgeDetectionRenderer renderer, int renderStream) {
         this.renderer = renderer;
+        this.renderStream = renderStream;
     }
     
     public void setProcessingEnabled(boolean enabled) {
         this.processingEnabled = enabled;
     }
     
+    /**
+     * Resolution for CPU edge detection. The renderer scales the smaller frame up to the
+     * screen, and the web edge stream carries the reduced mask.
+     */
+    public void setProcessingScale(ProcessingScale scale) {
+        this.processingScale = scale;
+    }
+    
+    public ProcessingScale getProcessingScale() {
+        return processingScale;
+    }
+    
+    /** Process only every nth camera frame; the others are closed unprocessed. Replays are never skipped. */
+    public void setFrameSkip(int processEveryNth) {
+        this.processEveryNth = Math.max(1, processEveryNth);
+    }
+    
+    /** Send every edgeInterval-th edge mask and every rawInterval-th raw (PNG) frame. */
+    public void setSendIntervals(int edgeInterval, int rawInterval) {
+        this.edgeSendInterval = Math.max(1, edgeInterval);
+        this.rawSendInterval = Math.max(1, rawInterval);
+    }
+    
     public void setFpsCallback(FpsCallback callback) {
         this.fpsCallback = callback;
     }
@@ -67,7 +212,53 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
         this.processingTimeCallback = callback;
     }
     
+    /**
+     * Record the next frameLimit camera frames (raw planes, strides, timestamps) to file.
+     * Recording writes on the analyzer thread, so expect a lower frame rate while it runs.
+     */
+    public void startRecording(File file, int frameLimit) throws IOException {
+        stopRecording();
+        recordFrameLimit = frameLimit;
+        recorder = new CaptureWriter(file);
+        android.util.Log.d("FrameProcessor", "⏺️ Recording " + frameLimit + " frames to " + file);
+    }
+    
+    public void stopRecording() {
+        CaptureWriter writer = recorder;
+        recorder = null;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+            android.util.Log.d("FrameProcessor", "⏹️ Recording finished: " + writer.getFrameCount() + " frames, " + writer.getSizeBytes() + " bytes");
+        } catch (IOException e) {
+            android.util.Log.e("FrameProcessor", "❌ Error closing recording: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Run a recorded frame through the same repack/native/render/send path as a camera frame.
+     * Call from a single thread, and not while the camera analyzer is running.
+     */
+    public void processReplayFrame(CapturedFrame frame) {
+        analyzeCallCount++;
+        if (frame.index == 0) {
+            // New pass: map the recorded timestamps onto System.nanoTime() from here, so
+            // capture-to-analyze is the delay behind the recorded timing
+            replayTimestampOffsetNanos = System.nanoTime() - frame.timestampNanos;
+        }
+        FrameTrace trace = new FrameTrace(frame.timestampNanos + replayTimestampOffsetNanos);
+        try {
+            processPlanes(frame.y, frame.u, frame.v, frame.width, frame.height, trace);
+        } catch (Exception e) {
+            FrameTrace.recordDrop(FrameTrace.Hop.ANALYZE);
+            android.util.Log.e("FrameProcessor", "❌ ERROR processing replayed frame " + frame.index + ": " + e.getMessage(), e);
+        }
+    }
+    
     private int analyzeCallCount = 0; // Track analyze calls for reduced logging
+    private long replayTimestampOffsetNanos = 0; // Recorded timestamp -> replay-time nanoTime
     
     @Override
     public void analyze(@NonNull ImageProxy image) {
@@ -82,33 +273,76 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
         }
         
         try {
+            int skip = processEveryNth;
+            if (skip > 1 && analyzeCallCount % skip != 0) {
+                // Governor frame skip: not a drop, the frame is deliberately left unprocessed
+                skippedFrameCount++;
+                PipelineMetrics.recordStreamSkip(streamId);
+                if (skippedFrameCount % 100 == 0) {
+                    android.util.Log.d("FrameProcessor", "⏭️ Skipped " + skippedFrameCount + " frames (processing every " + skip + ")");
+                }
+                return;
+            }
+            // Traced (and sequenced) from here: skipped frames take no sequence number
+            FrameTrace trace = new FrameTrace(image.getImageInfo().getTimestamp());
             if (image.getFormat() == ImageFormat.YUV_420_888) {
-                processYUVFrame(image);
+                processYUVFrame(image, trace);
             } else {
+                FrameTrace.recordDrop(FrameTrace.Hop.ANALYZE);
                 if (analyzeCallCount % 30 == 0) {
                     android.util.Log.w("FrameProcessor", "❌ Unsupported format: " + image.getFormat() + " (expected: " + ImageFormat.YUV_420_888 + ")");
                 }
             }
         } catch (Exception e) {
+            FrameTrace.recordDrop(FrameTrace.Hop.ANALYZE);
             android.util.Log.e("FrameProcessor", "❌ ERROR processing frame: " + e.getMessage(), e);
         } finally {
             image.close();
         }
     }
     
-    private void processYUVFrame(ImageProxy image) {
-        Image.Plane[] planes = image.getPlanes();
+    private void processYUVFrame(ImageProxy image, FrameTrace trace) {
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
         if (planes.length < 3) {
             android.util.Log.e("FrameProcessor", "Invalid YUV image: expected 3 planes, got " + planes.length);
+            FrameTrace.recordDrop(FrameTrace.Hop.ANALYZE);
             return;
         }
         
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
+        yPlane.plane = planes[0];
+        uPlane.plane = planes[1];
+        vPlane.plane = planes[2];
+        if (recorder != null) {
+            recordFrame(image.getWidth(), image.getHeight(), image.getImageInfo().getTimestamp());
+        }
+        processPlanes(yPlane, uPlane, vPlane, image.getWidth(), image.getHeight(), trace);
+    }
+    
+    private void recordFrame(int width, int height, long timestampNanos) {
+        CaptureWriter writer = recorder;
+        try {
+            if (!writer.append(yPlane, uPlane, vPlane, width, height, timestampNanos)) {
+                android.util.Log.w("FrameProcessor", "⚠️ Capture segment full, stopping recording");
+                stopRecording();
+            } else if (writer.getFrameCount() >= recordFrameLimit) {
+                stopRecording();
+            }
+        } catch (IOException e) {
+            android.util.Log.e("FrameProcessor", "❌ Error recording frame: " + e.getMessage());
+            stopRecording();
+        }
+    }
+    
+    private void processPlanes(YuvPlane yPlane, YuvPlane uPlane, YuvPlane vPlane,
+                               int width, int height, FrameTrace trace) {
+        EdgeDetectionRenderer.Engine engine = renderer != null && renderStream == 0
+                ? renderer.getEngine() : EdgeDetectionRenderer.Engine.CPU;
+        if (processingEnabled && engine == EdgeDetectionRenderer.Engine.GPU) {
+            processLumaOnGpu(yPlane, width, height, trace);
+            return;
+        }
         
-        int width = image.getWidth();
-        int height = image.getHeight();
+        long repackStartTime = System.nanoTime();
         
         if (analyzeCallCount % 30 == 0) {
             android.util.Log.d("FrameProcessor", "🔄 Converting YUV to NV21: " + width + "x" + height);
@@ -116,47 +350,17 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
         
         // YUV_420_888 to NV21 conversion
         // NV21 format: Y plane + interleaved VU plane
-        int ySize = width * height;
-        int uvSize = width * height / 2;  // UV plane size for NV21
-        byte[] yuvData = new byte[ySize + uvSize];
-        
-        // Copy Y plane (ensure we copy exactly width*height bytes)
-        yBuffer.rewind();
-        if (yBuffer.remaining() >= ySize) {
-            yBuffer.get(yuvData, 0, ySize);
-        } else {
-            android.util.Log.w("FrameProcessor", "Y buffer smaller than expected: " + yBuffer.remaining() + " < " + ySize);
-            yBuffer.get(yuvData, 0, Math.min(ySize, yBuffer.remaining()));
-        }
-        
-        // Convert UV planes to interleaved VU (NV21 format)
-        int uvRowStride = planes[1].getRowStride();
-        int uvPixelStride = planes[1].getPixelStride();
-        int vRowStride = planes[2].getRowStride();
-        int vPixelStride = planes[2].getPixelStride();
-        int uvPlaneOffset = ySize;
-        
-        // Interleave U and V planes
-        ByteBuffer uBufferCopy = uBuffer.duplicate();
-        ByteBuffer vBufferCopy = vBuffer.duplicate();
-        
-        for (int row = 0; row < height / 2; row++) {
-            for (int col = 0; col < width / 2; col++) {
-                int uPos = row * uvRowStride + col * uvPixelStride;
-                int vPos = row * vRowStride + col * vPixelStride;
-                
-                if (uPos < uBufferCopy.limit() && vPos < vBufferCopy.limit()) {
-                    uBufferCopy.position(uPos);
-                    vBufferCopy.position(vPos);
-                    
-                    int uvIndex = uvPlaneOffset + row * width + col * 2;
-                    yuvData[uvIndex] = vBufferCopy.get();     // V
-                    yuvData[uvIndex + 1] = uBufferCopy.get(); // U
-                }
-            }
-        }
+        byte[] yuvData = new byte[Nv21Repacker.nv21Size(width, height)];
+        repacker.repack(yPlane, uPlane, vPlane, width, height, yuvData);
         
-        int[] outputPixels = new int[width * height];
+        // Raw frames and parity comparisons always run at full scale
+        ProcessingScale scale = processingEnabled && engine != EdgeDetectionRenderer.Engine.PARITY
+                ? processingScale : ProcessingScale.FULL;
+        int outWidth = scale.scale(width);
+        int outHeight = scale.scale(height);
+        int[] outputPixels = new int[outWidth * outHeight];
+        PipelineMetrics.record(PipelineMetrics.Stage.REPACK, System.nanoTime() - repackStartTime);
+        trace.mark(FrameTrace.Hop.REPACKED);
         
         try {
             if (analyzeCallCount % 30 == 0) {
@@ -165,11 +369,39 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
                 android.util.Log.d("FrameProcessor", "   Input: " + width + "x" + height + ", Processing: " + processingEnabled);
             }
             
+            // With edge detection on, frames go to the web viewer as delta-coded edge masks
+            // (every frame unless the governor widens edgeSendInterval). Raw frames are sent
+            // as PNG every rawSendInterval (default 5) frames to reduce network load.
+            // Decided before the native call so it can fill the sender's buffers.
+            // Use totalFrameCount which never resets, so we always send/trace frame 1, 5, 10, 15, etc.
+            int frameNumber = totalFrameCount + 1;
+            boolean shouldSend = (frameNumber == 1 || frameNumber % rawSendInterval == 0);
+            boolean shouldSendEdges = processingEnabled && (frameNumber == 1 || frameNumber % edgeSendInterval == 0);
+            FrameSender.EdgeBuffer edgeBuffer = shouldSendEdges ? sender.acquireEdgeBuffer(outWidth, outHeight) : null;
+            FrameSender.SendBuffer sendBuffer = shouldSend && !processingEnabled
+                    ? sender.acquireBuffer(outWidth, outHeight) : null;
+            if (FrameSender.isEnabled() && (processingEnabled ? shouldSendEdges && edgeBuffer == null : shouldSend && sendBuffer == null)) {
+                // Sender still busy encoding/sending earlier frames
+                FrameTrace.recordDrop(FrameTrace.Hop.SEND_QUEUED);
+            }
+            
             long startTime = System.nanoTime();
             
             // Process frame using native OpenCV
             try {
-                processFrame(yuvData, width, height, outputPixels, processingEnabled);
+                boolean processed = processFrame(yuvData, width, height, outputPixels, processingEnabled, nativeTraceNanos,
+                        sendBuffer != null ? sendBuffer.pixels : null,
+                        edgeBuffer != null ? edgeBuffer.bits : null, scale.pyramidLevels);
+                trace.set(FrameTrace.Hop.NATIVE_ENTER, nativeTraceNanos[0]);
+                trace.set(FrameTrace.Hop.NATIVE_EXIT, nativeTraceNanos[1]);
+                if (!processed) {
+                    // Pixels and pooled buffers still hold an earlier frame: drop, never send them
+                    android.util.Log.e("FrameProcessor", "❌ Native processFrame failed, dropping frame (stream " + streamId + ")");
+                    FrameTrace.recordDrop(FrameTrace.Hop.ANALYZE);
+                    sender.releaseBuffer(sendBuffer);
+                    sender.releaseEdgeBuffer(edgeBuffer);
+                    return;
+                }
                 if (analyzeCallCount % 30 == 0) {
                     android.util.Log.d("FrameProcessor", "✅ Native processFrame returned successfully");
                 }
@@ -179,28 +411,39 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
                 android.util.Log.e("FrameProcessor", "Error: " + e.getMessage());
                 android.util.Log.e("FrameProcessor", "Check build output for native library compilation errors");
                 e.printStackTrace();
-                image.close();
+                FrameTrace.recordDrop(FrameTrace.Hop.ANALYZE);
+                sender.releaseBuffer(sendBuffer);
+                sender.releaseEdgeBuffer(edgeBuffer);
                 return;
             } catch (Exception e) {
                 android.util.Log.e("FrameProcessor", "❌ Error calling native processFrame: " + e.getMessage());
                 e.printStackTrace();
-                image.close();
+                FrameTrace.recordDrop(FrameTrace.Hop.ANALYZE);
+                sender.releaseBuffer(sendBuffer);
+                sender.releaseEdgeBuffer(edgeBuffer);
                 return;
             }
             
             long processingTime = System.nanoTime() - startTime;
             lastFrameProcessingTime = processingTime;
+            PipelineMetrics.record(PipelineMetrics.Stage.NATIVE, processingTime);
+            PipelineMetrics.recordStreamFrame(streamId, processingTime, nativeTraceNanos[2]);
+            if (processingEnabled) {
+                PipelineMetrics.recordEdgeScale(scale, processingTime);
+            }
             double processingTimeMs = processingTime / 1_000_000.0; // Convert to milliseconds
             
             if (analyzeCallCount % 30 == 0) {
-                android.util.Log.d("FrameProcessor", "✅ Native processing complete in " + String.format("%.2f", processingTimeMs) + "ms");
-                android.util.Log.d("FrameProcessor", "Output pixels: " + outputPixels.length + " (expected: " + (width * height) + ")");
+                android.util.Log.d("FrameProcessor", "✅ Native processing complete in " + String.format("%.2f", processingTimeMs) + "ms (scale " + scale.label + ")");
+                android.util.Log.d("FrameProcessor", "Output pixels: " + outputPixels.length + " (expected: " + (outWidth * outHeight) + ")");
             }
             
             // Validate output pixels
-            if (outputPixels.length != width * height) {
-                android.util.Log.e("FrameProcessor", "❌ Output pixel count mismatch! Expected: " + (width * height) + ", Got: " + outputPixels.length);
-                image.close();
+            if (outputPixels.length != outWidth * outHeight) {
+                android.util.Log.e("FrameProcessor", "❌ Output pixel count mismatch! Expected: " + (outWidth * outHeight) + ", Got: " + outputPixels.length);
+                FrameTrace.recordDrop(FrameTrace.Hop.ANALYZE);
+                sender.releaseBuffer(sendBuffer);
+                sender.releaseEdgeBuffer(edgeBuffer);
                 return;
             }
             
@@ -226,7 +469,14 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
                 if (analyzeCallCount % 30 == 0) {
                     android.util.Log.d("FrameProcessor", "📤 Sending frame to renderer...");
                 }
-                renderer.updateFrame(outputPixels, width, height);
+                if (processingEnabled && engine == EdgeDetectionRenderer.Engine.PARITY) {
+                    byte[] luma = renderer.acquireLumaBuffer(width * height);
+                    System.arraycopy(yuvData, 0, luma, 0, width * height);
+                    renderer.updateLumaFrame(luma, outputPixels, width, height, trace);
+                } else {
+                    // Reduced-scale frames are stretched to the full-screen quad by the linear texture filter
+                    renderer.updateFrame(renderStream, outputPixels, outWidth, outHeight, trace);
+                }
                 if (analyzeCallCount % 30 == 0) {
                     android.util.Log.d("FrameProcessor", "✅ Frame sent to renderer");
                 }
@@ -247,33 +497,57 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
             // Calculate FPS (increments frameCount, resets every second)
             updateFps();
             
-            // Send frame to web viewer (every 5 frames to reduce network load)
-            // Use totalFrameCount which never resets, so we always send frame 1, 5, 10, 15, etc.
-            // ALWAYS send first frame immediately, then every 5th frame
-            boolean shouldSend = (totalFrameCount == 1 || totalFrameCount % 5 == 0);
-            
-            if (shouldSend) {
+            if (edgeBuffer != null) {
+                // Trace on the PNG frame schedule
+                FrameTrace sentTrace = shouldSend ? trace : null;
+                if (sentTrace != null) {
+                    sentTrace.mark(FrameTrace.Hop.SEND_QUEUED);
+                }
+                sender.sendEdges(edgeBuffer, currentFps, processingTime, sentTrace);
+            } else if (sendBuffer != null) {
                 android.util.Log.d("FrameProcessor", "📡 Sending frame to web server (total frame " + totalFrameCount + ")");
-                android.util.Log.d("FrameProcessor", "   Frame details: " + width + "x" + height + ", pixels: " + outputPixels.length);
+                android.util.Log.d("FrameProcessor", "   Frame details: " + outWidth + "x" + outHeight);
                 try {
-                    // Make a copy of pixels to avoid issues with concurrent access
-                    int[] pixelsCopy = new int[outputPixels.length];
-                    System.arraycopy(outputPixels, 0, pixelsCopy, 0, outputPixels.length);
-                    FrameSender.sendFrame(pixelsCopy, width, height, currentFps, processingTime);
-                    android.util.Log.d("FrameProcessor", "✅ FrameSender.sendFrame() called successfully");
+                    // sendBuffer was filled by the native call; FrameSender owns it from here
+                    trace.mark(FrameTrace.Hop.SEND_QUEUED);
+                    sender.sendFrame(sendBuffer, currentFps, processingTime, trace);
+                    android.util.Log.d("FrameProcessor", "✅ FrameSender.sendFrame() called successfully (stream " + streamId + ")");
                 } catch (Exception e) {
                     android.util.Log.e("FrameProcessor", "❌ Error calling FrameSender: " + e.getMessage());
                     e.printStackTrace();
                 }
             } else if (totalFrameCount < 10) {
                 // Log why we're not sending for first few frames
-                android.util.Log.d("FrameProcessor", "⏭️ Skipping frame " + totalFrameCount + " (will send on frame " + ((totalFrameCount / 5 + 1) * 5) + ")");
+                android.util.Log.d("FrameProcessor", "⏭️ Skipping frame " + totalFrameCount + " (will send on frame " + ((totalFrameCount / rawSendInterval + 1) * rawSendInterval) + ")");
             }
         } catch (Exception e) {
             android.util.Log.e("FrameProcessor", "Error in native processing: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * GPU engine: only the Y plane is copied here and the edge passes run on the GL
+     * thread, so processFrame is skipped. Nothing is read back, so no edges are streamed.
+     */
+    private void processLumaOnGpu(YuvPlane yPlane, int width, int height, FrameTrace trace) {
+        long repackStartTime = System.nanoTime();
+        byte[] luma = renderer.acquireLumaBuffer(width * height);
+        Nv21Repacker.copyLuma(yPlane, width, height, luma);
+        PipelineMetrics.record(PipelineMetrics.Stage.REPACK, System.nanoTime() - repackStartTime);
+        trace.mark(FrameTrace.Hop.REPACKED);
+        
+        if (analyzeCallCount % 30 == 0) {
+            android.util.Log.d("FrameProcessor", "🟢 GPU engine: luma " + width + "x" + height + " sent to renderer");
+        }
+        renderer.updateLumaFrame(luma, null, width, height, trace);
+        if (resolutionCallback != null) {
+            resolutionCallback.onResolutionUpdate(width, height);
+        }
+        PipelineMetrics.recordStreamFrame(streamId);
+        totalFrameCount++;
+        updateFps();
+    }
+    
     private void updateFps() {
         frameCount++;
         long currentTime = System.currentTimeMillis();
@@ -289,8 +563,36 @@ public class FrameProcessor implements ImageAnalysis.Analyzer {
         }
     }
     
+    /** Stops recording and frees the native pipeline, waiting for a frame still being processed. */
     public void release() {
-        // Cleanup if needed
+        stopRecording();
+        synchronized (pipelineLock) {
+            if (pipelineHandle != 0) {
+                nativeDestroyPipeline(pipelineHandle);
+                pipelineHandle = 0;
+            }
+            pipelineReleased = true;
+        }
+    }
+    
+    /** Reusable YuvPlane view of an ImageProxy plane. */
+    private static class ImagePlaneAdapter implements YuvPlane {
+        ImageProxy.PlaneProxy plane;
+        
+        @Override
+        public ByteBuffer getBuffer() {
+            return plane.getBuffer();
+        }
+        
+        @Override
+        public int getRowStride() {
+            return plane.getRowStride();
+        }
+        
+        @Override
+        public int getPixelStride() {
+            return plane.getPixelStride();
+        }
     }
     
     interface FpsCallback {
@@ -4,91 +4,409 @@ import android.graphics.Bitmap;
 import android.util.Base64;
 import android.util.Log;
 
+import com.flam.edgedetection.core.EdgeDeltaEncoder;
+import com.flam.edgedetection.core.FrameEnvelope;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FrameSender {
     private static final String TAG = "FrameSender";
     // Update this with your computer's IP address (find it with: ipconfig on Windows, ifconfig on Mac/Linux)
     // Make sure Android device and computer are on the same WiFi network
     private static final String SERVER_URL = "http://192.168.1.4:8080/api/frame";
+    private static final String METRICS_URL = "http://192.168.1.4:8080/api/metrics";
+    private static final String EDGES_URL = "http://192.168.1.4:8080/api/edges";
     private static final int TIMEOUT_MS = 1000;
+    // Send buffers in flight at once; when all are busy the frame is not sent
+    private static final int SEND_BUFFER_COUNT = 2;
+    // Edge stream: every frame, keyframe at least once a second at 30 fps
+    private static final int EDGE_KEYFRAME_INTERVAL = 30;
+    private static final int EDGE_BUFFER_COUNT = 3;
     
     private static boolean enabled = false;
+    private static final FrameEnvelope ENVELOPE =
+            new FrameEnvelope(data -> Base64.encodeToString(data, Base64.NO_WRAP));
+    // One channel per camera stream, created on first use and kept for the process
+    private static final ConcurrentHashMap<String, Channel> channels = new ConcurrentHashMap<>();
+    
+    /**
+     * Reusable encoder input. The native side writes Bitmap-ready RGBA bytes into
+     * pixels (see FrameProcessor.processFrame), which Bitmap.copyPixelsFromBuffer
+     * moves into the reused bitmap without a Java per-pixel pass.
+     */
+    public static final class SendBuffer {
+        public final ByteBuffer pixels;
+        final Bitmap bitmap;
+        final ByteArrayOutputStream png;
+        public final int width;
+        public final int height;
+        
+        SendBuffer(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.pixels = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+            this.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            this.png = new ByteArrayOutputStream(width * height / 4);
+        }
+    }
+    
+    /** Packed edge mask filled natively (see FrameProcessor.processFrame) for the delta-coded stream. */
+    public static final class EdgeBuffer {
+        public final ByteBuffer bits;
+        public final int width;
+        public final int height;
+        
+        EdgeBuffer(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.bits = ByteBuffer.allocateDirect(EdgeDeltaEncoder.maskBytes(width, height))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
     
     public static void setEnabled(boolean enabled) {
         FrameSender.enabled = enabled;
         Log.d(TAG, "FrameSender " + (enabled ? "ENABLED" : "DISABLED") + " - Server URL: " + SERVER_URL);
     }
     
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
     public static void setServerUrl(String url) {
         // Can be used to update server URL dynamically
     }
     
-    public static void sendFrame(int[] pixels, int width, int height, int fps, long processingTime) {
-        if (!enabled) {
-            Log.w(TAG, "⚠️ FrameSender is DISABLED - frames will not be sent!");
-            Log.w(TAG, "   Call FrameSender.setEnabled(true) to enable");
-            return;
+    /**
+     * Sender for one camera stream. stream is a plain id ("main", "back", "front")
+     * sent as the ?stream= parameter; the server keeps each stream's latest frame
+     * and edge chain separately.
+     */
+    public static Channel channel(String stream) {
+        return channels.computeIfAbsent(stream, Channel::new);
+    }
+    
+    /**
+     * Everything that must not be shared between camera streams: send buffer pools,
+     * the delta encoder (each stream is its own keyframe/delta chain), the ordered
+     * edge sender thread and the PNG send sequence the server counts losses with.
+     */
+    public static final class Channel {
+        private final String stream;
+        private final String frameUrl;
+        private final String edgesUrl;
+        // Incremented per attempted send so the server can count frames lost in transit
+        private final AtomicLong sendSequence = new AtomicLong(0);
+        private final ArrayBlockingQueue<SendBuffer> freeBuffers = new ArrayBlockingQueue<>(SEND_BUFFER_COUNT);
+        private final AtomicInteger createdBuffers = new AtomicInteger(0);
+        
+        // Edge packets must arrive in order, so they are encoded and posted on one thread.
+        // The encoder's reference mask is the last *encoded* frame, so frames skipped
+        // before encoding (no free buffer) do not break the delta chain.
+        private final ExecutorService edgeExecutor;
+        private final EdgeDeltaEncoder edgeEncoder = new EdgeDeltaEncoder(EDGE_KEYFRAME_INTERVAL);
+        private final ArrayBlockingQueue<EdgeBuffer> freeEdgeBuffers = new ArrayBlockingQueue<>(EDGE_BUFFER_COUNT);
+        private final AtomicInteger createdEdgeBuffers = new AtomicInteger(0);
+        
+        private Channel(String stream) {
+            this.stream = stream;
+            this.frameUrl = SERVER_URL + "?stream=" + stream;
+            this.edgesUrl = EDGES_URL + "?stream=" + stream;
+            this.edgeExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "EdgeSender-" + stream));
         }
         
-        if (pixels == null || pixels.length == 0) {
-            Log.e(TAG, "❌ Cannot send frame: pixels array is null or empty");
-            return;
+        public String getStream() {
+            return stream;
         }
         
-        if (width <= 0 || height <= 0) {
-            Log.e(TAG, "❌ Cannot send frame: invalid dimensions " + width + "x" + height);
-            return;
+        /**
+         * Take a free send buffer for a width x height frame, to be filled natively and
+         * passed to sendFrame. Returns null if sending is disabled or every buffer is
+         * still being encoded/sent (the frame should then be skipped).
+         */
+        public SendBuffer acquireBuffer(int width, int height) {
+            if (!enabled || width <= 0 || height <= 0) {
+                return null;
+            }
+            SendBuffer buffer = freeBuffers.poll();
+            if (buffer == null) {
+                if (createdBuffers.incrementAndGet() > SEND_BUFFER_COUNT) {
+                    createdBuffers.decrementAndGet();
+                    return null;
+                }
+                return new SendBuffer(width, height);
+            }
+            if (buffer.width != width || buffer.height != height) {
+                // Resolution changed - replace the buffer rather than keep both sizes around
+                buffer.bitmap.recycle();
+                buffer = new SendBuffer(width, height);
+            }
+            return buffer;
+        }
+        
+        /** Return a buffer taken with acquireBuffer that will not be passed to sendFrame. */
+        public void releaseBuffer(SendBuffer buffer) {
+            if (buffer != null) {
+                freeBuffers.offer(buffer);
+            }
+        }
+        
+        /**
+         * Encode and post a frame. Takes ownership of buffer, which must have been filled
+         * with width*height RGBA pixels; it is returned to the pool once the send completes.
+         */
+        public void sendFrame(SendBuffer buffer, int fps, long processingTime, FrameTrace trace) {
+            if (buffer == null) {
+                Log.e(TAG, "❌ Cannot send frame: no send buffer");
+                return;
+            }
+            if (!enabled) {
+                Log.w(TAG, "⚠️ FrameSender is DISABLED - frames will not be sent!");
+                Log.w(TAG, "   Call FrameSender.setEnabled(true) to enable");
+                releaseBuffer(buffer);
+                return;
+            }
+            
+            int width = buffer.width;
+            int height = buffer.height;
+            Log.d(TAG, "📤 Attempting to send " + stream + " frame: " + width + "x" + height + ", FPS: " + fps);
+            Log.d(TAG, "   Server URL: " + frameUrl);
+            
+            new Thread(() -> {
+                boolean delivered = false;
+                boolean bufferReleased = false;
+                try {
+                    Log.d(TAG, "🌐 Opening connection to: " + frameUrl);
+                    long encodeStartTime = System.nanoTime();
+                    // Pixels are already in Bitmap (RGBA byte) order - copy straight into the reused Bitmap
+                    buffer.pixels.rewind();
+                    buffer.bitmap.copyPixelsFromBuffer(buffer.pixels);
+                    
+                    // Convert to base64
+                    buffer.png.reset();
+                    buffer.bitmap.compress(Bitmap.CompressFormat.PNG, 80, buffer.png);
+                    byte[] imageBytes = buffer.png.toByteArray();
+                    // PNG bytes are copied out - the buffer can take the next frame while this one is sent
+                    releaseBuffer(buffer);
+                    bufferReleased = true;
+                    if (trace != null) {
+                        trace.mark(FrameTrace.Hop.ENCODED);
+                    }
+                    long encodeNanos = System.nanoTime() - encodeStartTime;
+                    
+                    // Send to server
+                    long sendStartTime = System.nanoTime();
+                    URL url = new URL(frameUrl);
+                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+                    conn.setRequestMethod("POST");
+                    conn.setRequestProperty("Content-Type", "application/json");
+                    conn.setRequestProperty("Accept", "application/json");
+                    conn.setDoOutput(true);
+                    conn.setConnectTimeout(5000); // 5 seconds for connection
+                    conn.setReadTimeout(10000); // 10 seconds for reading response
+                    conn.connect();
+                    
+                    // Create base64 JSON payload once connected (sentAt is wall-clock ms, trace hops are
+                    // device-relative ms): SENT then marks the body going out, after connection setup
+                    long envelopeStartTime = System.nanoTime();
+                    if (trace != null) {
+                        trace.mark(FrameTrace.Hop.SENT);
+                    }
+                    String json = ENVELOPE.build(imageBytes, width, height, fps, processingTime,
+                            sendSequence.incrementAndGet(), System.currentTimeMillis(),
+                            trace != null ? trace.toJson() : null);
+                    long envelopeNanos = System.nanoTime() - envelopeStartTime;
+                    PipelineMetrics.record(PipelineMetrics.Stage.ENCODE, encodeNanos + envelopeNanos);
+                    
+                    try (OutputStream os = conn.getOutputStream()) {
+                        byte[] input = json.getBytes(StandardCharsets.UTF_8);
+                        os.write(input, 0, input.length);
+                    }
+                    
+                    int responseCode = conn.getResponseCode();
+                    PipelineMetrics.record(PipelineMetrics.Stage.SEND, System.nanoTime() - sendStartTime - envelopeNanos);
+                    if (responseCode == 200) {
+                        delivered = true;
+                        Log.d(TAG, "✅ " + stream + " frame sent successfully to server: " + width + "x" + height + ", FPS: " + fps);
+                    } else {
+                        Log.w(TAG, "❌ Failed to send frame, response code: " + responseCode);
+                        // Read error response
+                        try (java.io.BufferedReader reader = new java.io.BufferedReader(
+                                new java.io.InputStreamReader(conn.getErrorStream()))) {
+                            String line;
+                            StringBuilder response = new StringBuilder();
+                            while ((line = reader.readLine()) != null) {
+                                response.append(line);
+                            }
+                            Log.w(TAG, "Error response: " + response.toString());
+                        } catch (Exception e) {
+                            Log.w(TAG, "Could not read error response");
+                        }
+                    }
+                    
+                    conn.disconnect();
+                    
+                } catch (java.net.ConnectException e) {
+                    Log.e(TAG, "❌ Connection failed - Is server running? " + e.getMessage());
+                    Log.e(TAG, "  Server URL: " + frameUrl);
+                    Log.e(TAG, "  Make sure: 1) Server is running (npm run serve), 2) Same WiFi network, 3) Correct IP address");
+                    Log.e(TAG, "  Find your computer's IP: ipconfig (Windows) or ifconfig (Mac/Linux)");
+                } catch (java.net.SocketTimeoutException e) {
+                    Log.e(TAG, "❌ Connection timeout - Server not responding: " + e.getMessage());
+                    Log.e(TAG, "  Check if server is running and accessible from Android device");
+                } catch (java.net.UnknownHostException e) {
+                    Log.e(TAG, "❌ Unknown host - Cannot resolve server address: " + e.getMessage());
+                    Log.e(TAG, "  Check IP address in SERVER_URL: " + frameUrl);
+                    Log.e(TAG, "  Update SERVER_URL in FrameSender.java with your computer's IP");
+                } catch (IOException e) {
+                    Log.e(TAG, "❌ IO Error sending frame: " + e.getMessage());
+                    e.printStackTrace();
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Unexpected error: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                if (!delivered) {
+                    FrameTrace.recordDrop(FrameTrace.Hop.SEND_QUEUED);
+                }
+                if (!bufferReleased) {
+                    releaseBuffer(buffer);
+                }
+            }).start();
+        }
+        
+        /**
+         * Take a free edge mask buffer; null if sending is disabled or the edge sender
+         * is EDGE_BUFFER_COUNT frames behind (the frame should then be skipped).
+         */
+        public EdgeBuffer acquireEdgeBuffer(int width, int height) {
+            if (!enabled || width <= 0 || height <= 0) {
+                return null;
+            }
+            EdgeBuffer buffer = freeEdgeBuffers.poll();
+            if (buffer == null) {
+                if (createdEdgeBuffers.incrementAndGet() > EDGE_BUFFER_COUNT) {
+                    createdEdgeBuffers.decrementAndGet();
+                    return null;
+                }
+                return new EdgeBuffer(width, height);
+            }
+            if (buffer.width != width || buffer.height != height) {
+                buffer = new EdgeBuffer(width, height);
+            }
+            return buffer;
         }
         
-        Log.d(TAG, "📤 Attempting to send frame: " + width + "x" + height + ", FPS: " + fps + ", pixels: " + pixels.length);
-        Log.d(TAG, "   Server URL: " + SERVER_URL);
+        /** Return an edge buffer that will not be passed to sendEdges. */
+        public void releaseEdgeBuffer(EdgeBuffer buffer) {
+            if (buffer != null) {
+                freeEdgeBuffers.offer(buffer);
+            }
+        }
+        
+        /**
+         * Delta-encode and post an edge mask to /api/edges. Takes ownership of buffer.
+         * A trace, when given, is attached as an X-Frame-Trace header.
+         */
+        public void sendEdges(EdgeBuffer buffer, int fps, long processingTime, FrameTrace trace) {
+            edgeExecutor.execute(() -> {
+                boolean delivered = false;
+                boolean bufferReleased = false;
+                try {
+                    long encodeStartTime = System.nanoTime();
+                    byte[] packet = edgeEncoder.encode(buffer.bits, buffer.width, buffer.height, fps,
+                            (int) (processingTime / 1000), System.currentTimeMillis());
+                    int packetLength = edgeEncoder.getPacketLength();
+                    releaseEdgeBuffer(buffer);
+                    bufferReleased = true;
+                    if (trace != null) {
+                        trace.mark(FrameTrace.Hop.ENCODED);
+                    }
+                    PipelineMetrics.record(PipelineMetrics.Stage.ENCODE, System.nanoTime() - encodeStartTime);
+                    
+                    long sendStartTime = System.nanoTime();
+                    URL url = new URL(edgesUrl);
+                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+                    conn.setRequestMethod("POST");
+                    conn.setRequestProperty("Content-Type", "application/octet-stream");
+                    conn.setDoOutput(true);
+                    conn.setFixedLengthStreamingMode(packetLength);
+                    conn.setConnectTimeout(5000);
+                    conn.setReadTimeout(10000);
+                    // Headers are fixed once the connection opens, so SENT is stamped as the
+                    // header is built, right before the request (and its body) goes out
+                    if (trace != null) {
+                        trace.mark(FrameTrace.Hop.SENT);
+                        conn.setRequestProperty("X-Frame-Trace", trace.toJson());
+                    }
+                    
+                    try (OutputStream os = conn.getOutputStream()) {
+                        os.write(packet, 0, packetLength);
+                    }
+                    
+                    int responseCode = conn.getResponseCode();
+                    PipelineMetrics.record(PipelineMetrics.Stage.SEND, System.nanoTime() - sendStartTime);
+                    if (responseCode == 200) {
+                        delivered = true;
+                        // Server lost the chain (or a viewer asked) - {"success":true,"keyframe":true}
+                        try (java.io.InputStream in = conn.getInputStream()) {
+                            byte[] response = new byte[128];
+                            int length = in.read(response);
+                            if (length > 0 && new String(response, 0, length, StandardCharsets.UTF_8).contains("\"keyframe\":true")) {
+                                edgeEncoder.requestKeyframe();
+                            }
+                        }
+                    } else {
+                        Log.w(TAG, "❌ Failed to send " + stream + " edge packet, response code: " + responseCode);
+                    }
+                    conn.disconnect();
+                } catch (IOException e) {
+                    Log.e(TAG, "❌ Error sending " + stream + " edge packet: " + e.getMessage());
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Unexpected error sending edge packet: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                if (!delivered) {
+                    // The server may not have this packet, so the next delta would not apply
+                    edgeEncoder.requestKeyframe();
+                    FrameTrace.recordDrop(FrameTrace.Hop.SEND_QUEUED);
+                }
+                if (!bufferReleased) {
+                    releaseEdgeBuffer(buffer);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Send a pipeline metrics snapshot (PipelineMetrics.Snapshot.toJson()) to the server.
+     */
+    public static void sendMetrics(String json) {
+        if (!enabled) {
+            return;
+        }
         
         new Thread(() -> {
             try {
-                Log.d(TAG, "🌐 Opening connection to: " + SERVER_URL);
-                // Convert pixels to Bitmap
-                // Note: pixels are in RGBA format from OpenCV, but Bitmap expects ARGB_8888
-                // We need to convert RGBA to ARGB for Bitmap
-                int[] argbPixels = new int[width * height];
-                for (int i = 0; i < pixels.length; i++) {
-                    int rgba = pixels[i];
-                    // Extract components: RGBA format (R in bits 31-24, G in 23-16, B in 15-8, A in 7-0)
-                    int r = (rgba >> 24) & 0xFF;
-                    int g = (rgba >> 16) & 0xFF;
-                    int b = (rgba >> 8) & 0xFF;
-                    int a = rgba & 0xFF;
-                    // Convert to ARGB format for Bitmap (A in bits 31-24, R in 23-16, G in 15-8, B in 7-0)
-                    argbPixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
-                }
-                Bitmap bitmap = Bitmap.createBitmap(argbPixels, width, height, Bitmap.Config.ARGB_8888);
-                
-                // Convert to base64
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                bitmap.compress(Bitmap.CompressFormat.PNG, 80, baos);
-                byte[] imageBytes = baos.toByteArray();
-                String base64Image = Base64.encodeToString(imageBytes, Base64.NO_WRAP);
-                
-                // Create JSON payload
-                String json = String.format(
-                    "{\"image\":\"data:image/png;base64,%s\",\"width\":%d,\"height\":%d,\"fps\":%d,\"processingTime\":%.2f,\"resolution\":{\"width\":%d,\"height\":%d}}",
-                    base64Image, width, height, fps, processingTime / 1000000.0, width, height
-                );
-                
-                // Send to server
-                URL url = new URL(SERVER_URL);
+                URL url = new URL(METRICS_URL);
                 HttpURLConnection conn = (HttpURLConnection) url.openConnection();
                 conn.setRequestMethod("POST");
                 conn.setRequestProperty("Content-Type", "application/json");
-                conn.setRequestProperty("Accept", "application/json");
                 conn.setDoOutput(true);
-                conn.setConnectTimeout(5000); // 5 seconds for connection
-                conn.setReadTimeout(10000); // 10 seconds for reading response
+                conn.setConnectTimeout(5000);
+                conn.setReadTimeout(10000);
                 
                 try (OutputStream os = conn.getOutputStream()) {
                     byte[] input = json.getBytes(StandardCharsets.UTF_8);
@@ -96,46 +414,13 @@ public class FrameSender {
                 }
                 
                 int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
-                    Log.d(TAG, "✅ Frame sent successfully to server: " + width + "x" + height + ", FPS: " + fps);
-                } else {
-                    Log.w(TAG, "❌ Failed to send frame, response code: " + responseCode);
-                    // Read error response
-                    try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                            new java.io.InputStreamReader(conn.getErrorStream()))) {
-                        String line;
-                        StringBuilder response = new StringBuilder();
-                        while ((line = reader.readLine()) != null) {
-                            response.append(line);
-                        }
-                        Log.w(TAG, "Error response: " + response.toString());
-                    } catch (Exception e) {
-                        Log.w(TAG, "Could not read error response");
-                    }
+                if (responseCode != 200) {
+                    Log.w(TAG, "❌ Failed to send metrics, response code: " + responseCode);
                 }
-                
                 conn.disconnect();
-                
-            } catch (java.net.ConnectException e) {
-                Log.e(TAG, "❌ Connection failed - Is server running? " + e.getMessage());
-                Log.e(TAG, "  Server URL: " + SERVER_URL);
-                Log.e(TAG, "  Make sure: 1) Server is running (npm run serve), 2) Same WiFi network, 3) Correct IP address");
-                Log.e(TAG, "  Find your computer's IP: ipconfig (Windows) or ifconfig (Mac/Linux)");
-            } catch (java.net.SocketTimeoutException e) {
-                Log.e(TAG, "❌ Connection timeout - Server not responding: " + e.getMessage());
-                Log.e(TAG, "  Check if server is running and accessible from Android device");
-            } catch (java.net.UnknownHostException e) {
-                Log.e(TAG, "❌ Unknown host - Cannot resolve server address: " + e.getMessage());
-                Log.e(TAG, "  Check IP address in SERVER_URL: " + SERVER_URL);
-                Log.e(TAG, "  Update SERVER_URL in FrameSender.java with your computer's IP");
             } catch (IOException e) {
-                Log.e(TAG, "❌ IO Error sending frame: " + e.getMessage());
-                e.printStackTrace();
-            } catch (Exception e) {
-                Log.e(TAG, "❌ Unexpected error: " + e.getMessage());
-                e.printStackTrace();
+                Log.e(TAG, "❌ Error sending metrics: " + e.getMessage());
             }
         }).start();
     }
 }
-
@@ -0,0 +1,96 @@
+package com.flam.edgedetection;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-frame tag created in FrameProcessor.analyze and carried through the native
+ * call, EdgeDetectionRenderer and FrameSender. Each hop stamps System.nanoTime()
+ * (CLOCK_MONOTONIC, the same clock the native side uses).
+ *
+ * The sensor timestamp is the raw ImageProxy timestamp; it is only directly
+ * comparable with the hop times when the camera's timestamp source is monotonic.
+ * For replayed frames it is the recorded timestamp rebased to the start of the
+ * replay pass.
+ */
+public class FrameTrace {
+    public enum Hop {
+        ANALYZE("analyze"),
+        REPACKED("repacked"),
+        NATIVE_ENTER("nativeEnter"),
+        NATIVE_EXIT("nativeExit"),
+        RENDER_QUEUED("renderQueued"),
+        RENDER_UPLOADED("renderUploaded"),
+        RENDER_DRAWN("renderDrawn"),
+        SEND_QUEUED("sendQueued"),
+        ENCODED("encoded"),
+        SENT("sent");
+
+        final String key;
+
+        Hop(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final AtomicLong nextSequence = new AtomicLong(0);
+    // Frames lost at a hop (indexed by Hop.ordinal()); cumulative since process start
+    private static final AtomicLongArray dropCounts = new AtomicLongArray(Hop.values().length);
+
+    public final long sequence;
+    public final long sensorTimestampNanos;
+    private final AtomicLongArray hopNanos = new AtomicLongArray(Hop.values().length);
+
+    public FrameTrace(long sensorTimestampNanos) {
+        this.sequence = nextSequence.incrementAndGet();
+        this.sensorTimestampNanos = sensorTimestampNanos;
+        mark(Hop.ANALYZE);
+    }
+
+    public void mark(Hop hop) {
+        hopNanos.set(hop.ordinal(), System.nanoTime());
+    }
+
+    public void set(Hop hop, long nanos) {
+        hopNanos.set(hop.ordinal(), nanos);
+    }
+
+    public long get(Hop hop) {
+        return hopNanos.get(hop.ordinal());
+    }
+
+    public static void recordDrop(Hop hop) {
+        dropCounts.incrementAndGet(hop.ordinal());
+    }
+
+    public static long dropCount(Hop hop) {
+        return dropCounts.get(hop.ordinal());
+    }
+
+    /**
+     * JSON object with hop offsets in ms relative to ANALYZE (unset hops are omitted),
+     * plus the sensor-to-analyze age and cumulative drop counts.
+     */
+    public String toJson() {
+        long origin = get(Hop.ANALYZE);
+        StringBuilder json = new StringBuilder(256);
+        json.append(String.format(Locale.US, "{\"seq\":%d,\"sensorTimestamp\":%d,\"sensorAgeMs\":%.2f,\"hops\":{",
+                sequence, sensorTimestampNanos, (origin - sensorTimestampNanos) / 1_000_000.0));
+        boolean first = true;
+        for (Hop hop : Hop.values()) {
+            long nanos = get(hop);
+            if (nanos == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US, "\"%s\":%.3f", hop.key, (nanos - origin) / 1_000_000.0));
+            first = false;
+        }
+        json.append(String.format(Locale.US, "},\"drops\":{\"analyzer\":%d,\"renderer\":%d,\"sender\":%d}}",
+                dropCount(Hop.ANALYZE), dropCount(Hop.RENDER_QUEUED), dropCount(Hop.SEND_QUEUED)));
+        return json.toString();
+    }
+}
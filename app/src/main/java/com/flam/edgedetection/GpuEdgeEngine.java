@@ -0,0 +1,370 @@
+package com.flam.edgedetection;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Canny-style edge detection as a chain of GLES2 fragment passes, run on the GL
+ * thread by EdgeDetectionRenderer so the analyzer thread only copies luma:
+ *
+ *   luma -> Gaussian blur (H, V) -> Sobel (L1 magnitude + direction bin)
+ *        -> non-maximum suppression + double threshold -> hysteresis (N sweeps)
+ *        -> binary edge texture
+ *
+ * The Sobel, NMS and threshold passes follow cv::Canny(gray, edges, 50, 150)
+ * (3x3 aperture, L1 gradient, same 22.5/67.5 degree direction bins, replicated
+ * border). Hysteresis only grows weak edges HYSTERESIS_PASSES pixels from a
+ * strong one, where OpenCV follows chains of any length, and OpenCV does not
+ * blur, so parity mode disables the blur for a like-for-like comparison.
+ * Runs on a GLES2 context, so it also works unchanged on GLES3 devices.
+ */
+public class GpuEdgeEngine {
+    private static final String TAG = "GpuEdgeEngine";
+    private static final int HYSTERESIS_PASSES = 4;
+    private static final float LOW_THRESHOLD = 50f;
+    private static final float HIGH_THRESHOLD = 150f;
+
+    // Maps the quad straight onto the FBO, so texel (x, y) lands on pixel (x, y)
+    private static final String PASS_VERTEX_SHADER =
+            "attribute vec4 vPosition;" +
+            "varying vec2 texCoord;" +
+            "void main() {" +
+            "  gl_Position = vPosition;" +
+            "  texCoord = vPosition.xy * 0.5 + 0.5;" +
+            "}";
+
+    private static final String PRECISION =
+            "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+            "precision highp float;\n" +
+            "#else\n" +
+            "precision mediump float;\n" +
+            "#endif\n";
+
+    // 5-tap binomial (sigma ~1) along texelStep
+    private static final String BLUR_SHADER = PRECISION +
+            "varying vec2 texCoord;" +
+            "uniform sampler2D source;" +
+            "uniform vec2 texelStep;" +
+            "void main() {" +
+            "  float v = texture2D(source, texCoord).r * 0.375" +
+            "      + (texture2D(source, texCoord + texelStep).r + texture2D(source, texCoord - texelStep).r) * 0.25" +
+            "      + (texture2D(source, texCoord + 2.0 * texelStep).r + texture2D(source, texCoord - 2.0 * texelStep).r) * 0.0625;" +
+            "  gl_FragColor = vec4(v, v, v, 1.0);" +
+            "}";
+
+    // Magnitude 0..2040 split over r (high byte) and g (low byte); b = direction bin / 3
+    private static final String SOBEL_SHADER = PRECISION +
+            "varying vec2 texCoord;" +
+            "uniform sampler2D source;" +
+            "uniform vec2 texel;" +
+            "float p(float dx, float dy) {" +
+            "  return floor(texture2D(source, texCoord + vec2(dx, dy) * texel).r * 255.0 + 0.5);" +
+            "}" +
+            "void main() {" +
+            "  float p00 = p(-1.0, -1.0); float p01 = p(0.0, -1.0); float p02 = p(1.0, -1.0);" +
+            "  float p10 = p(-1.0, 0.0);                            float p12 = p(1.0, 0.0);" +
+            "  float p20 = p(-1.0, 1.0);  float p21 = p(0.0, 1.0);  float p22 = p(1.0, 1.0);" +
+            "  float gx = (p02 + 2.0 * p12 + p22) - (p00 + 2.0 * p10 + p20);" +
+            "  float gy = (p20 + 2.0 * p21 + p22) - (p00 + 2.0 * p01 + p02);" +
+            "  float ax = abs(gx); float ay = abs(gy);" +
+            "  float m = ax + ay;" +
+            "  float dir;" +
+            "  if (ay < ax * 0.41421356) { dir = 0.0; }" +          // horizontal gradient
+            "  else if (ay > ax * 2.41421356) { dir = 2.0; }" +     // vertical gradient
+            "  else if (gx * gy > 0.0) { dir = 1.0; }" +            // down-right diagonal
+            "  else { dir = 3.0; }" +                               // down-left diagonal
+            "  float hi = floor(m / 256.0);" +
+            "  gl_FragColor = vec4(hi / 255.0, (m - hi * 256.0) / 255.0, dir / 3.0, 1.0);" +
+            "}";
+
+    // r = 1.0 strong edge, 0.5 weak edge, 0.0 suppressed
+    private static final String NMS_SHADER = PRECISION +
+            "varying vec2 texCoord;" +
+            "uniform sampler2D gradient;" +
+            "uniform vec2 texel;" +
+            "uniform float lowThreshold;" +
+            "uniform float highThreshold;" +
+            "float mag(vec2 offset) {" +
+            "  vec4 g = texture2D(gradient, texCoord + offset * texel);" +
+            "  return floor(g.r * 255.0 + 0.5) * 256.0 + floor(g.g * 255.0 + 0.5);" +
+            "}" +
+            "void main() {" +
+            "  vec4 g = texture2D(gradient, texCoord);" +
+            "  float m = floor(g.r * 255.0 + 0.5) * 256.0 + floor(g.g * 255.0 + 0.5);" +
+            "  float dir = floor(g.b * 3.0 + 0.5);" +
+            "  float result = 0.0;" +
+            "  if (m > lowThreshold) {" +
+            "    bool isMax;" +
+            "    if (dir < 0.5) { isMax = m > mag(vec2(-1.0, 0.0)) && m >= mag(vec2(1.0, 0.0)); }" +
+            "    else if (dir < 1.5) { isMax = m > mag(vec2(-1.0, -1.0)) && m > mag(vec2(1.0, 1.0)); }" +
+            "    else if (dir < 2.5) { isMax = m > mag(vec2(0.0, -1.0)) && m >= mag(vec2(0.0, 1.0)); }" +
+            "    else { isMax = m > mag(vec2(1.0, -1.0)) && m > mag(vec2(-1.0, 1.0)); }" +
+            "    if (isMax) { result = m > highThreshold ? 1.0 : 0.5; }" +
+            "  }" +
+            "  gl_FragColor = vec4(result, result, result, 1.0);" +
+            "}";
+
+    // Promote weak pixels that touch a strong one
+    private static final String HYSTERESIS_SHADER = PRECISION +
+            "varying vec2 texCoord;" +
+            "uniform sampler2D edges;" +
+            "uniform vec2 texel;" +
+            "void main() {" +
+            "  float c = texture2D(edges, texCoord).r;" +
+            "  if (c > 0.25 && c < 0.75) {" +
+            "    float strongest = 0.0;" +
+            "    for (int dy = -1; dy <= 1; dy++) {" +
+            "      for (int dx = -1; dx <= 1; dx++) {" +
+            "        strongest = max(strongest, texture2D(edges, texCoord + vec2(float(dx), float(dy)) * texel).r);" +
+            "      }" +
+            "    }" +
+            "    if (strongest > 0.75) { c = 1.0; }" +
+            "  }" +
+            "  gl_FragColor = vec4(c, c, c, 1.0);" +
+            "}";
+
+    // Drop remaining weak pixels: binary 0/255 like the OpenCV mask
+    private static final String FINALIZE_SHADER = PRECISION +
+            "varying vec2 texCoord;" +
+            "uniform sampler2D edges;" +
+            "void main() {" +
+            "  float e = texture2D(edges, texCoord).r > 0.75 ? 1.0 : 0.0;" +
+            "  gl_FragColor = vec4(e, e, e, 1.0);" +
+            "}";
+
+    private final FloatBuffer quadVertices;
+    private int blurProgram;
+    private int sobelProgram;
+    private int nmsProgram;
+    private int hysteresisProgram;
+    private int finalizeProgram;
+
+    private int lumaTexture;
+    private final int[] passTextures = new int[3]; // ping, pong, gradient
+    private int outputTexture;
+    private final int[] framebuffers = new int[4];
+    private int width;
+    private int height;
+    private boolean blurEnabled = true;
+    private ByteBuffer lumaBuffer;
+    private ByteBuffer readbackBuffer;
+
+    /** @param quadVertices full-screen triangle strip, 3 floats per vertex */
+    public GpuEdgeEngine(FloatBuffer quadVertices) {
+        this.quadVertices = quadVertices;
+    }
+
+    /** Compile the pass programs. Call on the GL thread after the context exists. */
+    public boolean init() {
+        blurProgram = buildProgram(BLUR_SHADER);
+        sobelProgram = buildProgram(SOBEL_SHADER);
+        nmsProgram = buildProgram(NMS_SHADER);
+        hysteresisProgram = buildProgram(HYSTERESIS_SHADER);
+        finalizeProgram = buildProgram(FINALIZE_SHADER);
+        width = 0;
+        height = 0;
+        boolean ok = blurProgram != 0 && sobelProgram != 0 && nmsProgram != 0
+                && hysteresisProgram != 0 && finalizeProgram != 0;
+        Log.d(TAG, ok ? "✅ GPU edge passes compiled" : "❌ GPU edge pass compilation failed");
+        return ok;
+    }
+
+    /** OpenCV's Canny does not blur; parity mode turns this off. */
+    public void setBlurEnabled(boolean enabled) {
+        this.blurEnabled = enabled;
+    }
+
+    /**
+     * Upload width*height luma bytes and run all passes. Leaves framebuffer 0 bound;
+     * the caller restores its viewport.
+     */
+    public void process(byte[] luma, int width, int height) {
+        if (width != this.width || height != this.height) {
+            allocate(width, height);
+        }
+        lumaBuffer.clear();
+        lumaBuffer.put(luma, 0, width * height);
+        lumaBuffer.position(0);
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, lumaTexture);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, lumaBuffer);
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+
+        GLES20.glViewport(0, 0, width, height);
+        float texelX = 1f / width;
+        float texelY = 1f / height;
+        int source = lumaTexture;
+        if (blurEnabled) {
+            runPass(blurProgram, source, framebuffers[0], "texelStep", texelX, 0f);
+            runPass(blurProgram, passTextures[0], framebuffers[1], "texelStep", 0f, texelY);
+            source = passTextures[1];
+        }
+        runPass(sobelProgram, source, framebuffers[2], "texel", texelX, texelY);
+
+        GLES20.glUseProgram(nmsProgram);
+        GLES20.glUniform1f(GLES20.glGetUniformLocation(nmsProgram, "lowThreshold"), LOW_THRESHOLD);
+        GLES20.glUniform1f(GLES20.glGetUniformLocation(nmsProgram, "highThreshold"), HIGH_THRESHOLD);
+        runPass(nmsProgram, passTextures[2], framebuffers[0], "texel", texelX, texelY);
+
+        int current = 0;
+        for (int i = 0; i < HYSTERESIS_PASSES; i++) {
+            runPass(hysteresisProgram, passTextures[current], framebuffers[1 - current], "texel", texelX, texelY);
+            current = 1 - current;
+        }
+        runPass(finalizeProgram, passTextures[current], framebuffers[3], null, 0f, 0f);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    /** Binary edge texture (RGBA, 0 or 1 in every channel) of the last processed frame. */
+    public int getOutputTexture() {
+        return outputTexture;
+    }
+
+    /**
+     * Read back the last output and compare it with the CPU (OpenCV) frame packed
+     * by EdgeDetectionRenderer's CPU path. Stalls the GL pipeline - call sparingly.
+     * @return fraction of pixels whose edge/non-edge state differs, or -1 on size mismatch
+     */
+    public float compareWithCpu(int[] cpuPixels, int width, int height) {
+        if (width != this.width || height != this.height || cpuPixels.length < width * height) {
+            return -1f;
+        }
+        readbackBuffer.clear();
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[3]);
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, readbackBuffer);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        int mismatched = 0;
+        for (int i = 0; i < width * height; i++) {
+            boolean gpuEdge = readbackBuffer.get(i * 4) != 0;
+            // Byte 1 (B) of the native R<<24|G<<16|B<<8|A packing; all channels are equal in an edge frame
+            boolean cpuEdge = ((cpuPixels[i] >>> 8) & 0xFF) != 0;
+            if (gpuEdge != cpuEdge) {
+                mismatched++;
+            }
+        }
+        return mismatched / (float) (width * height);
+    }
+
+    public void release() {
+        deleteTargets();
+        int[] programs = {blurProgram, sobelProgram, nmsProgram, hysteresisProgram, finalizeProgram};
+        for (int program : programs) {
+            if (program != 0) {
+                GLES20.glDeleteProgram(program);
+            }
+        }
+        blurProgram = sobelProgram = nmsProgram = hysteresisProgram = finalizeProgram = 0;
+    }
+
+    private void runPass(int program, int sourceTexture, int framebuffer, String texelUniform, float x, float y) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        GLES20.glUseProgram(program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, sourceTexture);
+        // Every pass program has exactly one sampler, bound to unit 0 by default
+        if (texelUniform != null) {
+            GLES20.glUniform2f(GLES20.glGetUniformLocation(program, texelUniform), x, y);
+        }
+        int positionHandle = GLES20.glGetAttribLocation(program, "vPosition");
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 12, quadVertices);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLES20.glDisableVertexAttribArray(positionHandle);
+    }
+
+    private void allocate(int width, int height) {
+        deleteTargets();
+        this.width = width;
+        this.height = height;
+        lumaBuffer = ByteBuffer.allocateDirect(width * height);
+        readbackBuffer = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+
+        int[] textures = new int[5];
+        GLES20.glGenTextures(5, textures, 0);
+        lumaTexture = textures[0];
+        passTextures[0] = textures[1];
+        passTextures[1] = textures[2];
+        passTextures[2] = textures[3];
+        outputTexture = textures[4];
+
+        // NEAREST everywhere: passes address individual texels
+        configureTexture(lumaTexture);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, width, height, 0,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, null);
+
+        GLES20.glGenFramebuffers(4, framebuffers, 0);
+        int[] targets = {passTextures[0], passTextures[1], passTextures[2], outputTexture};
+        for (int i = 0; i < targets.length; i++) {
+            configureTexture(targets[i]);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[i]);
+            GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                    GLES20.GL_TEXTURE_2D, targets[i], 0);
+            int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+            if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+                Log.e(TAG, "❌ Framebuffer " + i + " incomplete: " + status);
+            }
+        }
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        Log.d(TAG, "✅ GPU edge targets allocated: " + width + "x" + height);
+    }
+
+    private static void configureTexture(int texture) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    }
+
+    private void deleteTargets() {
+        if (lumaTexture != 0) {
+            int[] textures = {lumaTexture, passTextures[0], passTextures[1], passTextures[2], outputTexture};
+            GLES20.glDeleteTextures(textures.length, textures, 0);
+            GLES20.glDeleteFramebuffers(framebuffers.length, framebuffers, 0);
+            lumaTexture = 0;
+        }
+    }
+
+    private static int buildProgram(String fragmentShaderCode) {
+        int vertexShader = compile(GLES20.GL_VERTEX_SHADER, PASS_VERTEX_SHADER);
+        int fragmentShader = compile(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+        if (vertexShader == 0 || fragmentShader == 0) {
+            return 0;
+        }
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] != GLES20.GL_TRUE) {
+            Log.e(TAG, "❌ Pass program linking failed: " + GLES20.glGetProgramInfoLog(program));
+            GLES20.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    private static int compile(int type, String code) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, code);
+        GLES20.glCompileShader(shader);
+        int[] compiled = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) {
+            Log.e(TAG, "❌ Shader compilation failed: " + GLES20.glGetShaderInfoLog(shader));
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+}
@@ -0,0 +1,96 @@
+package com.flam.edgedetection;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * On-device JNI microbenchmark: times an empty native call and each way of
+ * handing the frame arrays to native code, against a full processFrame on a
+ * synthetic frame of the same size, so JNI overhead and OpenCV cost can be told
+ * apart. Run it with the "jniBenchmark" launch extra instead of the camera.
+ */
+public class JniBenchmark {
+    private static final String TAG = "JniBenchmark";
+    private static final int WARMUP_ITERATIONS = 200;
+
+    private static native void nativeEmpty();
+    private static native int nativeCriticalArrays(byte[] input, int[] output);
+    private static native int nativeCopiedArrays(byte[] input, int[] output);
+    private static native int nativeDirectBuffers(ByteBuffer input, ByteBuffer output);
+
+    private final int width;
+    private final int height;
+    private final int iterations;
+    private Thread thread;
+
+    public JniBenchmark(int width, int height, int iterations) {
+        this.width = width;
+        this.height = height;
+        this.iterations = iterations;
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "JniBenchmark");
+        thread.start();
+    }
+
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        if (!FrameProcessor.loadNativeLibrary()) {
+            Log.e(TAG, "❌ Native library not available, nothing to benchmark");
+            return;
+        }
+        byte[] nv21 = new byte[width * height + width * height / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                nv21[y * width + x] = (byte) ((((x >> 4) ^ (y >> 4)) & 1) != 0 ? 200 : 40);
+            }
+        }
+        int[] pixels = new int[width * height];
+        ByteBuffer directInput = ByteBuffer.allocateDirect(nv21.length);
+        ByteBuffer directOutput = ByteBuffer.allocateDirect(pixels.length * 4);
+        long[] traceNanos = new long[2];
+        FrameProcessor processor = new FrameProcessor();
+
+        Log.d(TAG, "⏱️ JNI benchmark: " + width + "x" + height + ", " + iterations + " iterations");
+        try {
+            report("empty call", time(() -> nativeEmpty()));
+            report("critical arrays", time(() -> nativeCriticalArrays(nv21, pixels)));
+            report("copied arrays", time(() -> nativeCopiedArrays(nv21, pixels)));
+            report("direct buffers", time(() -> nativeDirectBuffers(directInput, directOutput)));
+            report("processFrame raw", time(() -> processor.processFrame(nv21, width, height, pixels, false,
+                    traceNanos, null, null, 0)));
+            report("processFrame edges", time(() -> processor.processFrame(nv21, width, height, pixels, true,
+                    traceNanos, null, null, 0)));
+        } catch (InterruptedException e) {
+            Log.d(TAG, "JNI benchmark interrupted");
+        } finally {
+            processor.release();
+        }
+    }
+
+    private double time(Runnable call) throws InterruptedException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            call.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    private static void report(String name, double nanosPerCall) {
+        Log.d(TAG, String.format(Locale.US, "  %-20s %12.0f ns/call", name, nanosPerCall));
+    }
+}
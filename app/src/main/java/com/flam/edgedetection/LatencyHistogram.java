@@ -0,0 +1,98 @@
+package com.flam.edgedetection;
+
+/**
+ * Fixed-size log-linear latency histogram (microsecond resolution, ~6% bucket width).
+ * Recording never allocates; callers synchronize externally (see PipelineMetrics).
+ */
+public class LatencyHistogram {
+    // 16 linear sub-buckets per power of two
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Covers up to 2^(MAX_SHIFT + SUB_BUCKET_BITS + 1) us = 2^27 us (~134 s); larger values land in the last bucket
+    private static final int MAX_SHIFT = 22;
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_SHIFT + 1) * SUB_BUCKETS;
+
+    private final int[] buckets = new int[BUCKET_COUNT];
+    private long count = 0;
+    private long sumMicros = 0;
+    private long maxMicros = 0;
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets[bucketIndex(micros)]++;
+        count++;
+        sumMicros += micros;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+    }
+
+    void reset() {
+        java.util.Arrays.fill(buckets, 0);
+        count = 0;
+        sumMicros = 0;
+        maxMicros = 0;
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(count,
+                count > 0 ? sumMicros / (double) count : 0,
+                percentile(0.50), percentile(0.95), percentile(0.99),
+                maxMicros);
+    }
+
+    private long percentile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /** Immutable view of one histogram; all latencies in microseconds. */
+    public static class Snapshot {
+        public final long count;
+        public final double meanMicros;
+        public final long p50Micros;
+        public final long p95Micros;
+        public final long p99Micros;
+        public final long maxMicros;
+
+        Snapshot(long count, double meanMicros, long p50Micros, long p95Micros, long p99Micros, long maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+    }
+}
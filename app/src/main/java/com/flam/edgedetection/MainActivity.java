@@ -12,34 +12,65 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.Camera;
+import androidx.camera.core.CameraInfo;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ConcurrentCamera;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.Preview;
+import androidx.camera.core.UseCaseGroup;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.flam.edgedetection.core.ProcessingScale;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity {
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 100;
+    private static final int METRICS_INTERVAL_SECONDS = 10;
+    
+    // Launch extras, e.g. adb shell am start -n com.flam.edgedetection/.MainActivity --ei recordFrames 300
+    // or --es replay /sdcard/Android/data/com.flam.edgedetection/files/capture-....flamcap --ez replayMaxSpeed true
+    static final String EXTRA_RECORD_FRAMES = "recordFrames";
+    static final String EXTRA_REPLAY = "replay";
+    static final String EXTRA_REPLAY_MAX_SPEED = "replayMaxSpeed";
+    static final String EXTRA_REPLAY_LOOPS = "replayLoops";
+    static final String EXTRA_JNI_BENCHMARK = "jniBenchmark"; // iterations
+    static final String EXTRA_GOVERNOR = "governor"; // false to pin the manual settings
+    static final String EXTRA_CONCURRENT_CAMERAS = "concurrentCameras"; // true: back and front at once
     
     private PreviewView previewView;
     private GLSurfaceView glSurfaceView;
     private Button toggleButton;
     private Button effectButton;
+    private Button engineButton;
+    private Button scaleButton;
     private TextView fpsTextView;
     private TextView resolutionTextView;
     private TextView processingTimeTextView;
     
     private EdgeDetectionRenderer renderer;
     private FrameProcessor frameProcessor;
+    // Front camera stream when both cameras run concurrently, otherwise null
+    private FrameProcessor secondaryProcessor;
     private ExecutorService cameraExecutor;
+    private ExecutorService secondaryCameraExecutor;
+    private ScheduledExecutorService metricsExecutor;
+    private ReplayFrameSource replaySource;
+    private StartupCoordinator startupCoordinator;
+    private JniBenchmark jniBenchmark;
+    private ProcessingGovernor governor;
     
     private boolean isProcessingEnabled = true;
     private Camera camera;
@@ -47,46 +78,83 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        startupCoordinator = new StartupCoordinator(this);
         setContentView(R.layout.activity_main);
         
         previewView = findViewById(R.id.previewView);
         glSurfaceView = findViewById(R.id.glSurfaceView);
         toggleButton = findViewById(R.id.toggleButton);
         effectButton = findViewById(R.id.effectButton);
+        engineButton = findViewById(R.id.engineButton);
+        scaleButton = findViewById(R.id.scaleButton);
         fpsTextView = findViewById(R.id.fpsTextView);
         resolutionTextView = findViewById(R.id.resolutionTextView);
         processingTimeTextView = findViewById(R.id.processingTimeTextView);
         
+        // Both cameras (where the device supports it): one tile each, set before the surface exists
+        boolean concurrentCameras = getIntent().getBooleanExtra(EXTRA_CONCURRENT_CAMERAS, false)
+                && getIntent().getStringExtra(EXTRA_REPLAY) == null
+                && getIntent().getIntExtra(EXTRA_JNI_BENCHMARK, 0) <= 0;
+        
         // Initialize OpenGL renderer
         renderer = new EdgeDetectionRenderer(this);
         renderer.setGLSurfaceView(glSurfaceView);
+        renderer.setStreamCount(concurrentCameras ? 2 : 1);
+        renderer.setExpectedFrameSize(startupCoordinator.getExpectedWidth(), startupCoordinator.getExpectedHeight());
+        renderer.setFirstFrameListener(startupCoordinator::onFirstFrameDrawn);
         glSurfaceView.setEGLContextClientVersion(2);
         glSurfaceView.setRenderer(renderer);
         // Use CONTINUOUSLY to ensure frames are drawn even if requestRender() has issues
         glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
         Log.d("MainActivity", "GLSurfaceView render mode set to CONTINUOUSLY");
         
-        // Initialize frame processor
-        frameProcessor = new FrameProcessor();
-        frameProcessor.setRenderer(renderer);
+        // Initialize frame processor (one per camera stream)
+        frameProcessor = new FrameProcessor(concurrentCameras ? "back" : FrameProcessor.DEFAULT_STREAM);
+        frameProcessor.setRenderer(renderer, 0);
         frameProcessor.setFpsCallback(fps -> runOnUiThread(() -> fpsTextView.setText("FPS: " + fps)));
-        frameProcessor.setResolutionCallback((width, height) -> 
-            runOnUiThread(() -> resolutionTextView.setText("Resolution: " + width + "x" + height)));
+        frameProcessor.setResolutionCallback((width, height) -> {
+            startupCoordinator.onFrameProcessed(width, height);
+            runOnUiThread(() -> resolutionTextView.setText("Resolution: " + width + "x" + height));
+        });
         frameProcessor.setProcessingTimeCallback(timeMs -> 
             runOnUiThread(() -> processingTimeTextView.setText("Processing: " + String.format("%.2f", timeMs) + " ms")));
         
+        if (concurrentCameras) {
+            // Own analyzer thread, pipeline, texture and sender channel; the FPS/resolution
+            // labels follow the primary stream, both streams are in /api/metrics "streams"
+            secondaryProcessor = new FrameProcessor("front");
+            secondaryProcessor.setRenderer(renderer, 1);
+            secondaryCameraExecutor = Executors.newSingleThreadExecutor();
+        }
+        
+        // Load the native library and warm the pipeline(s) while the camera binds
+        if (secondaryProcessor != null) {
+            startupCoordinator.start(frameProcessor, secondaryProcessor);
+        } else {
+            startupCoordinator.start(frameProcessor);
+        }
+        
         // Enable frame sending to web viewer (update IP address in FrameSender.java)
         FrameSender.setEnabled(true);
         Log.d("MainActivity", "FrameSender enabled - frames will be sent to web server");
         
         cameraExecutor = Executors.newSingleThreadExecutor();
         
+        // Periodically push per-stage latency histograms to the web server (/api/metrics)
+        metricsExecutor = Executors.newSingleThreadScheduledExecutor();
+        metricsExecutor.scheduleAtFixedRate(
+                () -> FrameSender.sendMetrics(PipelineMetrics.snapshot(true).toJson()),
+                METRICS_INTERVAL_SECONDS, METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        
         toggleButton.setOnClickListener(v -> {
             isProcessingEnabled = !isProcessingEnabled;
             // When processing is enabled, show edge-detected output
             // When disabled, show raw camera feed
             toggleButton.setText(isProcessingEnabled ? "Edge Detection ON" : "Edge Detection OFF");
             frameProcessor.setProcessingEnabled(isProcessingEnabled);
+            if (secondaryProcessor != null) {
+                secondaryProcessor.setProcessingEnabled(isProcessingEnabled);
+            }
             Log.d("MainActivity", "Toggle: Processing " + (isProcessingEnabled ? "enabled" : "disabled"));
         });
         
@@ -98,6 +166,60 @@ public class MainActivity extends AppCompatActivity {
             Log.d("MainActivity", "Effect changed to: " + effectNames[currentEffect]);
         });
         
+        engineButton.setOnClickListener(v -> {
+            EdgeDetectionRenderer.Engine engine = renderer.cycleEngine();
+            engineButton.setText("Engine: " + engine.label);
+            Log.d("MainActivity", "Edge engine changed to: " + engine);
+        });
+        
+        scaleButton.setOnClickListener(v -> {
+            ProcessingScale scale = frameProcessor.getProcessingScale().next();
+            frameProcessor.setProcessingScale(scale);
+            if (secondaryProcessor != null) {
+                secondaryProcessor.setProcessingScale(scale);
+            }
+            scaleButton.setText("Scale: " + scale.label);
+            Log.d("MainActivity", "Processing scale changed to: " + scale.label);
+        });
+        
+        int jniBenchmarkIterations = getIntent().getIntExtra(EXTRA_JNI_BENCHMARK, 0);
+        if (jniBenchmarkIterations > 0) {
+            // JNI microbenchmark at the expected frame size instead of the camera (results in logcat)
+            jniBenchmark = new JniBenchmark(startupCoordinator.getExpectedWidth(),
+                    startupCoordinator.getExpectedHeight(), jniBenchmarkIterations);
+            jniBenchmark.start();
+            return;
+        }
+        
+        String replayPath = getIntent().getStringExtra(EXTRA_REPLAY);
+        if (replayPath != null) {
+            // Replay a recorded capture instead of the camera (no permission needed)
+            replaySource = new ReplayFrameSource(new File(replayPath), frameProcessor,
+                    !getIntent().getBooleanExtra(EXTRA_REPLAY_MAX_SPEED, false),
+                    getIntent().getIntExtra(EXTRA_REPLAY_LOOPS, 1));
+            replaySource.start();
+            return;
+        }
+        
+        int recordFrames = getIntent().getIntExtra(EXTRA_RECORD_FRAMES, 0);
+        if (recordFrames > 0) {
+            File captureFile = new File(getExternalFilesDir(null), "capture-" + System.currentTimeMillis() + ".flamcap");
+            try {
+                frameProcessor.startRecording(captureFile, recordFrames);
+            } catch (IOException e) {
+                Log.e("MainActivity", "❌ Cannot start recording: " + e.getMessage());
+            }
+        }
+        
+        // Thermal/battery governor (camera only: replays keep fixed settings for comparable runs)
+        if (getIntent().getBooleanExtra(EXTRA_GOVERNOR, true)) {
+            governor = secondaryProcessor != null
+                    ? new ProcessingGovernor(new AndroidSignalSource(this), frameProcessor, secondaryProcessor)
+                    : new ProcessingGovernor(new AndroidSignalSource(this), frameProcessor);
+            governor.setProfileListener(profile -> runOnUiThread(() -> scaleButton.setText("Scale: " + profile.scale.label)));
+            governor.start();
+        }
+        
         if (checkCameraPermission()) {
             android.util.Log.d("MainActivity", "Camera permission granted, starting camera...");
             startCamera();
@@ -195,11 +317,22 @@ public class MainActivity extends AppCompatActivity {
                 Log.d("MainActivity", "Camera available, binding to lifecycle...");
                 cameraProvider.unbindAll();
                 
+                if (secondaryProcessor != null) {
+                    if (bindConcurrentCameras(cameraProvider, preview, imageAnalysis)) {
+                        return;
+                    }
+                    // Single camera after all: drop the second tile and its stream
+                    renderer.setStreamCount(1);
+                    secondaryProcessor.release();
+                }
+                
                 // Bind on UI thread to ensure lifecycle is correct
+                final CameraSelector selectedCamera = cameraSelector;
                 runOnUiThread(() -> {
                     try {
                         camera = cameraProvider.bindToLifecycle(
-                                MainActivity.this, cameraSelector, preview, imageAnalysis);
+                                MainActivity.this, selectedCamera, preview, imageAnalysis);
+                        startupCoordinator.markCameraBound();
                         Log.d("MainActivity", "Camera bound successfully!");
                         Toast.makeText(MainActivity.this, "Camera started successfully", Toast.LENGTH_SHORT).show();
                     } catch (Exception e) {
@@ -228,6 +361,52 @@ public class MainActivity extends AppCompatActivity {
         }, ContextCompat.getMainExecutor(this));
     }
     
+    /**
+     * Bind the back camera (preview + analysis) and the front camera (analysis) at once,
+     * each stream on its own analyzer thread. Runs on the main thread (the provider
+     * listener). False if the device has no concurrent back/front pair or binding fails.
+     */
+    private boolean bindConcurrentCameras(ProcessCameraProvider cameraProvider, Preview preview,
+                                          ImageAnalysis backAnalysis) {
+        CameraSelector backSelector = null;
+        CameraSelector frontSelector = null;
+        for (List<CameraInfo> combination : cameraProvider.getAvailableConcurrentCameraInfos()) {
+            List<CameraInfo> backs = CameraSelector.DEFAULT_BACK_CAMERA.filter(combination);
+            List<CameraInfo> fronts = CameraSelector.DEFAULT_FRONT_CAMERA.filter(combination);
+            if (!backs.isEmpty() && !fronts.isEmpty()) {
+                backSelector = backs.get(0).getCameraSelector();
+                frontSelector = fronts.get(0).getCameraSelector();
+                break;
+            }
+        }
+        if (backSelector == null) {
+            Log.w("MainActivity", "⚠️ No concurrent back/front camera pair on this device, using one camera");
+            return false;
+        }
+        
+        ImageAnalysis frontAnalysis = new ImageAnalysis.Builder()
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                .build();
+        frontAnalysis.setAnalyzer(secondaryCameraExecutor, secondaryProcessor);
+        try {
+            ConcurrentCamera concurrentCamera = cameraProvider.bindToLifecycle(Arrays.asList(
+                    new ConcurrentCamera.SingleCameraConfig(backSelector,
+                            new UseCaseGroup.Builder().addUseCase(preview).addUseCase(backAnalysis).build(), this),
+                    new ConcurrentCamera.SingleCameraConfig(frontSelector,
+                            new UseCaseGroup.Builder().addUseCase(frontAnalysis).build(), this)));
+            camera = concurrentCamera.getCameras().get(0);
+            startupCoordinator.markCameraBound();
+            Log.d("MainActivity", "✅ Back and front cameras bound concurrently");
+            Toast.makeText(this, "Back + front cameras started", Toast.LENGTH_SHORT).show();
+            return true;
+        } catch (Exception e) {
+            Log.e("MainActivity", "❌ Concurrent camera binding failed, using one camera: " + e.getMessage(), e);
+            cameraProvider.unbindAll();
+            return false;
+        }
+    }
+    
     @Override
     protected void onResume() {
         super.onResume();
@@ -237,21 +416,45 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
+        if (isFinishing() && renderer != null) {
+            // GL deletes need the renderer's context current: run them on the GL thread,
+            // ahead of glSurfaceView.onPause() tearing the context down
+            glSurfaceView.queueEvent(renderer::release);
+        }
         glSurfaceView.onPause();
     }
     
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (replaySource != null) {
+            replaySource.stop();
+        }
+        if (startupCoordinator != null) {
+            startupCoordinator.stop();
+        }
+        if (jniBenchmark != null) {
+            jniBenchmark.stop();
+        }
+        if (governor != null) {
+            governor.stop();
+        }
         if (cameraExecutor != null) {
             cameraExecutor.shutdown();
         }
+        if (secondaryCameraExecutor != null) {
+            secondaryCameraExecutor.shutdown();
+        }
+        if (metricsExecutor != null) {
+            metricsExecutor.shutdown();
+        }
         if (frameProcessor != null) {
             frameProcessor.release();
         }
-        if (renderer != null) {
-            renderer.release();
+        if (secondaryProcessor != null) {
+            secondaryProcessor.release();
         }
+        // The renderer's GL objects were released on the GL thread in onPause
     }
 }
 
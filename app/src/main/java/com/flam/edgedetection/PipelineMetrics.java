@@ -0,0 +1,287 @@
+package com.flam.edgedetection;
+
+import android.os.Build;
+
+import com.flam.edgedetection.core.ProcessingScale;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-stage latency histograms for the frame pipeline.
+ * Stages are recorded from the analyzer, GL and sender threads; recording is a
+ * short synchronized update of fixed arrays, and snapshot() copies every stage
+ * under the same lock so percentiles are consistent across stages.
+ */
+public class PipelineMetrics {
+    public enum Stage {
+        REPACK("repack"),       // YUV_420_888 -> NV21 copy in FrameProcessor
+        NATIVE("native"),       // JNI processFrame call
+        GPU_EDGES("gpu_edges"), // luma upload + GpuEdgeEngine pass submission on the GL thread
+        UPLOAD("upload"),       // glTexImage2D in EdgeDetectionRenderer
+        DRAW("draw"),           // draw call submission in EdgeDetectionRenderer
+        ENCODE("encode"),       // bitmap copy + PNG + base64 in FrameSender
+        SEND("send");           // HTTP POST in FrameSender
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final Object lock = new Object();
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    // Native edge time split by ProcessingScale, so scales can be compared within one window
+    private static final LatencyHistogram[] edgeScaleHistograms = new LatencyHistogram[ProcessingScale.values().length];
+    private static long windowStartMillis = System.currentTimeMillis();
+    // One-off cold-start breakdown from StartupCoordinator, repeated in every window
+    private static volatile String startupJson;
+    // Active ProcessingGovernor profile, if the governor runs
+    private static volatile String governorProfile;
+    // Per camera stream (FrameProcessor stream id), in the order streams first reported
+    private static final Map<String, StreamCounters> streams = new LinkedHashMap<>();
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < edgeScaleHistograms.length; i++) {
+            edgeScaleHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private PipelineMetrics() {
+    }
+
+    public static void record(Stage stage, long nanos) {
+        synchronized (lock) {
+            histograms[stage.ordinal()].record(nanos);
+        }
+    }
+
+    /** Native processFrame time of an edge-detected frame at the given scale. */
+    public static void recordEdgeScale(ProcessingScale scale, long nanos) {
+        synchronized (lock) {
+            edgeScaleHistograms[scale.ordinal()].record(nanos);
+        }
+    }
+
+    /**
+     * A frame processed natively on the given camera stream: processFrame time and the
+     * part of it spent waiting for a shared native worker.
+     */
+    public static void recordStreamFrame(String stream, long nativeNanos, long queueWaitNanos) {
+        synchronized (lock) {
+            StreamCounters counters = streamCounters(stream);
+            counters.frames++;
+            counters.nativeTime.record(nativeNanos);
+            counters.queueWait.record(queueWaitNanos);
+        }
+    }
+
+    /** A frame shown on the stream without native processing (GPU engine). */
+    public static void recordStreamFrame(String stream) {
+        synchronized (lock) {
+            streamCounters(stream).frames++;
+        }
+    }
+
+    /** A camera frame the stream deliberately left unprocessed (governor frame skip). */
+    public static void recordStreamSkip(String stream) {
+        synchronized (lock) {
+            streamCounters(stream).skipped++;
+        }
+    }
+
+    // lock held
+    private static StreamCounters streamCounters(String stream) {
+        StreamCounters counters = streams.get(stream);
+        if (counters == null) {
+            counters = new StreamCounters();
+            streams.put(stream, counters);
+        }
+        return counters;
+    }
+
+    /** JSON object describing this process's startup; attached to every snapshot from now on. */
+    public static void setStartup(String json) {
+        startupJson = json;
+    }
+
+    public static void setGovernorProfile(String profile) {
+        governorProfile = profile;
+    }
+
+    /** Atomic copy of all stages since the last reset. */
+    public static Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /** Atomic copy of all stages; optionally starts a new window afterwards. */
+    public static Snapshot snapshot(boolean reset) {
+        Stage[] stages = Stage.values();
+        LatencyHistogram.Snapshot[] stageSnapshots = new LatencyHistogram.Snapshot[stages.length];
+        LatencyHistogram.Snapshot[] scaleSnapshots = new LatencyHistogram.Snapshot[edgeScaleHistograms.length];
+        StreamSnapshot[] streamSnapshots;
+        long startMillis;
+        long endMillis;
+        synchronized (lock) {
+            for (int i = 0; i < stages.length; i++) {
+                stageSnapshots[i] = histograms[i].snapshot();
+                if (reset) {
+                    histograms[i].reset();
+                }
+            }
+            for (int i = 0; i < scaleSnapshots.length; i++) {
+                scaleSnapshots[i] = edgeScaleHistograms[i].snapshot();
+                if (reset) {
+                    edgeScaleHistograms[i].reset();
+                }
+            }
+            streamSnapshots = new StreamSnapshot[streams.size()];
+            int index = 0;
+            for (Map.Entry<String, StreamCounters> entry : streams.entrySet()) {
+                StreamCounters counters = entry.getValue();
+                streamSnapshots[index++] = new StreamSnapshot(entry.getKey(), counters.frames, counters.skipped,
+                        counters.nativeTime.snapshot(), counters.queueWait.snapshot());
+                if (reset) {
+                    counters.reset();
+                }
+            }
+            startMillis = windowStartMillis;
+            endMillis = System.currentTimeMillis();
+            if (reset) {
+                windowStartMillis = endMillis;
+            }
+        }
+        return new Snapshot(stageSnapshots, scaleSnapshots, streamSnapshots, startupJson, governorProfile,
+                startMillis, endMillis);
+    }
+
+    private static class StreamCounters {
+        long frames;
+        long skipped;
+        final LatencyHistogram nativeTime = new LatencyHistogram();
+        final LatencyHistogram queueWait = new LatencyHistogram();
+
+        void reset() {
+            frames = 0;
+            skipped = 0;
+            nativeTime.reset();
+            queueWait.reset();
+        }
+    }
+
+    /** One camera stream's throughput over a snapshot window. */
+    public static class StreamSnapshot {
+        public final String stream;
+        public final long frames;
+        public final long skipped;
+        public final LatencyHistogram.Snapshot nativeTime;
+        public final LatencyHistogram.Snapshot queueWait;
+
+        StreamSnapshot(String stream, long frames, long skipped,
+                       LatencyHistogram.Snapshot nativeTime, LatencyHistogram.Snapshot queueWait) {
+            this.stream = stream;
+            this.frames = frames;
+            this.skipped = skipped;
+            this.nativeTime = nativeTime;
+            this.queueWait = queueWait;
+        }
+    }
+
+    public static class Snapshot {
+        private final LatencyHistogram.Snapshot[] stages;
+        private final LatencyHistogram.Snapshot[] edgeScales;
+        private final StreamSnapshot[] streams;
+        private final String startup;
+        private final String profile;
+        public final long windowStartMillis;
+        public final long windowEndMillis;
+
+        Snapshot(LatencyHistogram.Snapshot[] stages, LatencyHistogram.Snapshot[] edgeScales,
+                 StreamSnapshot[] streams, String startup, String profile,
+                 long windowStartMillis, long windowEndMillis) {
+            this.stages = stages;
+            this.edgeScales = edgeScales;
+            this.streams = streams;
+            this.startup = startup;
+            this.profile = profile;
+            this.windowStartMillis = windowStartMillis;
+            this.windowEndMillis = windowEndMillis;
+        }
+
+        public LatencyHistogram.Snapshot get(Stage stage) {
+            return stages[stage.ordinal()];
+        }
+
+        public LatencyHistogram.Snapshot get(ProcessingScale scale) {
+            return edgeScales[scale.ordinal()];
+        }
+
+        public StreamSnapshot[] getStreams() {
+            return streams.clone();
+        }
+
+        /** JSON body for POST /api/metrics. */
+        public String toJson() {
+            StringBuilder json = new StringBuilder(512);
+            json.append(String.format(Locale.US,
+                    "{\"device\":\"%s %s\",\"sdk\":%d,\"windowStart\":%d,\"windowEnd\":%d,\"stages\":{",
+                    Build.MANUFACTURER, Build.MODEL, Build.VERSION.SDK_INT, windowStartMillis, windowEndMillis));
+            Stage[] values = Stage.values();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendHistogram(json, values[i].key, stages[i]);
+            }
+            // Only scales that were used in this window
+            json.append("},\"edgeScales\":{");
+            ProcessingScale[] scales = ProcessingScale.values();
+            boolean first = true;
+            for (int i = 0; i < scales.length; i++) {
+                if (edgeScales[i].count == 0) {
+                    continue;
+                }
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendHistogram(json, scales[i].label, edgeScales[i]);
+            }
+            // Frames per second per camera stream over this window
+            json.append("},\"streams\":{");
+            double windowSeconds = Math.max(1, windowEndMillis - windowStartMillis) / 1000.0;
+            for (int i = 0; i < streams.length; i++) {
+                StreamSnapshot stream = streams[i];
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(String.format(Locale.US, "\"%s\":{\"frames\":%d,\"skipped\":%d,\"fps\":%.1f,",
+                        stream.stream, stream.frames, stream.skipped, stream.frames / windowSeconds));
+                appendHistogram(json, "native", stream.nativeTime);
+                json.append(',');
+                appendHistogram(json, "queueWait", stream.queueWait);
+                json.append('}');
+            }
+            json.append('}');
+            if (startup != null) {
+                json.append(",\"startup\":").append(startup);
+            }
+            if (profile != null) {
+                json.append(",\"profile\":\"").append(profile).append('"');
+            }
+            json.append('}');
+            return json.toString();
+        }
+
+        private static void appendHistogram(StringBuilder json, String key, LatencyHistogram.Snapshot s) {
+            json.append(String.format(Locale.US,
+                    "\"%s\":{\"count\":%d,\"meanUs\":%.1f,\"p50Us\":%d,\"p95Us\":%d,\"p99Us\":%d,\"maxUs\":%d}",
+                    key, s.count, s.meanMicros, s.p50Micros, s.p95Micros, s.p99Micros, s.maxMicros));
+        }
+    }
+}
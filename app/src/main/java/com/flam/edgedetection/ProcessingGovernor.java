@@ -0,0 +1,91 @@
+package com.flam.edgedetection;
+
+import android.util.Log;
+
+import com.flam.edgedetection.core.DeviceSignals;
+import com.flam.edgedetection.core.GovernorPolicy;
+import com.flam.edgedetection.core.PipelineProfile;
+import com.flam.edgedetection.core.SignalSource;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a SignalSource every few seconds, runs the readings through GovernorPolicy
+ * and applies profile changes to every camera stream's FrameProcessor (scale, frame
+ * skip, send intervals). Settings are only written when the profile changes, so manual
+ * changes stick until the next change. The renderer's engine is left to the user: the
+ * GPU engine does not feed the web edge stream, so the governor never switches to it.
+ */
+public class ProcessingGovernor {
+    private static final String TAG = "ProcessingGovernor";
+    private static final long EVALUATION_INTERVAL_SECONDS = 2;
+    private static final long FRAME_BUDGET_MICROS = 33_333; // 30 fps
+    private static final int STEP_UP_EVALUATIONS = 5;        // 10 s of calm per step back up
+    private static final int LATENCY_COOLDOWN_EVALUATIONS = 5; // one 10 s metrics window
+
+    private final SignalSource source;
+    private final GovernorPolicy policy = new GovernorPolicy(
+            FRAME_BUDGET_MICROS, STEP_UP_EVALUATIONS, LATENCY_COOLDOWN_EVALUATIONS);
+    private final FrameProcessor[] processors;
+    private ProfileListener profileListener;
+    private ScheduledExecutorService executor;
+    private PipelineProfile applied;
+
+    public ProcessingGovernor(SignalSource source, FrameProcessor... processors) {
+        this.source = source;
+        this.processors = processors;
+    }
+
+    /** Called on the governor thread after a new profile has been applied. */
+    public void setProfileListener(ProfileListener listener) {
+        this.profileListener = listener;
+    }
+
+    public void start() {
+        apply(policy.getCurrent(), null);
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleAtFixedRate(this::evaluate,
+                EVALUATION_INTERVAL_SECONDS, EVALUATION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void evaluate() {
+        try {
+            DeviceSignals signals = source.read();
+            PipelineProfile profile = policy.evaluate(signals);
+            if (profile != applied) {
+                apply(profile, signals);
+            }
+        } catch (Exception e) {
+            // An exception would cancel the schedule; keep governing with the next reading
+            Log.e(TAG, "❌ Governor evaluation failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void apply(PipelineProfile profile, DeviceSignals signals) {
+        for (FrameProcessor processor : processors) {
+            processor.setProcessingScale(profile.scale);
+            processor.setFrameSkip(profile.processEveryNth);
+            processor.setSendIntervals(profile.edgeSendInterval, profile.rawSendInterval);
+        }
+        PipelineMetrics.setGovernorProfile(profile.name());
+        Log.d(TAG, "🌡️ Profile " + (applied != null ? applied + " -> " : "") + profile
+                + (signals != null ? " (" + signals + ")" : ""));
+        applied = profile;
+        ProfileListener listener = profileListener;
+        if (listener != null) {
+            listener.onProfileChanged(profile);
+        }
+    }
+
+    interface ProfileListener {
+        void onProfileChanged(PipelineProfile profile);
+    }
+}
@@ -0,0 +1,67 @@
+package com.flam.edgedetection;
+
+import android.util.Log;
+
+import com.flam.edgedetection.core.CaptureReader;
+import com.flam.edgedetection.core.CaptureReplay;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Stands in for the camera: replays a capture segment recorded by
+ * FrameProcessor.startRecording through FrameProcessor.processReplayFrame on
+ * its own thread, at the recorded frame timing or as fast as possible.
+ */
+public class ReplayFrameSource {
+    private static final String TAG = "ReplayFrameSource";
+    
+    private final File file;
+    private final FrameProcessor processor;
+    private final boolean realtime;
+    private final int loops;
+    private Thread thread;
+    private volatile CaptureReplay replay;
+    
+    /**
+     * @param realtime false to replay at maximum speed (throughput benchmarking)
+     * @param loops    passes over the capture, 0 to loop until stop()
+     */
+    public ReplayFrameSource(File file, FrameProcessor processor, boolean realtime, int loops) {
+        this.file = file;
+        this.processor = processor;
+        this.realtime = realtime;
+        this.loops = loops;
+    }
+    
+    public void start() {
+        thread = new Thread(this::runReplay, "FrameReplay");
+        thread.start();
+    }
+    
+    public void stop() {
+        CaptureReplay current = replay;
+        if (current != null) {
+            current.stop();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+    
+    private void runReplay() {
+        try (CaptureReader reader = new CaptureReader(file)) {
+            Log.d(TAG, "▶️ Replaying " + reader.getFrameCount() + " frames from " + file
+                    + (realtime ? " (recorded speed)" : " (max speed)")
+                    + (reader.isIndexed() ? "" : " - no index, recording was cut short"));
+            replay = new CaptureReplay(reader);
+            long startTime = System.nanoTime();
+            long frames = replay.run(processor::processReplayFrame, realtime, loops);
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            Log.d(TAG, "⏹️ Replay done: " + frames + " frames in " + String.format("%.2f", seconds) + " s ("
+                    + String.format("%.1f", seconds > 0 ? frames / seconds : 0) + " fps)");
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Cannot replay " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.flam.edgedetection;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.flam.edgedetection.core.Nv21Repacker;
+import com.flam.edgedetection.core.ProcessingScale;
+import com.flam.edgedetection.core.YuvPlane;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Takes first-frame work off the critical path: while CameraX binds, a background
+ * thread loads the native library, runs each stream's native pipeline once at the
+ * expected frame size (allocating its Mats) and loops the NV21 repack until the JIT
+ * has compiled it. The expected size is the primary stream's frame size on the
+ * previous run.
+ *
+ * Time to first frame (TTFF) is measured from onCreate and from process start to
+ * the first frame on screen, with per-phase timestamps, and attached to every
+ * /api/metrics snapshot as "startup".
+ */
+public class StartupCoordinator {
+    private static final String TAG = "StartupCoordinator";
+    private static final String PREFS_NAME = "startup";
+    private static final String KEY_FRAME_WIDTH = "frameWidth";
+    private static final String KEY_FRAME_HEIGHT = "frameHeight";
+    // CameraX's default ImageAnalysis resolution, used until a frame has been seen
+    private static final int DEFAULT_WIDTH = 640;
+    private static final int DEFAULT_HEIGHT = 480;
+    private static final int JIT_WARMUP_ITERATIONS = 50;
+
+    // False once any activity instance in this process has started: later starts are warm
+    private static boolean coldProcess = true;
+
+    private final SharedPreferences prefs;
+    private final long createNanos = System.nanoTime();
+    private final boolean coldStart;
+    private final int expectedWidth;
+    private final int expectedHeight;
+    private Thread thread;
+
+    // Phase timestamps (System.nanoTime), 0 until reached
+    private volatile long nativeLoadedNanos;
+    private volatile long nativeWarmedNanos;
+    private volatile long jitWarmedNanos;
+    private volatile long cameraBoundNanos;
+    private volatile long firstProcessedNanos;
+    private volatile boolean nativeWarmUpOk;
+
+    // Only touched by the frame-delivering thread
+    private int rememberedWidth;
+    private int rememberedHeight;
+
+    /** Create first thing in onCreate: the create-to-first-frame time starts here. */
+    public StartupCoordinator(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        rememberedWidth = prefs.getInt(KEY_FRAME_WIDTH, DEFAULT_WIDTH);
+        rememberedHeight = prefs.getInt(KEY_FRAME_HEIGHT, DEFAULT_HEIGHT);
+        expectedWidth = rememberedWidth;
+        expectedHeight = rememberedHeight;
+        synchronized (StartupCoordinator.class) {
+            coldStart = coldProcess;
+            coldProcess = false;
+        }
+    }
+
+    public int getExpectedWidth() {
+        return expectedWidth;
+    }
+
+    public int getExpectedHeight() {
+        return expectedHeight;
+    }
+
+    /** Start the background warm-up of the given streams' pipelines, each at its current scale. */
+    public void start(FrameProcessor... processors) {
+        thread = new Thread(() -> warmUp(processors), "WarmStart");
+        thread.start();
+    }
+
+    public void markCameraBound() {
+        cameraBoundNanos = System.nanoTime();
+    }
+
+    /**
+     * Called with the size of every processed frame (FrameProcessor's resolution callback).
+     * Marks the first processed frame and remembers the size for the next start.
+     */
+    public void onFrameProcessed(int width, int height) {
+        if (firstProcessedNanos == 0) {
+            firstProcessedNanos = System.nanoTime();
+        }
+        if (width != rememberedWidth || height != rememberedHeight) {
+            rememberedWidth = width;
+            rememberedHeight = height;
+            prefs.edit().putInt(KEY_FRAME_WIDTH, width).putInt(KEY_FRAME_HEIGHT, height).apply();
+        }
+    }
+
+    /** GL thread, once: the first frame is on screen. */
+    public void onFirstFrameDrawn() {
+        long now = System.nanoTime();
+        long processToFirstFrameMillis = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        String json = String.format(Locale.US,
+                "{\"coldStart\":%b,\"processToFirstFrameMs\":%d,\"createToFirstFrameMs\":%.1f,"
+                        + "\"nativeLoadedMs\":%.1f,\"nativeWarmedMs\":%.1f,\"jitWarmedMs\":%.1f,"
+                        + "\"cameraBoundMs\":%.1f,\"firstProcessedMs\":%.1f,\"nativeWarmUpOk\":%b,"
+                        + "\"expectedSize\":\"%dx%d\"}",
+                coldStart, coldStart ? processToFirstFrameMillis : -1, sinceCreate(now),
+                sinceCreate(nativeLoadedNanos), sinceCreate(nativeWarmedNanos), sinceCreate(jitWarmedNanos),
+                sinceCreate(cameraBoundNanos), sinceCreate(firstProcessedNanos), nativeWarmUpOk,
+                expectedWidth, expectedHeight);
+        Log.d(TAG, "⏱️ Time to first frame: " + String.format(Locale.US, "%.1f", sinceCreate(now))
+                + " ms after onCreate" + (coldStart ? ", " + processToFirstFrameMillis + " ms after process start" : " (warm start)"));
+        Log.d(TAG, "⏱️ Startup phases: " + json);
+        PipelineMetrics.setStartup(json);
+    }
+
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    // Milliseconds from onCreate to the given timestamp, -1 if the phase was not reached
+    private double sinceCreate(long nanos) {
+        return nanos == 0 ? -1 : (nanos - createNanos) / 1_000_000.0;
+    }
+
+    private void warmUp(FrameProcessor[] processors) {
+        if (FrameProcessor.loadNativeLibrary()) {
+            nativeLoadedNanos = System.nanoTime();
+            boolean ok = processors.length > 0;
+            for (FrameProcessor processor : processors) {
+                ProcessingScale scale = processor.getProcessingScale();
+                try {
+                    ok &= processor.warmUp(expectedWidth, expectedHeight, scale.pyramidLevels);
+                } catch (UnsatisfiedLinkError | IllegalStateException e) {
+                    Log.e(TAG, "❌ Native warm-up unavailable for stream " + processor.getStreamId() + ": " + e.getMessage());
+                    ok = false;
+                }
+            }
+            nativeWarmUpOk = ok;
+            nativeWarmedNanos = System.nanoTime();
+        }
+
+        // Same planes layout as a typical camera: tight luma, semi-planar chroma (pixel stride 2)
+        int chromaSize = expectedWidth * expectedHeight / 2;
+        ByteBuffer chroma = ByteBuffer.allocateDirect(chromaSize);
+        ByteBuffer uBuffer = chroma.duplicate();
+        uBuffer.position(1);
+        SyntheticPlane y = new SyntheticPlane(ByteBuffer.allocateDirect(expectedWidth * expectedHeight), expectedWidth, 1);
+        SyntheticPlane u = new SyntheticPlane(uBuffer.slice(), expectedWidth, 2);
+        SyntheticPlane v = new SyntheticPlane(chroma, expectedWidth, 2);
+        Nv21Repacker repacker = new Nv21Repacker();
+        byte[] nv21 = new byte[Nv21Repacker.nv21Size(expectedWidth, expectedHeight)];
+        for (int i = 0; i < JIT_WARMUP_ITERATIONS && !Thread.currentThread().isInterrupted(); i++) {
+            repacker.repack(y, u, v, expectedWidth, expectedHeight, nv21);
+        }
+        jitWarmedNanos = System.nanoTime();
+        Log.d(TAG, "🔥 Warm-up done for " + expectedWidth + "x" + expectedHeight + ": native "
+                + (nativeWarmUpOk ? "ready" : "not warmed") + " at " + String.format(Locale.US, "%.1f", sinceCreate(nativeWarmedNanos))
+                + " ms, repack JIT-warmed at " + String.format(Locale.US, "%.1f", sinceCreate(jitWarmedNanos)) + " ms");
+    }
+
+    private static class SyntheticPlane implements YuvPlane {
+        private final ByteBuffer buffer;
+        private final int rowStride;
+        private final int pixelStride;
+
+        SyntheticPlane(ByteBuffer buffer, int rowStride, int pixelStride) {
+            this.buffer = buffer;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        @Override
+        public int getPixelStride() {
+            return pixelStride;
+        }
+    }
+}
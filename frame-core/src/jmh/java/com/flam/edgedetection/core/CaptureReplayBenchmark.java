@@ -0,0 +1,75 @@
+package com.flam.edgedetection.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays a capture segment through the Java side of the frame path (mmap read
+ * + NV21 repack), one frame per invocation. Uses the recording given with
+ * ./gradlew :frame-core:jmh -Pcapture=/path/to/file.flamcap, otherwise a
+ * synthetic 30-frame segment per resolution.
+ */
+@State(Scope.Thread)
+public class CaptureReplayBenchmark {
+    private static final int SYNTHETIC_FRAMES = 30;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private File syntheticFile;
+    private CaptureReader reader;
+    private final CapturedFrame frame = new CapturedFrame();
+    private final Nv21Repacker repacker = new Nv21Repacker();
+    private byte[] nv21 = new byte[0];
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        String capture = System.getProperty("flam.capture");
+        File file;
+        if (capture != null && !capture.isEmpty()) {
+            file = new File(capture);
+        } else {
+            int[] size = SyntheticPlanes.parseResolution(resolution);
+            SyntheticPlanes planes = SyntheticPlanes.create(size[0], size[1], true);
+            syntheticFile = File.createTempFile("replay-" + resolution, ".flamcap");
+            try (CaptureWriter writer = new CaptureWriter(syntheticFile)) {
+                for (int i = 0; i < SYNTHETIC_FRAMES; i++) {
+                    writer.append(planes.y, planes.u, planes.v, planes.width, planes.height, i * 33_333_333L);
+                }
+            }
+            file = syntheticFile;
+        }
+        reader = new CaptureReader(file);
+        if (reader.getFrameCount() == 0) {
+            throw new IOException("Capture has no frames: " + file);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        if (syntheticFile != null && !syntheticFile.delete()) {
+            syntheticFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public byte[] replayRepack() {
+        reader.read(next, frame);
+        next = (next + 1) % reader.getFrameCount();
+        int size = Nv21Repacker.nv21Size(frame.width, frame.height);
+        if (nv21.length < size) {
+            nv21 = new byte[size];
+        }
+        repacker.repack(frame.y, frame.u, frame.v, frame.width, frame.height, nv21);
+        return nv21;
+    }
+}
@@ -0,0 +1,70 @@
+package com.flam.edgedetection.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Edge mask encoding as done by FrameSender for every frame: a keyframe, and a
+ * delta where ~1% of the (5% dense) edge pixels flip, as with a mostly static camera.
+ */
+@State(Scope.Thread)
+public class EdgeDeltaEncoderBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private int width;
+    private int height;
+    private ByteBuffer[] masks;
+    private EdgeDeltaEncoder encoder;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticPlanes.parseResolution(resolution);
+        width = size[0];
+        height = size[1];
+        Random random = new Random(42);
+        int pixels = width * height;
+        masks = new ByteBuffer[2];
+        for (int m = 0; m < masks.length; m++) {
+            masks[m] = ByteBuffer.allocateDirect(EdgeDeltaEncoder.maskBytes(width, height)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        for (int i = 0; i < pixels; i++) {
+            if (random.nextInt(20) == 0) {
+                setBit(masks[0], i);
+                setBit(masks[1], i);
+            }
+        }
+        for (int i = 0; i < pixels / 2000; i++) {
+            int pixel = random.nextInt(pixels);
+            masks[1].put(pixel >>> 3, (byte) (masks[1].get(pixel >>> 3) ^ (1 << (pixel & 7))));
+        }
+        encoder = new EdgeDeltaEncoder(Integer.MAX_VALUE);
+    }
+
+    private static void setBit(ByteBuffer mask, int pixel) {
+        mask.put(pixel >>> 3, (byte) (mask.get(pixel >>> 3) | (1 << (pixel & 7))));
+    }
+
+    @Benchmark
+    public int keyframe() {
+        encoder.requestKeyframe();
+        encoder.encode(masks[0], width, height, 30, 0, 0);
+        return encoder.getPacketLength();
+    }
+
+    /** Alternates between two masks, so every packet is a sparse delta. */
+    @Benchmark
+    public int delta() {
+        next ^= 1;
+        encoder.encode(masks[next], width, height, 30, 0, 0);
+        return encoder.getPacketLength();
+    }
+}
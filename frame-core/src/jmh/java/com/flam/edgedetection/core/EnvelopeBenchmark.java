@@ -0,0 +1,51 @@
+package com.flam.edgedetection.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Base64 + JSON envelope built by FrameSender for each posted frame.
+ * The payload stands in for the PNG of an edge map (about one byte per 8 pixels).
+ */
+@State(Scope.Thread)
+public class EnvelopeBenchmark {
+    private static final String TRACE_JSON =
+            "{\"seq\":42,\"sensorTimestamp\":123456789,\"sensorAgeMs\":3.10,\"hops\":{\"analyze\":0.000,"
+                    + "\"repacked\":2.100,\"nativeEnter\":2.200,\"nativeExit\":14.800,\"sendQueued\":15.300,"
+                    + "\"encoded\":31.000,\"sent\":31.000},\"drops\":{\"analyzer\":0,\"renderer\":3,\"sender\":0}}";
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private FrameEnvelope envelope;
+    private byte[] png;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticPlanes.parseResolution(resolution);
+        width = size[0];
+        height = size[1];
+        png = new byte[width * height / 8];
+        new Random(42).nextBytes(png);
+        final Base64.Encoder encoder = Base64.getEncoder();
+        envelope = new FrameEnvelope(new Base64Encoder() {
+            @Override
+            public String encode(byte[] data) {
+                return encoder.encodeToString(data);
+            }
+        });
+    }
+
+    @Benchmark
+    public String buildEnvelope() {
+        return envelope.build(png, width, height, 30, 12_345_678L, 7, 1_700_000_000_000L, TRACE_JSON);
+    }
+}
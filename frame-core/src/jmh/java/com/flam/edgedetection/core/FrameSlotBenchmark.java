@@ -0,0 +1,43 @@
+package com.flam.edgedetection.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Analyzer -> GL thread hand-off through FrameSlot, uncontended and with a
+ * concurrent producer/consumer pair.
+ */
+@State(Scope.Group)
+public class FrameSlotBenchmark {
+    private final FrameSlot<Object> slot = new FrameSlot<>();
+    private final int[] pixels = new int[640 * 480];
+    private final Object tag = new Object();
+
+    @State(Scope.Thread)
+    public static class Consumer {
+        final FrameSlot.Frame<Object> frame = new FrameSlot.Frame<>();
+    }
+
+    @Benchmark
+    public boolean publishThenPoll(Consumer consumer) {
+        slot.publish(pixels, 640, 480, tag);
+        return slot.poll(consumer.frame);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean producer() {
+        return slot.publish(pixels, 640, 480, tag);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean consumer(Consumer consumer) {
+        return slot.poll(consumer.frame);
+    }
+}
@@ -0,0 +1,45 @@
+package com.flam.edgedetection.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * YUV_420_888 -> NV21 repack, as done by FrameProcessor for every analyzed frame.
+ */
+@State(Scope.Thread)
+public class Nv21RepackBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"semiPlanar", "planar"})
+    public String layout;
+
+    private SyntheticPlanes planes;
+    private Nv21Repacker repacker;
+    private byte[] nv21;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticPlanes.parseResolution(resolution);
+        planes = SyntheticPlanes.create(size[0], size[1], "semiPlanar".equals(layout));
+        repacker = new Nv21Repacker();
+        nv21 = new byte[Nv21Repacker.nv21Size(size[0], size[1])];
+    }
+
+    @Benchmark
+    public byte[] repackReusedBuffer() {
+        repacker.repack(planes.y, planes.u, planes.v, planes.width, planes.height, nv21);
+        return nv21;
+    }
+
+    /** Allocates the output per frame, matching the current FrameProcessor behavior. */
+    @Benchmark
+    public byte[] repackNewBuffer() {
+        byte[] out = new byte[Nv21Repacker.nv21Size(planes.width, planes.height)];
+        repacker.repack(planes.y, planes.u, planes.v, planes.width, planes.height, out);
+        return out;
+    }
+}
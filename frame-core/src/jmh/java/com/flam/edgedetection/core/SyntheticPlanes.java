@@ -0,0 +1,93 @@
+package com.flam.edgedetection.core;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Synthetic YUV_420_888 planes with camera-like layouts: rows padded to a
+ * 64-byte stride, and either semi-planar chroma (U and V views into one
+ * interleaved buffer, pixel stride 2) or fully planar chroma (pixel stride 1).
+ */
+final class SyntheticPlanes {
+    static final int ROW_ALIGNMENT = 64;
+
+    final YuvPlane y;
+    final YuvPlane u;
+    final YuvPlane v;
+    final int width;
+    final int height;
+
+    private SyntheticPlanes(YuvPlane y, YuvPlane u, YuvPlane v, int width, int height) {
+        this.y = y;
+        this.u = u;
+        this.v = v;
+        this.width = width;
+        this.height = height;
+    }
+
+    static int[] parseResolution(String resolution) {
+        String[] parts = resolution.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    static SyntheticPlanes create(int width, int height, boolean semiPlanar) {
+        Random random = new Random(42);
+        int yStride = align(width);
+        ByteBuffer yBuffer = filled(yStride * (height - 1) + width, random);
+
+        if (semiPlanar) {
+            int chromaStride = align(width);
+            // Last row ends right after its final V/U pair, as on real devices
+            ByteBuffer chroma = filled(chromaStride * (height / 2 - 1) + width, random);
+            ByteBuffer vBuffer = slice(chroma, 0, chroma.capacity() - 1);
+            ByteBuffer uBuffer = slice(chroma, 1, chroma.capacity() - 1);
+            return new SyntheticPlanes(plane(yBuffer, yStride, 1),
+                    plane(uBuffer, chromaStride, 2), plane(vBuffer, chromaStride, 2), width, height);
+        }
+
+        int chromaStride = align(width / 2);
+        int chromaSize = chromaStride * (height / 2 - 1) + width / 2;
+        return new SyntheticPlanes(plane(yBuffer, yStride, 1),
+                plane(filled(chromaSize, random), chromaStride, 1),
+                plane(filled(chromaSize, random), chromaStride, 1), width, height);
+    }
+
+    private static int align(int value) {
+        return (value + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+    }
+
+    private static ByteBuffer filled(int size, Random random) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    private static YuvPlane plane(final ByteBuffer buffer, final int rowStride, final int pixelStride) {
+        return new YuvPlane() {
+            @Override
+            public ByteBuffer getBuffer() {
+                return buffer;
+            }
+
+            @Override
+            public int getRowStride() {
+                return rowStride;
+            }
+
+            @Override
+            public int getPixelStride() {
+                return pixelStride;
+            }
+        };
+    }
+}
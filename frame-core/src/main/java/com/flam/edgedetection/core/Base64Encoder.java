@@ -0,0 +1,10 @@
+package com.flam.edgedetection.core;
+
+/**
+ * Base64 encoder used by FrameEnvelope.
+ * The app supplies android.util.Base64 (java.util.Base64 needs API 26);
+ * host code and benchmarks can use java.util.Base64.
+ */
+public interface Base64Encoder {
+    String encode(byte[] data);
+}
@@ -0,0 +1,37 @@
+package com.flam.edgedetection.core;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of a frame capture segment (.flamcap), little-endian throughout:
+ *
+ * <pre>
+ * header   int magic 'FLCP', int version, long createdAtMillis
+ * frame*   int magic 'FRAM', int width, int height, long timestampNanos,
+ *          3 x (int rowStride, int pixelStride, int length)  // Y, U, V
+ *          Y bytes, U bytes, V bytes                         // plane buffers as captured
+ * index    frameCount x (long frameOffset, long timestampNanos)
+ * footer   long indexOffset, int frameCount, int magic 'FIDX'
+ * </pre>
+ *
+ * Planes are stored with their original strides so replay exercises the same
+ * repack code as the camera. The index and footer are written on close; a
+ * segment without them (recording interrupted) is re-indexed by scanning.
+ */
+final class CaptureFormat {
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int FILE_MAGIC = 0x50434C46;  // "FLCP"
+    static final int FRAME_MAGIC = 0x4D415246; // "FRAM"
+    static final int INDEX_MAGIC = 0x58444946; // "FIDX"
+    static final int VERSION = 1;
+
+    static final int FILE_HEADER_BYTES = 16;
+    static final int PLANE_HEADER_BYTES = 12;
+    static final int FRAME_HEADER_BYTES = 20 + 3 * PLANE_HEADER_BYTES;
+    static final int INDEX_ENTRY_BYTES = 16;
+    static final int FOOTER_BYTES = 16;
+
+    private CaptureFormat() {
+    }
+}
@@ -0,0 +1,133 @@
+package com.flam.edgedetection.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Memory-maps a capture segment written by CaptureWriter. Frames are served as
+ * views into the mapping, so replay does no file I/O or copying per frame once
+ * the pages are resident. Works the same on Android and a desktop JVM.
+ */
+public class CaptureReader implements Closeable {
+    private final RandomAccessFile file;
+    private final ByteBuffer map;
+    private final long[] offsets;
+    private final long[] timestamps;
+    private final boolean indexed;
+
+    public CaptureReader(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size < CaptureFormat.FILE_HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a capture segment (size " + size + "): " + path);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map = mapped.order(CaptureFormat.ORDER);
+            if (map.getInt(0) != CaptureFormat.FILE_MAGIC) {
+                throw new IOException("Bad capture magic: " + path);
+            }
+            if (map.getInt(4) != CaptureFormat.VERSION) {
+                throw new IOException("Unsupported capture version " + map.getInt(4) + ": " + path);
+            }
+
+            int footer = (int) size - CaptureFormat.FOOTER_BYTES;
+            if (footer >= CaptureFormat.FILE_HEADER_BYTES && map.getInt(footer + 12) == CaptureFormat.INDEX_MAGIC) {
+                int indexOffset = (int) map.getLong(footer);
+                int count = map.getInt(footer + 8);
+                offsets = new long[count];
+                timestamps = new long[count];
+                for (int i = 0; i < count; i++) {
+                    int entry = indexOffset + i * CaptureFormat.INDEX_ENTRY_BYTES;
+                    offsets[i] = map.getLong(entry);
+                    timestamps[i] = map.getLong(entry + 8);
+                }
+                indexed = true;
+            } else {
+                long[][] scanned = scan((int) size);
+                offsets = scanned[0];
+                timestamps = scanned[1];
+                indexed = false;
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int getFrameCount() {
+        return offsets.length;
+    }
+
+    public long getTimestampNanos(int index) {
+        return timestamps[index];
+    }
+
+    /** False if the segment had no index (recording was cut short) and was re-indexed by scanning. */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void read(int index, CapturedFrame into) {
+        int offset = (int) offsets[index];
+        into.index = index;
+        into.width = map.getInt(offset + 4);
+        into.height = map.getInt(offset + 8);
+        into.timestampNanos = map.getLong(offset + 12);
+        int header = offset + 20;
+        int data = offset + CaptureFormat.FRAME_HEADER_BYTES;
+        data = readPlane(header, data, into.y);
+        data = readPlane(header + CaptureFormat.PLANE_HEADER_BYTES, data, into.u);
+        readPlane(header + 2 * CaptureFormat.PLANE_HEADER_BYTES, data, into.v);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping itself is released when the buffer is collected
+        file.close();
+    }
+
+    private int readPlane(int header, int data, CapturedFrame.Plane plane) {
+        plane.rowStride = map.getInt(header);
+        plane.pixelStride = map.getInt(header + 4);
+        int length = map.getInt(header + 8);
+        ByteBuffer view = map.duplicate();
+        view.position(data);
+        view.limit(data + length);
+        plane.buffer = view.slice().asReadOnlyBuffer();
+        return data + length;
+    }
+
+    /** Walk frame records from the start, stopping at the first truncated or malformed one. */
+    private long[][] scan(int size) {
+        long[] foundOffsets = new long[256];
+        long[] foundTimestamps = new long[256];
+        int count = 0;
+        int offset = CaptureFormat.FILE_HEADER_BYTES;
+        while (offset + CaptureFormat.FRAME_HEADER_BYTES <= size && map.getInt(offset) == CaptureFormat.FRAME_MAGIC) {
+            long frameBytes = CaptureFormat.FRAME_HEADER_BYTES;
+            for (int plane = 0; plane < 3; plane++) {
+                frameBytes += map.getInt(offset + 20 + plane * CaptureFormat.PLANE_HEADER_BYTES + 8);
+            }
+            if (offset + frameBytes > size) {
+                break;
+            }
+            if (count == foundOffsets.length) {
+                foundOffsets = Arrays.copyOf(foundOffsets, count * 2);
+                foundTimestamps = Arrays.copyOf(foundTimestamps, count * 2);
+            }
+            foundOffsets[count] = offset;
+            foundTimestamps[count] = map.getLong(offset + 12);
+            count++;
+            offset += (int) frameBytes;
+        }
+        return new long[][]{Arrays.copyOf(foundOffsets, count), Arrays.copyOf(foundTimestamps, count)};
+    }
+}
@@ -0,0 +1,57 @@
+package com.flam.edgedetection.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds frames from a CaptureReader to a listener on the calling thread, either
+ * paced by the recorded timestamps or as fast as the listener returns.
+ */
+public class CaptureReplay {
+    public interface FrameListener {
+        void onFrame(CapturedFrame frame);
+    }
+
+    private final CaptureReader reader;
+    private final CapturedFrame frame = new CapturedFrame();
+    private volatile boolean stopped = false;
+
+    public CaptureReplay(CaptureReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @param realtime true to reproduce the recorded frame timing; a slow listener
+     *                 makes replay fall behind rather than skip frames
+     * @param loops    number of passes over the segment, or 0 to loop until stop()
+     * @return number of frames delivered
+     */
+    public long run(FrameListener listener, boolean realtime, int loops) {
+        int count = reader.getFrameCount();
+        if (count == 0) {
+            return 0;
+        }
+        long firstTimestamp = reader.getTimestampNanos(0);
+        long delivered = 0;
+        for (int pass = 0; (loops <= 0 || pass < loops) && !stopped; pass++) {
+            long passStart = System.nanoTime();
+            for (int i = 0; i < count && !stopped; i++) {
+                if (realtime) {
+                    long due = passStart + (reader.getTimestampNanos(i) - firstTimestamp);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0 && !stopped) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                reader.read(i, frame);
+                listener.onFrame(frame);
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /** Ends run() after the current frame; safe to call from any thread. */
+    public void stop() {
+        stopped = true;
+    }
+}
@@ -0,0 +1,143 @@
+package com.flam.edgedetection.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Appends raw YUV_420_888 frames to a capture segment (see CaptureFormat).
+ * Plane buffers are written straight from their ByteBuffers, so recording a
+ * camera frame does not copy it on the Java heap. The segment is capped at
+ * maxBytes so that CaptureReader can map it in one piece.
+ */
+public class CaptureWriter implements Closeable {
+    public static final long DEFAULT_MAX_BYTES = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long maxBytes;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(CaptureFormat.FRAME_HEADER_BYTES)
+            .order(CaptureFormat.ORDER);
+    private long[] offsets = new long[256];
+    private long[] timestamps = new long[256];
+    private int frameCount = 0;
+    private long position;
+    private boolean closed = false;
+
+    public CaptureWriter(File path) throws IOException {
+        this(path, DEFAULT_MAX_BYTES);
+    }
+
+    public CaptureWriter(File path, long maxBytes) throws IOException {
+        if (maxBytes <= CaptureFormat.FILE_HEADER_BYTES + CaptureFormat.FOOTER_BYTES || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxBytes must fit in a single mapping: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        channel.truncate(0);
+
+        ByteBuffer fileHeader = ByteBuffer.allocate(CaptureFormat.FILE_HEADER_BYTES).order(CaptureFormat.ORDER);
+        fileHeader.putInt(CaptureFormat.FILE_MAGIC)
+                .putInt(CaptureFormat.VERSION)
+                .putLong(System.currentTimeMillis())
+                .flip();
+        writeFully(fileHeader);
+        position = CaptureFormat.FILE_HEADER_BYTES;
+    }
+
+    /**
+     * Append one frame. Each plane is stored from buffer position 0 to its limit.
+     * @return false if the frame would not fit in the segment (nothing is written)
+     */
+    public synchronized boolean append(YuvPlane yPlane, YuvPlane uPlane, YuvPlane vPlane,
+                                       int width, int height, long timestampNanos) throws IOException {
+        if (closed) {
+            throw new IOException("Capture segment already closed");
+        }
+        ByteBuffer y = planeBytes(yPlane);
+        ByteBuffer u = planeBytes(uPlane);
+        ByteBuffer v = planeBytes(vPlane);
+        long frameBytes = CaptureFormat.FRAME_HEADER_BYTES + (long) y.remaining() + u.remaining() + v.remaining();
+        long indexBytes = (long) (frameCount + 1) * CaptureFormat.INDEX_ENTRY_BYTES + CaptureFormat.FOOTER_BYTES;
+        if (position + frameBytes + indexBytes > maxBytes) {
+            return false;
+        }
+
+        header.clear();
+        header.putInt(CaptureFormat.FRAME_MAGIC)
+                .putInt(width)
+                .putInt(height)
+                .putLong(timestampNanos);
+        putPlaneHeader(yPlane, y);
+        putPlaneHeader(uPlane, u);
+        putPlaneHeader(vPlane, v);
+        header.flip();
+        writeFully(header);
+        writeFully(y);
+        writeFully(u);
+        writeFully(v);
+
+        if (frameCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, frameCount * 2);
+            timestamps = Arrays.copyOf(timestamps, frameCount * 2);
+        }
+        offsets[frameCount] = position;
+        timestamps[frameCount] = timestampNanos;
+        frameCount++;
+        position += frameBytes;
+        return true;
+    }
+
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    public synchronized long getSizeBytes() {
+        return position;
+    }
+
+    /** Writes the index and footer. The segment is unreadable by CaptureReader's fast path until this runs. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            ByteBuffer index = ByteBuffer.allocate(frameCount * CaptureFormat.INDEX_ENTRY_BYTES + CaptureFormat.FOOTER_BYTES)
+                    .order(CaptureFormat.ORDER);
+            for (int i = 0; i < frameCount; i++) {
+                index.putLong(offsets[i]).putLong(timestamps[i]);
+            }
+            index.putLong(position).putInt(frameCount).putInt(CaptureFormat.INDEX_MAGIC);
+            index.flip();
+            writeFully(index);
+            channel.force(false);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static ByteBuffer planeBytes(YuvPlane plane) {
+        ByteBuffer buffer = plane.getBuffer().duplicate();
+        buffer.position(0);
+        return buffer;
+    }
+
+    private void putPlaneHeader(YuvPlane plane, ByteBuffer bytes) {
+        header.putInt(plane.getRowStride())
+                .putInt(plane.getPixelStride())
+                .putInt(bytes.remaining());
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
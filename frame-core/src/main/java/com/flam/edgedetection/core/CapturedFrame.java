@@ -0,0 +1,38 @@
+package com.flam.edgedetection.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One frame read from a capture segment. Plane buffers are read-only views into
+ * the mapped file and stay valid until the next CaptureReader.read into this holder.
+ */
+public class CapturedFrame {
+    public final Plane y = new Plane();
+    public final Plane u = new Plane();
+    public final Plane v = new Plane();
+    public int index;
+    public int width;
+    public int height;
+    public long timestampNanos;
+
+    public static class Plane implements YuvPlane {
+        ByteBuffer buffer;
+        int rowStride;
+        int pixelStride;
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        @Override
+        public int getPixelStride() {
+            return pixelStride;
+        }
+    }
+}
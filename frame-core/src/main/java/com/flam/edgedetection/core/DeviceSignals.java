@@ -0,0 +1,40 @@
+package com.flam.edgedetection.core;
+
+/**
+ * One reading of the conditions GovernorPolicy reacts to. Built by a SignalSource:
+ * from PowerManager, the battery broadcast and PipelineMetrics on the device, or
+ * from synthetic values on the JVM.
+ */
+public final class DeviceSignals {
+    // Same values as android.os.PowerManager.THERMAL_STATUS_*
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+    public static final int THERMAL_CRITICAL = 4;
+    public static final int THERMAL_EMERGENCY = 5;
+    public static final int THERMAL_SHUTDOWN = 6;
+
+    public final int thermalStatus;
+    public final int batteryPercent;   // 0-100, -1 if unknown
+    public final boolean charging;
+    public final boolean powerSaveMode;
+    public final long frameP95Micros;  // p95 of the per-frame processing stages
+    public final long frameSamples;    // frames behind frameP95Micros; 0 if not measured
+
+    public DeviceSignals(int thermalStatus, int batteryPercent, boolean charging, boolean powerSaveMode,
+                         long frameP95Micros, long frameSamples) {
+        this.thermalStatus = thermalStatus;
+        this.batteryPercent = batteryPercent;
+        this.charging = charging;
+        this.powerSaveMode = powerSaveMode;
+        this.frameP95Micros = frameP95Micros;
+        this.frameSamples = frameSamples;
+    }
+
+    @Override
+    public String toString() {
+        return "thermal=" + thermalStatus + " battery=" + batteryPercent + "%" + (charging ? " charging" : "")
+                + (powerSaveMode ? " powerSave" : "") + " frameP95=" + frameP95Micros + "us/" + frameSamples;
+    }
+}
@@ -0,0 +1,201 @@
+package com.flam.edgedetection.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming codec for binary edge masks: periodic keyframes plus XOR deltas
+ * against the previously encoded mask, each run-length coded. Packet layout
+ * (little-endian), decoded by web/src/edgeStream.ts:
+ *
+ * <pre>
+ *  0  u8   version (1)
+ *  1  u8   flags: FLAG_KEYFRAME, FLAG_RAW (payload is the packed bits, not runs)
+ *  2  u16  fps
+ *  4  u32  seq (consecutive per encoder; a delta applies to packet seq - 1)
+ *  8  u32  width
+ * 12  u32  height
+ * 16  u32  processing time in microseconds
+ * 20  u64  sentAt (wall-clock ms)
+ * 28       payload: LEB128 run lengths over width*height bits, alternating 0-runs
+ *          and 1-runs starting with a 0-run; or (w*h+7)/8 bytes of LSB-first bits
+ * </pre>
+ *
+ * The mask input is LSB-first packed bits (bit i = pixel i in row-major order),
+ * read as little-endian 64-bit words, so runs are found with trailing-zero
+ * counts instead of a per-pixel loop. Payloads never exceed the raw bit size.
+ * Not thread-safe: use from the single sender thread.
+ */
+public class EdgeDeltaEncoder {
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 28;
+    public static final int FLAG_KEYFRAME = 1;
+    public static final int FLAG_RAW = 2;
+
+    private final int keyframeInterval;
+    private long[] current = new long[0];
+    private long[] reference = new long[0];
+    private byte[] packet = new byte[0];
+    private ByteBuffer header;
+    private int packetLength = 0;
+    private int width;
+    private int height;
+    private int sequence = 0;
+    private int framesSinceKeyframe = 0;
+    private volatile boolean keyframeRequested = true;
+
+    /** @param keyframeInterval frames between forced keyframes (bounds recovery time for late joiners) */
+    public EdgeDeltaEncoder(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /** Bytes needed for a width x height mask, padded to whole 64-bit words. */
+    public static int maskBytes(int width, int height) {
+        return ((width * height + 63) / 64) * 8;
+    }
+
+    /** Make the next packet a keyframe (receiver lost a packet or just joined). Any thread. */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Encode one mask. The returned array is reused by the next call; the packet
+     * occupies its first getPacketLength() bytes.
+     */
+    public byte[] encode(ByteBuffer maskBits, int width, int height, int fps, int processingMicros,
+                         long sentAtMillis) {
+        int words = (width * height + 63) / 64;
+        boolean keyframe = keyframeRequested || width != this.width || height != this.height
+                || framesSinceKeyframe >= keyframeInterval;
+        if (current.length != words) {
+            current = new long[words];
+            reference = new long[words];
+        }
+        ByteBuffer bits = maskBits.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < words; i++) {
+            current[i] = bits.getLong(i * 8);
+        }
+        // Bits past the last pixel are not part of the mask
+        int tailBits = (width * height) & 63;
+        if (tailBits != 0) {
+            current[words - 1] &= (1L << tailBits) - 1;
+        }
+
+        int rawBytes = (width * height + 7) / 8;
+        if (packet.length < HEADER_BYTES + rawBytes) {
+            packet = new byte[HEADER_BYTES + rawBytes];
+            header = ByteBuffer.wrap(packet, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (!keyframe) {
+            // XOR in place against the last encoded mask; reference keeps the plain mask
+            for (int i = 0; i < words; i++) {
+                long plain = current[i];
+                current[i] = plain ^ reference[i];
+                reference[i] = plain;
+            }
+        } else {
+            System.arraycopy(current, 0, reference, 0, words);
+        }
+
+        int payload = encodeRuns(current, width * height, packet, HEADER_BYTES, rawBytes);
+        int flags = keyframe ? FLAG_KEYFRAME : 0;
+        if (payload < 0) {
+            flags |= FLAG_RAW;
+            payload = rawBytes;
+            writeRawBits(current, rawBytes, packet, HEADER_BYTES);
+        }
+
+        sequence++;
+        writeHeader(flags, fps, width, height, processingMicros, sentAtMillis);
+        packetLength = HEADER_BYTES + payload;
+        this.width = width;
+        this.height = height;
+        if (keyframe) {
+            keyframeRequested = false;
+            framesSinceKeyframe = 0;
+        } else {
+            framesSinceKeyframe++;
+        }
+        return packet;
+    }
+
+    public int getPacketLength() {
+        return packetLength;
+    }
+
+    /** Sequence number of the last encoded packet. */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * LEB128 run lengths into out[offset..offset+limit).
+     * @return bytes written, or -1 if the runs would not fit in limit
+     */
+    static int encodeRuns(long[] words, int totalBits, byte[] out, int offset, int limit) {
+        int pos = offset;
+        int end = offset + limit;
+        int bit = 0;
+        int run = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            int n = Math.min(64, totalBits - i * 64);
+            if (n == 64 && word == (bit == 0 ? 0L : -1L)) {
+                run += 64; // Whole word continues the current run
+                continue;
+            }
+            int consumed = 0;
+            while (consumed < n) {
+                // Bits equal to the current run value become 0, so the run continues for tz bits
+                long rest = (bit == 0 ? word : ~word) >>> consumed;
+                int take = Math.min(rest == 0 ? 64 : Long.numberOfTrailingZeros(rest), n - consumed);
+                run += take;
+                consumed += take;
+                if (consumed < n) {
+                    pos = writeVarint(run, out, pos, end);
+                    if (pos < 0) {
+                        return -1;
+                    }
+                    run = 0;
+                    bit ^= 1;
+                }
+            }
+        }
+        pos = writeVarint(run, out, pos, end);
+        return pos < 0 ? -1 : pos - offset;
+    }
+
+    private static int writeVarint(int value, byte[] out, int pos, int end) {
+        while ((value & ~0x7F) != 0) {
+            if (pos >= end) {
+                return -1;
+            }
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        if (pos >= end) {
+            return -1;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static void writeRawBits(long[] words, int rawBytes, byte[] out, int offset) {
+        for (int i = 0; i < rawBytes; i++) {
+            out[offset + i] = (byte) (words[i >>> 3] >>> ((i & 7) * 8));
+        }
+    }
+
+    private void writeHeader(int flags, int fps, int width, int height, int processingMicros, long sentAtMillis) {
+        header.clear();
+        header.put((byte) VERSION)
+                .put((byte) flags)
+                .putShort((short) Math.min(fps, 0xFFFF))
+                .putInt(sequence)
+                .putInt(width)
+                .putInt(height)
+                .putInt(processingMicros)
+                .putLong(sentAtMillis);
+    }
+}
@@ -0,0 +1,38 @@
+package com.flam.edgedetection.core;
+
+import java.util.Locale;
+
+/**
+ * Builds the JSON body posted to /api/frame. Uses one pre-sized StringBuilder
+ * instead of String.format, which re-scans the whole base64 payload.
+ */
+public class FrameEnvelope {
+    private static final String IMAGE_PREFIX = "{\"image\":\"data:image/png;base64,";
+
+    private final Base64Encoder encoder;
+
+    public FrameEnvelope(Base64Encoder encoder) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * @param traceJson FrameTrace JSON, or null
+     */
+    public String build(byte[] imageBytes, int width, int height, int fps, long processingTimeNanos,
+                        long sendSequence, long sentAtMillis, String traceJson) {
+        String base64Image = encoder.encode(imageBytes);
+        StringBuilder json = new StringBuilder(base64Image.length() + 256 + (traceJson != null ? traceJson.length() : 0));
+        json.append(IMAGE_PREFIX).append(base64Image)
+                .append("\",\"width\":").append(width)
+                .append(",\"height\":").append(height)
+                .append(",\"fps\":").append(fps)
+                .append(",\"processingTime\":").append(String.format(Locale.US, "%.2f", processingTimeNanos / 1_000_000.0))
+                .append(",\"resolution\":{\"width\":").append(width)
+                .append(",\"height\":").append(height)
+                .append("},\"sendSeq\":").append(sendSequence)
+                .append(",\"sentAt\":").append(sentAtMillis)
+                .append(",\"trace\":").append(traceJson != null ? traceJson : "null")
+                .append('}');
+        return json.toString();
+    }
+}
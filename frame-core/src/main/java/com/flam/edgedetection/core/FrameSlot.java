@@ -0,0 +1,130 @@
+package com.flam.edgedetection.core;
+
+/**
+ * Single-slot, latest-wins hand-off of processed frames from the analyzer thread
+ * to the GL thread. The consumer copies the slot into its own Frame holder, so
+ * neither side allocates and the lock is held only for a few field writes. A frame
+ * can carry its luma plane next to the pixels, so both always belong to the same frame.
+ * Luma arrays are recycled: a replaced frame's luma, or one the consumer hands back
+ * with releaseLuma, is returned by a later acquireLuma, so steady-state publishing
+ * cycles through three arrays (producer, slot, consumer) without allocating.
+ *
+ * @param <T> per-frame tag (e.g. FrameTrace)
+ */
+public class FrameSlot<T> {
+    private final Object lock = new Object();
+    private int[] pixels;
+    private byte[] luma;
+    private final byte[][] spareLuma = new byte[2][];
+    private int spareCount = 0;
+    private int width;
+    private int height;
+    private T tag;
+    private boolean pending = false;
+    private long replacedCount = 0;
+
+    /**
+     * Publish a frame.
+     * @return true if an unconsumed frame was replaced (i.e. dropped)
+     */
+    public boolean publish(int[] pixels, int width, int height, T tag) {
+        return publish(pixels, null, width, height, tag);
+    }
+
+    /**
+     * Publish a frame with its width*height luma plane (either array may be null).
+     * @return true if an unconsumed frame was replaced (i.e. dropped)
+     */
+    public boolean publish(int[] pixels, byte[] luma, int width, int height, T tag) {
+        synchronized (lock) {
+            boolean replaced = pending;
+            if (replaced) {
+                replacedCount++;
+                // Never polled, so the consumer holds no reference to it
+                if (this.luma != null && this.luma != luma) {
+                    addSpare(this.luma);
+                }
+            }
+            this.pixels = pixels;
+            this.luma = luma;
+            this.width = width;
+            this.height = height;
+            this.tag = tag;
+            this.pending = true;
+            return replaced;
+        }
+    }
+
+    /**
+     * Move the pending frame (if any) into the given holder.
+     * @return true if a new frame was taken
+     */
+    public boolean poll(Frame<T> into) {
+        synchronized (lock) {
+            if (!pending) {
+                return false;
+            }
+            into.pixels = pixels;
+            into.luma = luma;
+            into.width = width;
+            into.height = height;
+            into.tag = tag;
+            pending = false;
+            pixels = null;
+            luma = null;
+            tag = null;
+            return true;
+        }
+    }
+
+    /**
+     * A luma array of at least size bytes for the next publish: a spare one if it is
+     * large enough, otherwise a new one. Producer thread.
+     */
+    public byte[] acquireLuma(int size) {
+        synchronized (lock) {
+            while (spareCount > 0) {
+                byte[] spare = spareLuma[--spareCount];
+                spareLuma[spareCount] = null;
+                if (spare.length >= size) {
+                    return spare;
+                }
+            }
+        }
+        return new byte[size];
+    }
+
+    /** Hand back a polled frame's luma once the consumer no longer reads it. */
+    public void releaseLuma(byte[] luma) {
+        if (luma == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (luma != this.luma) {
+                addSpare(luma);
+            }
+        }
+    }
+
+    // Lock held; beyond two spares the array is left to the GC
+    private void addSpare(byte[] luma) {
+        if (spareCount < spareLuma.length) {
+            spareLuma[spareCount++] = luma;
+        }
+    }
+
+    public long getReplacedCount() {
+        synchronized (lock) {
+            return replacedCount;
+        }
+    }
+
+    /** Consumer-owned copy of one slot entry. */
+    public static class Frame<T> {
+        public int[] pixels;
+        public byte[] luma;
+        public int width;
+        public int height;
+        public T tag;
+    }
+}
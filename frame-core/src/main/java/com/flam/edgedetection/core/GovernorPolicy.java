@@ -0,0 +1,108 @@
+package com.flam.edgedetection.core;
+
+/**
+ * Chooses a PipelineProfile from periodic DeviceSignals readings:
+ * <ul>
+ * <li>Thermal status and battery state set a floor: the profile is never more
+ *     expensive than they allow, and a higher floor applies immediately.</li>
+ * <li>A frame p95 over budget steps one profile cheaper.</li>
+ * <li>Moving back to a more expensive profile takes stepUpEvaluations calm
+ *     readings in a row (floor allows it, p95 measured and under half the
+ *     budget) and goes one step at a time, so the pipeline does not oscillate.</li>
+ * <li>A step up whose first measured reading is over budget doubles the calm
+ *     readings the next step up needs (up to MAX_STEP_UP_BACKOFF times), so a
+ *     profile the device cannot sustain is retried less and less often.</li>
+ * </ul>
+ * After every switch, latency is ignored for latencyCooldownEvaluations readings,
+ * while the measurement window still holds frames from the previous profile.
+ * Those readings say nothing about the new profile, so they never count as calm.
+ * Pure logic with no Android dependency; not thread-safe.
+ */
+public class GovernorPolicy {
+    // Fewer frames than this in a reading: p95 is too noisy to act on
+    static final long MIN_LATENCY_SAMPLES = 30;
+    static final int MAX_STEP_UP_BACKOFF = 8;
+    private static final int LOW_BATTERY_PERCENT = 30;
+    private static final int CRITICAL_BATTERY_PERCENT = 15;
+
+    private final long frameBudgetMicros;
+    private final int stepUpEvaluations;
+    private final int latencyCooldownEvaluations;
+    private PipelineProfile current = PipelineProfile.PERFORMANCE;
+    private int calmEvaluations = 0;
+    private int cooldownRemaining = 0;
+    private int stepUpBackoff = 1;        // multiplier on stepUpEvaluations
+    private boolean judgingStepUp = false; // last switch was a step up, not yet measured
+
+    public GovernorPolicy(long frameBudgetMicros, int stepUpEvaluations, int latencyCooldownEvaluations) {
+        this.frameBudgetMicros = frameBudgetMicros;
+        this.stepUpEvaluations = stepUpEvaluations;
+        this.latencyCooldownEvaluations = latencyCooldownEvaluations;
+    }
+
+    public PipelineProfile getCurrent() {
+        return current;
+    }
+
+    /** Feed one reading; returns the profile to run (the current one if nothing changes). */
+    public PipelineProfile evaluate(DeviceSignals signals) {
+        PipelineProfile[] profiles = PipelineProfile.values();
+        int level = current.ordinal();
+        int floor = Math.max(thermalFloor(signals.thermalStatus).ordinal(), batteryFloor(signals).ordinal());
+
+        boolean latencyKnown = cooldownRemaining == 0 && signals.frameSamples >= MIN_LATENCY_SAMPLES;
+        if (cooldownRemaining > 0) {
+            cooldownRemaining--;
+        }
+        boolean overBudget = latencyKnown && signals.frameP95Micros > frameBudgetMicros;
+        if (judgingStepUp && latencyKnown) {
+            // First reading that measured the profile we stepped up to
+            stepUpBackoff = overBudget ? Math.min(stepUpBackoff * 2, MAX_STEP_UP_BACKOFF) : 1;
+            judgingStepUp = false;
+        }
+        // Unknown latency (cooldown, too few frames) is not headroom: stepping up on it
+        // would undo a latency-driven step down as soon as the cooldown ends
+        boolean headroom = latencyKnown && signals.frameP95Micros < frameBudgetMicros / 2;
+
+        int next = Math.max(floor, overBudget ? Math.min(level + 1, profiles.length - 1) : level);
+        if (next == level) {
+            if (floor < level && headroom) {
+                if (++calmEvaluations >= stepUpEvaluations * stepUpBackoff) {
+                    next = level - 1;
+                }
+            } else {
+                calmEvaluations = 0;
+            }
+        }
+        if (next != level) {
+            judgingStepUp = next < level;
+            current = profiles[next];
+            calmEvaluations = 0;
+            cooldownRemaining = latencyCooldownEvaluations;
+        }
+        return current;
+    }
+
+    /** Cheapest profile the thermal status requires. */
+    static PipelineProfile thermalFloor(int thermalStatus) {
+        if (thermalStatus >= DeviceSignals.THERMAL_SEVERE) {
+            return PipelineProfile.MINIMAL;
+        } else if (thermalStatus == DeviceSignals.THERMAL_MODERATE) {
+            return PipelineProfile.ECO;
+        } else if (thermalStatus == DeviceSignals.THERMAL_LIGHT) {
+            return PipelineProfile.BALANCED;
+        }
+        return PipelineProfile.PERFORMANCE;
+    }
+
+    /** Cheapest profile the battery state requires; no limit while charging. */
+    static PipelineProfile batteryFloor(DeviceSignals signals) {
+        boolean onBattery = !signals.charging && signals.batteryPercent >= 0;
+        if (signals.powerSaveMode || (onBattery && signals.batteryPercent <= CRITICAL_BATTERY_PERCENT)) {
+            return PipelineProfile.ECO;
+        } else if (onBattery && signals.batteryPercent <= LOW_BATTERY_PERCENT) {
+            return PipelineProfile.BALANCED;
+        }
+        return PipelineProfile.PERFORMANCE;
+    }
+}
@@ -0,0 +1,100 @@
+package com.flam.edgedetection.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888 -> NV21 repack (Y plane followed by interleaved V/U).
+ * Honors row and pixel strides of all three planes. Chroma rows are bulk-copied
+ * into reused scratch arrays before interleaving, so steady-state repacking
+ * does not allocate. Not thread-safe: use one instance per analyzer thread.
+ */
+public class Nv21Repacker {
+    private byte[] uRow = new byte[0];
+    private byte[] vRow = new byte[0];
+
+    public static int nv21Size(int width, int height) {
+        return width * height + width * height / 2;
+    }
+
+    /**
+     * Repack the three planes into out (at least nv21Size(width, height) bytes).
+     * Bytes that fall outside a plane's buffer are left untouched.
+     */
+    public void repack(YuvPlane yPlane, YuvPlane uPlane, YuvPlane vPlane,
+                       int width, int height, byte[] out) {
+        copyLuma(yPlane, width, height, out);
+        interleaveChroma(uPlane, vPlane, width, height, out, width * height);
+    }
+
+    /**
+     * Copy only the Y plane into out (at least width*height bytes), dropping row padding.
+     * Used on its own when the GPU engine does the edge detection.
+     */
+    public static void copyLuma(YuvPlane plane, int width, int height, byte[] out) {
+        ByteBuffer src = plane.getBuffer().duplicate();
+        int rowStride = plane.getRowStride();
+        int limit = src.limit();
+        int ySize = width * height;
+
+        if (rowStride == width) {
+            src.position(0);
+            src.get(out, 0, Math.min(ySize, limit));
+            return;
+        }
+
+        for (int row = 0; row < height; row++) {
+            int rowStart = row * rowStride;
+            if (rowStart >= limit) {
+                break;
+            }
+            src.position(rowStart);
+            src.get(out, row * width, Math.min(width, limit - rowStart));
+        }
+    }
+
+    private void interleaveChroma(YuvPlane uPlane, YuvPlane vPlane, int width, int height,
+                                  byte[] out, int offset) {
+        ByteBuffer uSrc = uPlane.getBuffer().duplicate();
+        ByteBuffer vSrc = vPlane.getBuffer().duplicate();
+        int uRowStride = uPlane.getRowStride();
+        int vRowStride = vPlane.getRowStride();
+        int uPixelStride = uPlane.getPixelStride();
+        int vPixelStride = vPlane.getPixelStride();
+        int uLimit = uSrc.limit();
+        int vLimit = vSrc.limit();
+        int chromaWidth = width / 2;
+
+        if (uRow.length < uRowStride) {
+            uRow = new byte[uRowStride];
+        }
+        if (vRow.length < vRowStride) {
+            vRow = new byte[vRowStride];
+        }
+        byte[] uBytes = uRow;
+        byte[] vBytes = vRow;
+
+        for (int row = 0; row < height / 2; row++) {
+            int uStart = row * uRowStride;
+            int vStart = row * vRowStride;
+            if (uStart >= uLimit || vStart >= vLimit) {
+                break;
+            }
+            int uCount = Math.min(uRowStride, uLimit - uStart);
+            int vCount = Math.min(vRowStride, vLimit - vStart);
+            uSrc.position(uStart);
+            uSrc.get(uBytes, 0, uCount);
+            vSrc.position(vStart);
+            vSrc.get(vBytes, 0, vCount);
+
+            int dst = offset + row * width;
+            for (int col = 0; col < chromaWidth; col++) {
+                int uPos = col * uPixelStride;
+                int vPos = col * vPixelStride;
+                if (uPos < uCount && vPos < vCount) {
+                    out[dst + col * 2] = vBytes[vPos];     // V
+                    out[dst + col * 2 + 1] = uBytes[uPos]; // U
+                }
+            }
+        }
+    }
+}
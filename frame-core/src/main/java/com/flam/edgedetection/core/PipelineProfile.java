@@ -0,0 +1,26 @@
+package com.flam.edgedetection.core;
+
+/**
+ * Pipeline settings GovernorPolicy switches between, from full quality to least
+ * work. Declaration order matters: a higher ordinal is always cheaper.
+ */
+public enum PipelineProfile {
+    PERFORMANCE(ProcessingScale.FULL, 1, 1, 5),
+    BALANCED(ProcessingScale.HALF, 1, 1, 10),
+    // Every profile stays on the CPU engine: the GPU engine reads nothing back,
+    // so it would stop the web edge stream
+    ECO(ProcessingScale.HALF, 2, 2, 15),
+    MINIMAL(ProcessingScale.QUARTER, 3, 4, 30);
+
+    public final ProcessingScale scale;
+    public final int processEveryNth;   // camera frames per processed frame
+    public final int edgeSendInterval;  // processed frames per edge-stream packet
+    public final int rawSendInterval;   // processed frames per PNG frame (edge detection off)
+
+    PipelineProfile(ProcessingScale scale, int processEveryNth, int edgeSendInterval, int rawSendInterval) {
+        this.scale = scale;
+        this.processEveryNth = processEveryNth;
+        this.edgeSendInterval = edgeSendInterval;
+        this.rawSendInterval = rawSendInterval;
+    }
+}
@@ -0,0 +1,33 @@
+package com.flam.edgedetection.core;
+
+/**
+ * Resolution at which edge detection runs, as a number of pyrDown levels applied
+ * to the luma plane. Each level halves both dimensions, rounding up, exactly as
+ * cv::pyrDown sizes its output, so Java can size the native output buffers.
+ */
+public enum ProcessingScale {
+    FULL(0, "1x"),
+    HALF(1, "1/2"),
+    QUARTER(2, "1/4");
+
+    public final int pyramidLevels;
+    public final String label;
+
+    ProcessingScale(int pyramidLevels, String label) {
+        this.pyramidLevels = pyramidLevels;
+        this.label = label;
+    }
+
+    /** Size of one dimension after this scale's pyrDown levels. */
+    public int scale(int size) {
+        for (int i = 0; i < pyramidLevels; i++) {
+            size = (size + 1) / 2;
+        }
+        return size;
+    }
+
+    public ProcessingScale next() {
+        ProcessingScale[] values = values();
+        return values[(ordinal() + 1) % values.length];
+    }
+}
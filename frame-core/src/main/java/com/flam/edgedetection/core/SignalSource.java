@@ -0,0 +1,6 @@
+package com.flam.edgedetection.core;
+
+/** Supplies GovernorPolicy's inputs; swapped for synthetic readings when testing the policy. */
+public interface SignalSource {
+    DeviceSignals read();
+}
@@ -0,0 +1,15 @@
+package com.flam.edgedetection.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One plane of a YUV_420_888 image, mirroring android.media.Image.Plane
+ * so the repack code can run (and be benchmarked) without Android.
+ */
+public interface YuvPlane {
+    ByteBuffer getBuffer();
+
+    int getRowStride();
+
+    int getPixelStride();
+}
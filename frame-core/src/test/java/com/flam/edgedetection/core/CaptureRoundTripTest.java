@@ -0,0 +1,237 @@
+package com.flam.edgedetection.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CaptureWriter -> CaptureReader round trips, including segments whose recording
+ * was cut short (no index, possibly a truncated last frame).
+ */
+public class CaptureRoundTripTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    private static final int Y_STRIDE = 16;      // padded rows, as on real devices
+    private static final int CHROMA_STRIDE = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexedSegmentRoundTripsPlanesStridesAndTimestamps() throws IOException {
+        File file = folder.newFile("capture.flamcap");
+        List<Frame> written = writeFrames(file, 3);
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertTrue(reader.isIndexed());
+            assertFrames(reader, written, 3);
+        }
+    }
+
+    @Test
+    public void segmentWithoutIndexIsRescanned() throws IOException {
+        File file = folder.newFile("capture.flamcap");
+        List<Frame> written = writeFrames(file, 3);
+        // Recording stopped after the last frame, before close() wrote the index
+        truncate(file, sizeOfFrames(written));
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertFalse(reader.isIndexed());
+            assertFrames(reader, written, 3);
+        }
+    }
+
+    @Test
+    public void interruptedSegmentKeepsCompleteFramesOnly() throws IOException {
+        File file = folder.newFile("capture.flamcap");
+        List<Frame> written = writeFrames(file, 3);
+        // Recording died in the middle of the third frame's planes
+        truncate(file, sizeOfFrames(written.subList(0, 2)) + CaptureFormat.FRAME_HEADER_BYTES + 5);
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertFalse(reader.isIndexed());
+            assertFrames(reader, written, 2);
+        }
+    }
+
+    @Test
+    public void appendRefusesFramesBeyondTheSegmentCap() throws IOException {
+        File file = folder.newFile("capture.flamcap");
+        Frame frame = frame(0, 1_000L);
+        long frameBytes = frameBytes(frame);
+        // Room for exactly one frame plus its index entry and footer
+        long maxBytes = CaptureFormat.FILE_HEADER_BYTES + frameBytes
+                + CaptureFormat.INDEX_ENTRY_BYTES + CaptureFormat.FOOTER_BYTES;
+        try (CaptureWriter writer = new CaptureWriter(file, maxBytes)) {
+            assertTrue(writer.append(frame.y, frame.u, frame.v, WIDTH, HEIGHT, frame.timestampNanos));
+            Frame second = frame(1, 2_000L);
+            assertFalse(writer.append(second.y, second.u, second.v, WIDTH, HEIGHT, second.timestampNanos));
+            assertEquals(1, writer.getFrameCount());
+        }
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertTrue(reader.isIndexed());
+            assertEquals(1, reader.getFrameCount());
+            assertEquals(maxBytes, file.length());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesThatAreNotCaptures() throws IOException {
+        File file = folder.newFile("not-a-capture.flamcap");
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.write(new byte[64]);
+        }
+        new CaptureReader(file).close();
+    }
+
+    @Test
+    public void replayDeliversEveryFrameInOrderOnEachPass() throws IOException {
+        File file = folder.newFile("capture.flamcap");
+        writeFrames(file, 3);
+
+        List<Long> timestamps = new ArrayList<>();
+        try (CaptureReader reader = new CaptureReader(file)) {
+            long delivered = new CaptureReplay(reader).run(frame -> timestamps.add(frame.timestampNanos), false, 2);
+            assertEquals(6, delivered);
+        }
+        assertArrayEquals(new Long[]{1_000L, 33_334_000L, 66_667_000L, 1_000L, 33_334_000L, 66_667_000L},
+                timestamps.toArray(new Long[0]));
+    }
+
+    /** Frames 33.333 ms apart, starting at 1000 ns. */
+    private static List<Frame> writeFrames(File file, int count) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        try (CaptureWriter writer = new CaptureWriter(file)) {
+            for (int i = 0; i < count; i++) {
+                Frame frame = frame(i, 1_000L + i * 33_333_000L);
+                assertTrue(writer.append(frame.y, frame.u, frame.v, WIDTH, HEIGHT, frame.timestampNanos));
+                frames.add(frame);
+            }
+        }
+        return frames;
+    }
+
+    private static void assertFrames(CaptureReader reader, List<Frame> written, int expectedCount) {
+        assertEquals(expectedCount, reader.getFrameCount());
+        CapturedFrame frame = new CapturedFrame();
+        for (int i = 0; i < expectedCount; i++) {
+            Frame expected = written.get(i);
+            assertEquals(expected.timestampNanos, reader.getTimestampNanos(i));
+            reader.read(i, frame);
+            assertEquals(i, frame.index);
+            assertEquals(WIDTH, frame.width);
+            assertEquals(HEIGHT, frame.height);
+            assertEquals(expected.timestampNanos, frame.timestampNanos);
+            assertPlane("frame " + i + " Y", expected.y, frame.y);
+            assertPlane("frame " + i + " U", expected.u, frame.u);
+            assertPlane("frame " + i + " V", expected.v, frame.v);
+        }
+    }
+
+    private static void assertPlane(String name, TestPlane expected, YuvPlane actual) {
+        assertEquals(name + " row stride", expected.rowStride, actual.getRowStride());
+        assertEquals(name + " pixel stride", expected.pixelStride, actual.getPixelStride());
+        assertArrayEquals(name, bytes(expected.getBuffer()), bytes(actual.getBuffer()));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(0);
+        byte[] out = new byte[view.remaining()];
+        view.get(out);
+        return out;
+    }
+
+    private static long sizeOfFrames(List<Frame> frames) {
+        long size = CaptureFormat.FILE_HEADER_BYTES;
+        for (Frame frame : frames) {
+            size += frameBytes(frame);
+        }
+        return size;
+    }
+
+    private static long frameBytes(Frame frame) {
+        return CaptureFormat.FRAME_HEADER_BYTES + frame.y.getBuffer().limit()
+                + frame.u.getBuffer().limit() + frame.v.getBuffer().limit();
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(length);
+        }
+    }
+
+    /** Semi-planar frame: U and V are offset views into one interleaved chroma buffer. */
+    private static Frame frame(int seed, long timestampNanos) {
+        ByteBuffer y = filled(Y_STRIDE * (HEIGHT - 1) + WIDTH, seed);
+        ByteBuffer chroma = filled(CHROMA_STRIDE * (HEIGHT / 2 - 1) + WIDTH, seed + 100);
+        ByteBuffer u = chroma.duplicate();
+        u.position(1);
+        return new Frame(new TestPlane(y, Y_STRIDE, 1),
+                new TestPlane(u.slice(), CHROMA_STRIDE, 2),
+                new TestPlane(chroma, CHROMA_STRIDE, 2),
+                timestampNanos);
+    }
+
+    private static ByteBuffer filled(int size, int seed) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put(i, (byte) (i * 31 + seed * 7));
+        }
+        return buffer;
+    }
+
+    private static final class Frame {
+        final TestPlane y;
+        final TestPlane u;
+        final TestPlane v;
+        final long timestampNanos;
+
+        Frame(TestPlane y, TestPlane u, TestPlane v, long timestampNanos) {
+            this.y = y;
+            this.u = u;
+            this.v = v;
+            this.timestampNanos = timestampNanos;
+        }
+    }
+
+    private static final class TestPlane implements YuvPlane {
+        private final ByteBuffer buffer;
+        final int rowStride;
+        final int pixelStride;
+
+        TestPlane(ByteBuffer buffer, int rowStride, int pixelStride) {
+            this.buffer = buffer;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        @Override
+        public int getPixelStride() {
+            return pixelStride;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.flam.edgedetection.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Encodes masks with EdgeDeltaEncoder and decodes them with a reference decoder
+ * written from the packet layout (the same steps as web/src/edgeStream.ts).
+ */
+public class EdgeDeltaEncoderTest {
+    private static final int KEYFRAME_INTERVAL = 4;
+
+    @Test
+    public void keyframeRoundTripsSparseMask() {
+        // 37x23: the mask does not end on a byte or word boundary
+        boolean[] mask = randomMask(37 * 23, 0.05, new Random(1));
+        EdgeDeltaEncoder encoder = new EdgeDeltaEncoder(KEYFRAME_INTERVAL);
+        Decoder decoder = new Decoder();
+
+        Packet packet = decoder.decode(encode(encoder, mask, 37, 23));
+        assertTrue(packet.keyframe);
+        assertEquals(0, packet.flags & EdgeDeltaEncoder.FLAG_RAW);
+        assertArrayEquals(mask, decoder.mask);
+    }
+
+    @Test
+    public void deltasReconstructEveryFrameBetweenKeyframes() {
+        Random random = new Random(2);
+        int width = 64;
+        int height = 48;
+        boolean[] mask = randomMask(width * height, 0.05, random);
+        EdgeDeltaEncoder encoder = new EdgeDeltaEncoder(KEYFRAME_INTERVAL);
+        Decoder decoder = new Decoder();
+
+        for (int frame = 0; frame < 3 * (KEYFRAME_INTERVAL + 1); frame++) {
+            // A mostly static scene: ~1% of the pixels change per frame
+            for (int i = 0; i < mask.length; i++) {
+                if (random.nextDouble() < 0.01) {
+                    mask[i] = !mask[i];
+                }
+            }
+            Packet packet = decoder.decode(encode(encoder, mask, width, height));
+            assertEquals("frame " + frame + " keyframe", frame % (KEYFRAME_INTERVAL + 1) == 0, packet.keyframe);
+            assertEquals(frame + 1, packet.sequence);
+            assertArrayEquals("frame " + frame, mask, decoder.mask);
+        }
+    }
+
+    @Test
+    public void noisyMaskFallsBackToRawBits() {
+        int width = 40;
+        int height = 30;
+        EdgeDeltaEncoder encoder = new EdgeDeltaEncoder(KEYFRAME_INTERVAL);
+        Decoder decoder = new Decoder();
+        boolean[] mask = randomMask(width * height, 0.5, new Random(3));
+
+        byte[] bytes = encode(encoder, mask, width, height);
+        Packet packet = decoder.decode(bytes);
+        assertTrue((packet.flags & EdgeDeltaEncoder.FLAG_RAW) != 0);
+        // Payload never exceeds the raw bit size
+        assertEquals(EdgeDeltaEncoder.HEADER_BYTES + (width * height + 7) / 8, bytes.length);
+        assertArrayEquals(mask, decoder.mask);
+
+        // A raw delta after a raw keyframe still applies as XOR
+        boolean[] next = randomMask(width * height, 0.5, new Random(4));
+        packet = decoder.decode(encode(encoder, next, width, height));
+        assertFalse(packet.keyframe);
+        assertArrayEquals(next, decoder.mask);
+    }
+
+    @Test
+    public void longRunsUseMultiByteLengths() {
+        // 640x480 with a few edge pixels: runs far longer than 127 need several LEB128 bytes
+        int width = 640;
+        int height = 480;
+        boolean[] mask = new boolean[width * height];
+        mask[5] = true;
+        mask[200_000] = true;
+        mask[200_001] = true;
+        mask[width * height - 1] = true;
+        EdgeDeltaEncoder encoder = new EdgeDeltaEncoder(KEYFRAME_INTERVAL);
+        Decoder decoder = new Decoder();
+
+        byte[] bytes = encode(encoder, mask, width, height);
+        decoder.decode(bytes);
+        assertArrayEquals(mask, decoder.mask);
+        assertTrue("runs, not raw bits", bytes.length < EdgeDeltaEncoder.HEADER_BYTES + 32);
+    }
+
+    @Test
+    public void emptyAndFullMasks() {
+        int width = 100;
+        int height = 3;
+        EdgeDeltaEncoder encoder = new EdgeDeltaEncoder(KEYFRAME_INTERVAL);
+        Decoder decoder = new Decoder();
+
+        boolean[] empty = new boolean[width * height];
+        byte[] bytes = encode(encoder, empty, width, height);
+        // One 0-run over all 300 pixels: a two-byte varint
+        assertEquals(EdgeDeltaEncoder.HEADER_BYTES + 2, bytes.length);
+        decoder.decode(bytes);
+        assertArrayEquals(empty, decoder.mask);
+
+        boolean[] full = new boolean[width * height];
+        Arrays.fill(full, true);
+        decoder.decode(encode(encoder, full, width, height));
+        assertArrayEquals(full, decoder.mask);
+    }
+
+    @Test
+    public void paddingBitsPastTheLastPixelAreIgnored() {
+        int width = 10;
+        int height = 3; // 30 pixels in a 64-bit word
+        boolean[] mask = randomMask(width * height, 0.3, new Random(5));
+        ByteBuffer bits = pack(mask);
+        // Garbage in the word's unused high bits
+        bits.putLong(0, bits.getLong(0) | (-1L << 30));
+        EdgeDeltaEncoder encoder = new EdgeDeltaEncoder(KEYFRAME_INTERVAL);
+        Decoder decoder = new Decoder();
+
+        decoder.decode(copy(encoder, encoder.encode(bits, width, height, 30, 0, 0L)));
+        assertArrayEquals(mask, decoder.mask);
+    }
+
+    @Test
+    public void keyframeOnRequestAndOnSizeChange() {
+        EdgeDeltaEncoder encoder = new EdgeDeltaEncoder(100);
+        Decoder decoder = new Decoder();
+        Random random = new Random(6);
+
+        assertTrue(decoder.decode(encode(encoder, randomMask(64, 0.1, random), 8, 8)).keyframe);
+        assertFalse(decoder.decode(encode(encoder, randomMask(64, 0.1, random), 8, 8)).keyframe);
+        encoder.requestKeyframe();
+        assertTrue(decoder.decode(encode(encoder, randomMask(64, 0.1, random), 8, 8)).keyframe);
+        assertFalse(decoder.decode(encode(encoder, randomMask(64, 0.1, random), 8, 8)).keyframe);
+
+        // Processing scale changed: the new size starts with a keyframe
+        boolean[] smaller = randomMask(16, 0.1, random);
+        Packet packet = decoder.decode(encode(encoder, smaller, 4, 4));
+        assertTrue(packet.keyframe);
+        assertEquals(4, packet.width);
+        assertArrayEquals(smaller, decoder.mask);
+    }
+
+    @Test
+    public void headerCarriesFrameFields() {
+        EdgeDeltaEncoder encoder = new EdgeDeltaEncoder(KEYFRAME_INTERVAL);
+        byte[] bytes = copy(encoder, encoder.encode(pack(new boolean[12]), 4, 3, 70_000, 1234, 1_700_000_000_123L));
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(EdgeDeltaEncoder.VERSION, header.get(0));
+        assertEquals(0xFFFF, header.getShort(2) & 0xFFFF); // fps is clamped to u16
+        assertEquals(1, header.getInt(4));
+        assertEquals(4, header.getInt(8));
+        assertEquals(3, header.getInt(12));
+        assertEquals(1234, header.getInt(16));
+        assertEquals(1_700_000_000_123L, header.getLong(20));
+        assertEquals(1, encoder.getSequence());
+    }
+
+    private static byte[] encode(EdgeDeltaEncoder encoder, boolean[] mask, int width, int height) {
+        return copy(encoder, encoder.encode(pack(mask), width, height, 30, 5000, 0L));
+    }
+
+    private static byte[] copy(EdgeDeltaEncoder encoder, byte[] packet) {
+        return Arrays.copyOf(packet, encoder.getPacketLength());
+    }
+
+    /** LSB-first bits in a direct buffer padded to whole words, as the native side fills it. */
+    private static ByteBuffer pack(boolean[] mask) {
+        int bytes = ((mask.length + 63) / 64) * 8;
+        ByteBuffer bits = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < mask.length; i++) {
+            if (mask[i]) {
+                bits.put(i >>> 3, (byte) (bits.get(i >>> 3) | (1 << (i & 7))));
+            }
+        }
+        return bits;
+    }
+
+    private static boolean[] randomMask(int pixels, double density, Random random) {
+        boolean[] mask = new boolean[pixels];
+        for (int i = 0; i < pixels; i++) {
+            mask[i] = random.nextDouble() < density;
+        }
+        return mask;
+    }
+
+    private static final class Packet {
+        int flags;
+        int sequence;
+        int width;
+        boolean keyframe;
+    }
+
+    /** Keeps the reconstructed mask across packets; a delta is XORed onto it. */
+    private static final class Decoder {
+        boolean[] mask;
+        private int lastSequence;
+
+        Packet decode(byte[] bytes) {
+            ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(EdgeDeltaEncoder.VERSION, in.get(0));
+            Packet packet = new Packet();
+            packet.flags = in.get(1);
+            packet.keyframe = (packet.flags & EdgeDeltaEncoder.FLAG_KEYFRAME) != 0;
+            packet.sequence = in.getInt(4);
+            packet.width = in.getInt(8);
+            int pixels = packet.width * in.getInt(12);
+
+            boolean[] decoded = new boolean[pixels];
+            int pos = EdgeDeltaEncoder.HEADER_BYTES;
+            if ((packet.flags & EdgeDeltaEncoder.FLAG_RAW) != 0) {
+                assertEquals(pos + (pixels + 7) / 8, bytes.length);
+                for (int i = 0; i < pixels; i++) {
+                    decoded[i] = (bytes[pos + (i >>> 3)] >>> (i & 7) & 1) != 0;
+                }
+            } else {
+                int pixel = 0;
+                boolean value = false;
+                while (pos < bytes.length) {
+                    int run = 0;
+                    int shift = 0;
+                    int b;
+                    do {
+                        b = bytes[pos++] & 0xFF;
+                        run |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while ((b & 0x80) != 0);
+                    for (int i = 0; i < run; i++) {
+                        decoded[pixel++] = value;
+                    }
+                    value = !value;
+                }
+                assertEquals("runs cover the whole mask", pixels, pixel);
+            }
+
+            if (packet.keyframe) {
+                mask = decoded;
+            } else {
+                assertEquals("delta applies to the previous packet", lastSequence + 1, packet.sequence);
+                assertEquals(mask.length, pixels);
+                for (int i = 0; i < pixels; i++) {
+                    mask[i] ^= decoded[i];
+                }
+            }
+            lastSequence = packet.sequence;
+            return packet;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.flam.edgedetection.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** FrameSlot hand-off and luma recycling, driven from one thread in producer/consumer order. */
+public class FrameSlotTest {
+    private static final int SIZE = 64;
+
+    private final FrameSlot<String> slot = new FrameSlot<>();
+    private final FrameSlot.Frame<String> frame = new FrameSlot.Frame<>();
+
+    @Test
+    public void pollTakesTheLatestFrameOnce() {
+        assertFalse(slot.publish(new int[SIZE], 8, 8, "a"));
+        assertTrue(slot.publish(new int[SIZE], 8, 8, "b"));
+        assertEquals(1, slot.getReplacedCount());
+
+        assertTrue(slot.poll(frame));
+        assertEquals("b", frame.tag);
+        assertFalse(slot.poll(frame));
+    }
+
+    @Test
+    public void releasedLumaIsReused() {
+        byte[] first = slot.acquireLuma(SIZE);
+        slot.publish(null, first, 8, 8, "a");
+        assertTrue(slot.poll(frame));
+        slot.releaseLuma(frame.luma);
+
+        assertSame(first, slot.acquireLuma(SIZE));
+    }
+
+    @Test
+    public void replacedLumaIsReused() {
+        byte[] dropped = slot.acquireLuma(SIZE);
+        slot.publish(null, dropped, 8, 8, "a");
+        byte[] next = slot.acquireLuma(SIZE);
+        assertNotSame(dropped, next);
+        assertTrue(slot.publish(null, next, 8, 8, "b"));
+
+        assertSame(dropped, slot.acquireLuma(SIZE));
+    }
+
+    @Test
+    public void steadyStateCyclesThroughThreeArrays() {
+        // Consumer keeps one frame while the producer publishes two more, some replaced
+        java.util.Set<byte[]> seen = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+        byte[] held = null;
+        for (int i = 0; i < 100; i++) {
+            byte[] luma = slot.acquireLuma(SIZE);
+            seen.add(luma);
+            slot.publish(null, luma, 8, 8, "f" + i);
+            if (i % 3 == 0) {
+                slot.releaseLuma(held);
+                held = slot.poll(frame) ? frame.luma : null;
+            }
+        }
+        assertEquals(3, seen.size());
+    }
+
+    @Test
+    public void tooSmallSpareIsNotReturned() {
+        byte[] small = slot.acquireLuma(SIZE);
+        slot.publish(null, small, 8, 8, "a");
+        slot.poll(frame);
+        slot.releaseLuma(frame.luma);
+
+        assertEquals(SIZE * 4, slot.acquireLuma(SIZE * 4).length);
+    }
+
+    @Test
+    public void lumaStillInTheSlotIsNotRecycled() {
+        byte[] pending = slot.acquireLuma(SIZE);
+        slot.publish(null, pending, 8, 8, "a");
+        // A stray release of the published array must not hand it to the producer again
+        slot.releaseLuma(pending);
+
+        assertNotSame(pending, slot.acquireLuma(SIZE));
+    }
+}
@@ -0,0 +1,179 @@
+package com.flam.edgedetection.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** GovernorPolicy fed with synthetic readings, as a SignalSource on a desktop JVM would. */
+public class GovernorPolicyTest {
+    private static final long BUDGET = 33_333;
+    private static final int STEP_UP = 5;
+    private static final int COOLDOWN = 5;
+
+    private static final long OVER_BUDGET = 40_000;
+    private static final long CALM = 10_000;      // under half the budget
+    private static final long WITHIN = 20_000;    // within budget, but no headroom
+    private static final long SAMPLES = 300;
+
+    private final GovernorPolicy policy = new GovernorPolicy(BUDGET, STEP_UP, COOLDOWN);
+
+    @Test
+    public void overBudgetStepsDownOneProfileAtATime() {
+        assertEquals(PipelineProfile.BALANCED, policy.evaluate(latency(OVER_BUDGET)));
+        // The window still holds PERFORMANCE frames: no further step during the cooldown
+        for (int i = 0; i < COOLDOWN; i++) {
+            assertEquals(PipelineProfile.BALANCED, policy.evaluate(latency(OVER_BUDGET)));
+        }
+        assertEquals(PipelineProfile.ECO, policy.evaluate(latency(OVER_BUDGET)));
+    }
+
+    @Test
+    public void tooFewFramesAreNotActedOn() {
+        DeviceSignals sparse = new DeviceSignals(DeviceSignals.THERMAL_NONE, 80, false, false,
+                OVER_BUDGET, GovernorPolicy.MIN_LATENCY_SAMPLES - 1);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(PipelineProfile.PERFORMANCE, policy.evaluate(sparse));
+        }
+    }
+
+    @Test
+    public void thermalAndBatteryFloorsApplyImmediately() {
+        assertEquals(PipelineProfile.BALANCED, policy.evaluate(thermal(DeviceSignals.THERMAL_LIGHT)));
+        // Floors are not subject to the latency cooldown
+        assertEquals(PipelineProfile.MINIMAL, policy.evaluate(thermal(DeviceSignals.THERMAL_SEVERE)));
+
+        assertEquals(PipelineProfile.PERFORMANCE, GovernorPolicy.batteryFloor(battery(10, true, false)));
+        assertEquals(PipelineProfile.BALANCED, GovernorPolicy.batteryFloor(battery(25, false, false)));
+        assertEquals(PipelineProfile.ECO, GovernorPolicy.batteryFloor(battery(10, false, false)));
+        assertEquals(PipelineProfile.ECO, GovernorPolicy.batteryFloor(battery(90, true, true)));
+        assertEquals(PipelineProfile.PERFORMANCE, GovernorPolicy.batteryFloor(battery(-1, false, false)));
+    }
+
+    @Test
+    public void stepUpNeedsCalmReadingsAfterTheCooldown() {
+        assertEquals(PipelineProfile.BALANCED, policy.evaluate(latency(OVER_BUDGET)));
+        // Cooldown readings measured the old profile and must not count as calm
+        for (int i = 0; i < COOLDOWN + STEP_UP - 1; i++) {
+            assertEquals("reading " + i, PipelineProfile.BALANCED, policy.evaluate(latency(CALM)));
+        }
+        assertEquals(PipelineProfile.PERFORMANCE, policy.evaluate(latency(CALM)));
+    }
+
+    @Test
+    public void readingWithoutHeadroomRestartsTheCalmStreak() {
+        policy.evaluate(latency(OVER_BUDGET));
+        for (int i = 0; i < COOLDOWN + STEP_UP - 1; i++) {
+            policy.evaluate(latency(CALM));
+        }
+        assertEquals(PipelineProfile.BALANCED, policy.evaluate(latency(WITHIN)));
+        for (int i = 0; i < STEP_UP - 1; i++) {
+            assertEquals(PipelineProfile.BALANCED, policy.evaluate(latency(CALM)));
+        }
+        assertEquals(PipelineProfile.PERFORMANCE, policy.evaluate(latency(CALM)));
+    }
+
+    @Test
+    public void stepsBackUpOneProfileAtATimeWhenTheFloorClears() {
+        assertEquals(PipelineProfile.MINIMAL, policy.evaluate(thermal(DeviceSignals.THERMAL_SEVERE)));
+        List<PipelineProfile> switches = run(60, profile -> CALM);
+        assertEquals(listOf(PipelineProfile.ECO, PipelineProfile.BALANCED, PipelineProfile.PERFORMANCE), switches);
+    }
+
+    @Test
+    public void doesNotStepBackUpRightAfterTheCooldown() {
+        // PERFORMANCE is over budget, BALANCED is within budget without headroom:
+        // one step down, then BALANCED for good
+        List<PipelineProfile> switches = run(100,
+                profile -> profile == PipelineProfile.PERFORMANCE ? OVER_BUDGET : WITHIN);
+        assertEquals(listOf(PipelineProfile.BALANCED), switches);
+    }
+
+    @Test
+    public void failedStepUpsAreRetriedLessOften() {
+        // BALANCED has headroom but PERFORMANCE never fits: each retry waits longer
+        List<Integer> stepUps = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            PipelineProfile before = policy.getCurrent();
+            long p95 = before == PipelineProfile.PERFORMANCE ? OVER_BUDGET : CALM;
+            if (policy.evaluate(latency(p95)).ordinal() < before.ordinal()) {
+                stepUps.add(i);
+            }
+        }
+        assertTrue("retries: " + stepUps, stepUps.size() >= 3);
+        for (int i = 2; i < stepUps.size(); i++) {
+            int previous = stepUps.get(i - 1) - stepUps.get(i - 2);
+            int gap = stepUps.get(i) - stepUps.get(i - 1);
+            assertTrue("retries: " + stepUps, gap >= previous);
+        }
+        int maxGap = COOLDOWN + 1 + COOLDOWN + STEP_UP * GovernorPolicy.MAX_STEP_UP_BACKOFF;
+        assertEquals("retries: " + stepUps, maxGap,
+                stepUps.get(stepUps.size() - 1) - stepUps.get(stepUps.size() - 2));
+    }
+
+    @Test
+    public void successfulStepUpResetsTheBackoff() {
+        // Two failed step ups, then PERFORMANCE fits again
+        int failedStepUps = 0;
+        int switches = 0;
+        for (int i = 0; i < 200; i++) {
+            PipelineProfile before = policy.getCurrent();
+            long p95 = before == PipelineProfile.PERFORMANCE && failedStepUps < 3 ? OVER_BUDGET : CALM;
+            PipelineProfile after = policy.evaluate(latency(p95));
+            if (after != before) {
+                switches++;
+                if (after == PipelineProfile.BALANCED) {
+                    failedStepUps++;
+                }
+            }
+        }
+        // Down, up, down, up, down, up: the third step up sticks
+        assertEquals(PipelineProfile.PERFORMANCE, policy.getCurrent());
+        assertEquals(6, switches);
+
+        // Fresh trouble later steps down and recovers at the normal pace again
+        assertEquals(PipelineProfile.BALANCED, policy.evaluate(latency(OVER_BUDGET)));
+        List<PipelineProfile> recovery = run(COOLDOWN + STEP_UP, profile -> CALM);
+        assertEquals(listOf(PipelineProfile.PERFORMANCE), recovery);
+    }
+
+    interface LatencyModel {
+        long p95(PipelineProfile profile);
+    }
+
+    /** Feeds readings whose p95 depends on the running profile; returns the profiles switched to. */
+    private List<PipelineProfile> run(int readings, LatencyModel model) {
+        List<PipelineProfile> switches = new ArrayList<>();
+        for (int i = 0; i < readings; i++) {
+            PipelineProfile before = policy.getCurrent();
+            PipelineProfile after = policy.evaluate(latency(model.p95(before)));
+            if (after != before) {
+                switches.add(after);
+            }
+        }
+        return switches;
+    }
+
+    private static List<PipelineProfile> listOf(PipelineProfile... profiles) {
+        List<PipelineProfile> list = new ArrayList<>();
+        for (PipelineProfile profile : profiles) {
+            list.add(profile);
+        }
+        return list;
+    }
+
+    private static DeviceSignals latency(long p95Micros) {
+        return new DeviceSignals(DeviceSignals.THERMAL_NONE, 80, false, false, p95Micros, SAMPLES);
+    }
+
+    private static DeviceSignals thermal(int status) {
+        return new DeviceSignals(status, 80, false, false, CALM, SAMPLES);
+    }
+
+    private static DeviceSignals battery(int percent, boolean charging, boolean powerSave) {
+        return new DeviceSignals(DeviceSignals.THERMAL_NONE, percent, charging, powerSave, CALM, SAMPLES);
+    }
+}
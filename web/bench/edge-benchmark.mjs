@@ -0,0 +1,80 @@
+// Headless benchmark: WASM SIMD edge kernel vs the JS calculateSobelEdges path.
+//
+// Usage (after `npm run build && npm run build:wasm`):
+//   npm run bench [-- iterations]
+//
+// Requires Node 20.19+ / 22+ so the ES module output in dist/ can be imported.
+
+import { readFile } from 'fs/promises';
+import { fileURLToPath } from 'url';
+import path from 'path';
+
+import { calculateSobelEdges } from '../dist/edgeKernel.js';
+import { WasmEdgeKernel } from '../dist/wasmKernel.js';
+
+const __dirname = path.dirname(fileURLToPath(import.meta.url));
+const WASM_PATH = path.join(__dirname, '..', 'dist', 'edge_kernel.wasm');
+
+const RESOLUTIONS = [
+    { name: '480p', width: 640, height: 480 },
+    { name: '720p', width: 1280, height: 720 },
+    { name: '1080p', width: 1920, height: 1080 }
+];
+
+const iterations = Number(process.argv[2]) || 30;
+
+// Deterministic synthetic frame: blocks, a diagonal ramp and low-amplitude noise
+function makeFrame(width, height) {
+    const rgba = new Uint8ClampedArray(width * height * 4);
+    let seed = 12345;
+    for (let y = 0; y < height; y++) {
+        for (let x = 0; x < width; x++) {
+            seed = (seed * 1103515245 + 12345) >>> 0;
+            const block = ((x >> 5) + (y >> 5)) & 1 ? 180 : 40;
+            const ramp = ((x + y) * 255) / (width + height);
+            const noise = (seed >>> 24) & 15;
+            const i = (y * width + x) * 4;
+            rgba[i] = block + noise;
+            rgba[i + 1] = (block + ramp) / 2 + noise;
+            rgba[i + 2] = ramp;
+            rgba[i + 3] = 255;
+        }
+    }
+    return rgba;
+}
+
+function time(fn) {
+    fn(); // warm-up
+    const start = process.hrtime.bigint();
+    let result;
+    for (let i = 0; i < iterations; i++) {
+        result = fn();
+    }
+    const elapsedMs = Number(process.hrtime.bigint() - start) / 1e6;
+    return { msPerFrame: elapsedMs / iterations, result };
+}
+
+const kernel = await WasmEdgeKernel.instantiate(await readFile(WASM_PATH));
+
+console.log(`Edge kernel benchmark (${iterations} iterations per case)\n`);
+const rows = [];
+for (const { name, width, height } of RESOLUTIONS) {
+    const frame = makeFrame(width, height);
+
+    const js = time(() => calculateSobelEdges(frame, width, height, 50).edgePixelCount);
+    const wasmSobel = time(() => kernel.process(frame, width, height, 'sobel', 50));
+    const wasmCanny = time(() => kernel.process(frame, width, height, 'canny', 50, 150));
+
+    rows.push({
+        resolution: name,
+        'js sobel ms': js.msPerFrame.toFixed(2),
+        'wasm sobel ms': wasmSobel.msPerFrame.toFixed(2),
+        speedup: (js.msPerFrame / wasmSobel.msPerFrame).toFixed(1) + 'x',
+        'wasm canny ms': wasmCanny.msPerFrame.toFixed(2),
+        'js edges': js.result,
+        'wasm edges': wasmSobel.result,
+        // JS rounds float grayscale, WASM uses OpenCV's fixed-point weights
+        'edge diff %': ((Math.abs(js.result - wasmSobel.result) / Math.max(1, js.result)) * 100).toFixed(3)
+    });
+}
+console.table(rows);
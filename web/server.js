@@ -14,11 +14,113 @@ const MIME_TYPES = {
     '.jpg': 'image/jpg',
     '.gif': 'image/gif',
     '.svg': 'image/svg+xml',
-    '.ico': 'image/x-icon'
+    '.ico': 'image/x-icon',
+    '.wasm': 'application/wasm'
 };
 
-// Store latest frame data
-let latestFrame = null;
+// Camera streams (?stream=, "main" by default): the app sends one stream per camera
+// when it runs several at once, each with its own frames, sequence and edge chain
+const DEFAULT_STREAM = 'main';
+const MAX_STREAMS = 8;
+const STREAM_NAME = /^[A-Za-z0-9_-]{1,32}$/;
+
+// Stream name from the query, null if it is malformed
+function streamName(query) {
+    const name = query.stream === undefined ? DEFAULT_STREAM : String(query.stream);
+    return STREAM_NAME.test(name) ? name : null;
+}
+
+// Store latest frame data per stream
+const latestFrames = {};
+
+// Frame tracing: recent per-frame traces (no image data) and drop counters
+const MAX_TRACES = 120;
+const recentTraces = [];
+let receivedCount = 0;
+const lastSendSeqs = {}; // per stream: each stream numbers its own sends
+let networkDrops = 0;
+
+// Delta-coded edge stream (see frame-core EdgeDeltaEncoder): packets since the
+// last keyframe, so a viewer can always rebuild the current mask from them
+const EDGE_HEADER_BYTES = 28;
+const EDGE_FLAG_KEYFRAME = 1;
+const MAX_EDGE_PACKETS = 120;
+const edgeStreams = {};
+
+// The stream's edge chain, created on first use; null once MAX_STREAMS exist
+function edgeStreamFor(name) {
+    if (!edgeStreams[name]) {
+        if (Object.keys(edgeStreams).length >= MAX_STREAMS) {
+            return null;
+        }
+        edgeStreams[name] = {
+            packets: [],        // [{ seq, data: Buffer }], packets[0] is the keyframe
+            lastSeq: 0,
+            width: 0,
+            height: 0,
+            needKeyframe: true, // Reported back to the device in the POST response
+            keyframes: 0,
+            deltas: 0,
+            lostDeltas: 0,
+            bytes: 0,
+            lastPacketAt: 0
+        };
+    }
+    return edgeStreams[name];
+}
+
+function acceptEdgePacket(edgeStream, data) {
+    if (data.length < EDGE_HEADER_BYTES || data.readUInt8(0) !== 1) {
+        throw new Error('Not an edge packet');
+    }
+    const keyframe = (data.readUInt8(1) & EDGE_FLAG_KEYFRAME) !== 0;
+    const seq = data.readUInt32LE(4);
+    const width = data.readUInt32LE(8);
+    const height = data.readUInt32LE(12);
+    edgeStream.bytes += data.length;
+    edgeStream.lastPacketAt = Date.now();
+
+    if (keyframe) {
+        edgeStream.packets = [{ seq, data }];
+        edgeStream.width = width;
+        edgeStream.height = height;
+        edgeStream.needKeyframe = false;
+        edgeStream.keyframes++;
+    } else if (edgeStream.packets.length > 0 && seq === edgeStream.lastSeq + 1 &&
+               width === edgeStream.width && height === edgeStream.height) {
+        edgeStream.packets.push({ seq, data });
+        edgeStream.deltas++;
+        if (edgeStream.packets.length > MAX_EDGE_PACKETS) {
+            // Keyframes stopped arriving; keep memory bounded and ask for a fresh one
+            edgeStream.packets.shift();
+            edgeStream.needKeyframe = true;
+        }
+    } else {
+        // Gap in the chain (a POST was lost or the server restarted) - deltas are useless until the next keyframe
+        edgeStream.lostDeltas++;
+        edgeStream.needKeyframe = true;
+        return;
+    }
+    edgeStream.lastSeq = seq;
+}
+
+// Packets a viewer needs after it has applied `after`: the continuation if it is
+// still in the buffer, otherwise everything from the keyframe (viewer resyncs)
+function edgePacketsAfter(edgeStream, after) {
+    const packets = edgeStream.packets;
+    if (packets.length === 0 || after === edgeStream.lastSeq) {
+        return [];
+    }
+    if (after >= packets[0].seq && after < edgeStream.lastSeq) {
+        return packets.filter(p => p.seq > after);
+    }
+    // Oldest packet is only a keyframe if the buffer has not overflowed
+    return (packets[0].data.readUInt8(1) & EDGE_FLAG_KEYFRAME) !== 0 ? packets : [];
+}
+
+// Pipeline metrics snapshots per device (most recent windows first)
+const MAX_METRICS_WINDOWS = 60;
+const metricsByDevice = {};
 
 const server = http.createServer((req, res) => {
     const parsedUrl = url.parse(req.url, true);
@@ -48,11 +150,44 @@ const server = http.createServer((req, res) => {
                 return;
             }
             
+            const stream = streamName(parsedUrl.query);
+            if (stream === null || (!latestFrames[stream] && Object.keys(latestFrames).length >= MAX_STREAMS)) {
+                res.writeHead(400, { 
+                    'Content-Type': 'application/json',
+                    'Access-Control-Allow-Origin': '*'
+                });
+                res.end(JSON.stringify({ error: 'Invalid or too many streams' }));
+                return;
+            }
+            
             try {
                 const frameData = JSON.parse(body);
-                latestFrame = frameData;
+                frameData.serverReceivedAt = Date.now();
+                frameData.stream = stream;
+                receivedCount++;
+                if (typeof frameData.sendSeq === 'number') {
+                    // Gaps in the device's send sequence are frames lost between device and server
+                    const lastSendSeq = lastSendSeqs[stream] || 0;
+                    if (frameData.sendSeq > lastSendSeq + 1 && lastSendSeq > 0) {
+                        networkDrops += frameData.sendSeq - lastSendSeq - 1;
+                    }
+                    lastSendSeqs[stream] = frameData.sendSeq;
+                }
+                frameData.receivedCount = receivedCount;
+                frameData.networkDrops = networkDrops;
+                recentTraces.unshift({
+                    stream,
+                    sendSeq: frameData.sendSeq,
+                    sentAt: frameData.sentAt,
+                    serverReceivedAt: frameData.serverReceivedAt,
+                    trace: frameData.trace || null
+                });
+                if (recentTraces.length > MAX_TRACES) {
+                    recentTraces.length = MAX_TRACES;
+                }
+                latestFrames[stream] = frameData;
                 const timestamp = new Date().toLocaleTimeString();
-                console.log(`[${timestamp}] ✓ Received frame: ${frameData.width}x${frameData.height}, FPS: ${frameData.fps}`);
+                console.log(`[${timestamp}] ✓ Received ${stream} frame: ${frameData.width}x${frameData.height}, FPS: ${frameData.fps}`);
                 console.log(`✅ Frame received and stored: ${frameData.width}x${frameData.height}, FPS: ${frameData.fps || 0}`);
                 console.log(`    Image data length: ${frameData.image ? frameData.image.length : 0} chars`);
                 res.writeHead(200, { 
@@ -77,8 +212,181 @@ const server = http.createServer((req, res) => {
         return;
     }
 
+    // API endpoint to receive delta-coded edge masks from Android (binary body)
+    if (pathname === '/api/edges' && req.method === 'POST') {
+        const chunks = [];
+        req.on('data', chunk => {
+            chunks.push(chunk);
+        });
+        req.on('end', () => {
+            const stream = streamName(parsedUrl.query);
+            const edgeStream = stream !== null ? edgeStreamFor(stream) : null;
+            if (!edgeStream) {
+                res.writeHead(400, { 
+                    'Content-Type': 'application/json',
+                    'Access-Control-Allow-Origin': '*'
+                });
+                res.end(JSON.stringify({ error: 'Invalid or too many streams' }));
+                return;
+            }
+            try {
+                acceptEdgePacket(edgeStream, Buffer.concat(chunks));
+                const traceHeader = req.headers['x-frame-trace'];
+                if (traceHeader) {
+                    recentTraces.unshift({
+                        stream,
+                        edgeSeq: edgeStream.lastSeq,
+                        serverReceivedAt: Date.now(),
+                        trace: JSON.parse(traceHeader)
+                    });
+                    if (recentTraces.length > MAX_TRACES) {
+                        recentTraces.length = MAX_TRACES;
+                    }
+                }
+                res.writeHead(200, { 
+                    'Content-Type': 'application/json',
+                    'Access-Control-Allow-Origin': '*'
+                });
+                res.end(JSON.stringify({ success: true, keyframe: edgeStream.needKeyframe }));
+            } catch (e) {
+                console.error('ERROR parsing edge packet:', e.message);
+                res.writeHead(400, { 
+                    'Content-Type': 'application/json',
+                    'Access-Control-Allow-Origin': '*'
+                });
+                res.end(JSON.stringify({ error: 'Invalid edge packet: ' + e.message, keyframe: true }));
+            }
+        });
+        return;
+    }
+
+    // API endpoint for viewers to fetch edge packets: [u32 length][packet]... (little-endian)
+    if (pathname === '/api/edges' && req.method === 'GET') {
+        const stream = streamName(parsedUrl.query);
+        const edgeStream = stream !== null ? edgeStreams[stream] : undefined;
+        if (!edgeStream) {
+            // Nothing received on this stream (yet)
+            res.writeHead(204, { 'Access-Control-Allow-Origin': '*' });
+            res.end();
+            return;
+        }
+        const after = parseInt(parsedUrl.query.after, 10);
+        const packets = edgePacketsAfter(edgeStream, isNaN(after) ? -1 : after);
+        const headers = {
+            'Content-Type': 'application/octet-stream',
+            'Access-Control-Allow-Origin': '*',
+            'Access-Control-Expose-Headers': 'X-Edge-Stats',
+            'X-Edge-Stats': JSON.stringify({
+                keyframes: edgeStream.keyframes,
+                deltas: edgeStream.deltas,
+                lostDeltas: edgeStream.lostDeltas,
+                bytes: edgeStream.bytes
+            })
+        };
+        if (packets.length === 0) {
+            res.writeHead(204, headers);
+            res.end();
+            return;
+        }
+        const parts = [];
+        for (const packet of packets) {
+            const length = Buffer.alloc(4);
+            length.writeUInt32LE(packet.data.length, 0);
+            parts.push(length, packet.data);
+        }
+        res.writeHead(200, headers);
+        res.end(Buffer.concat(parts));
+        return;
+    }
+
+    // Viewer could not continue the chain - ask the device for a keyframe on its next POST
+    if (pathname === '/api/edges/keyframe' && req.method === 'POST') {
+        const stream = streamName(parsedUrl.query);
+        const edgeStream = stream !== null ? edgeStreams[stream] : undefined;
+        if (edgeStream) {
+            edgeStream.needKeyframe = true;
+        }
+        res.writeHead(200, { 
+            'Content-Type': 'application/json',
+            'Access-Control-Allow-Origin': '*'
+        });
+        res.end(JSON.stringify({ success: true }));
+        return;
+    }
+
+    // API endpoint to receive per-stage latency metrics from Android
+    if (pathname === '/api/metrics' && req.method === 'POST') {
+        let body = '';
+        req.on('data', chunk => {
+            body += chunk.toString();
+        });
+        req.on('end', () => {
+            try {
+                const metrics = JSON.parse(body);
+                const device = metrics.device || req.socket.remoteAddress || 'unknown';
+                metrics.receivedAt = Date.now();
+                const windows = metricsByDevice[device] || (metricsByDevice[device] = []);
+                windows.unshift(metrics);
+                if (windows.length > MAX_METRICS_WINDOWS) {
+                    windows.length = MAX_METRICS_WINDOWS;
+                }
+                const nativeStage = metrics.stages && metrics.stages.native;
+                console.log(`📊 Metrics from ${device}: native p50=${nativeStage ? nativeStage.p50Us : '?'}us p99=${nativeStage ? nativeStage.p99Us : '?'}us`);
+                res.writeHead(200, { 
+                    'Content-Type': 'application/json',
+                    'Access-Control-Allow-Origin': '*'
+                });
+                res.end(JSON.stringify({ success: true }));
+            } catch (e) {
+                console.error('ERROR parsing metrics:', e.message);
+                res.writeHead(400, { 
+                    'Content-Type': 'application/json',
+                    'Access-Control-Allow-Origin': '*'
+                });
+                res.end(JSON.stringify({ error: 'Invalid JSON: ' + e.message }));
+            }
+        });
+        return;
+    }
+
+    // API endpoint to get metrics for all devices
+    if (pathname === '/api/metrics' && req.method === 'GET') {
+        res.writeHead(200, { 
+            'Content-Type': 'application/json',
+            'Access-Control-Allow-Origin': '*'
+        });
+        res.end(JSON.stringify(metricsByDevice));
+        return;
+    }
+
+    // Streams seen so far, for viewers to pick one
+    if (pathname === '/api/streams' && req.method === 'GET') {
+        const names = new Set([...Object.keys(latestFrames), ...Object.keys(edgeStreams)]);
+        const streams = [...names].map(name => {
+            const edgeStream = edgeStreams[name];
+            const frame = latestFrames[name];
+            return {
+                stream: name,
+                lastFrameAt: frame ? frame.serverReceivedAt : 0,
+                lastEdgePacketAt: edgeStream ? edgeStream.lastPacketAt : 0,
+                edgeSize: edgeStream ? `${edgeStream.width}x${edgeStream.height}` : null,
+                keyframes: edgeStream ? edgeStream.keyframes : 0,
+                deltas: edgeStream ? edgeStream.deltas : 0,
+                lostDeltas: edgeStream ? edgeStream.lostDeltas : 0
+            };
+        });
+        res.writeHead(200, { 
+            'Content-Type': 'application/json',
+            'Access-Control-Allow-Origin': '*'
+        });
+        res.end(JSON.stringify(streams));
+        return;
+    }
+
     // API endpoint to get latest frame
     if (pathname === '/api/frame' && req.method === 'GET') {
+        const stream = streamName(parsedUrl.query);
+        const latestFrame = stream !== null ? latestFrames[stream] : undefined;
         if (latestFrame) {
             console.log(`📤 GET /api/frame - Serving frame: ${latestFrame.width}x${latestFrame.height}`);
         } else {
@@ -88,10 +396,28 @@ const server = http.createServer((req, res) => {
             'Content-Type': 'application/json',
             'Access-Control-Allow-Origin': '*'
         });
+        if (latestFrame) {
+            latestFrame.serverServedAt = Date.now();
+        }
         res.end(JSON.stringify(latestFrame || { error: 'No frame available' }));
         return;
     }
 
+    // API endpoint to get recent frame traces and per-hop drop counts
+    if (pathname === '/api/trace' && req.method === 'GET') {
+        const deviceDrops = recentTraces.length > 0 && recentTraces[0].trace ? recentTraces[0].trace.drops : {};
+        res.writeHead(200, { 
+            'Content-Type': 'application/json',
+            'Access-Control-Allow-Origin': '*'
+        });
+        res.end(JSON.stringify({
+            traces: recentTraces,
+            drops: Object.assign({}, deviceDrops, { network: networkDrops }),
+            receivedCount
+        }));
+        return;
+    }
+
     // Serve static files
     if (pathname === '/') {
         pathname = '/index.html';
@@ -125,6 +451,13 @@ server.listen(PORT, '0.0.0.0', () => {
     console.log(`\nAPI endpoints:`);
     console.log(`  POST /api/frame - Receive frame from Android`);
     console.log(`  GET  /api/frame - Get latest frame`);
+    console.log(`  GET  /api/streams - List camera streams (frame/edge routes take ?stream=NAME, default main)`);
+    console.log(`  GET  /api/trace - Get recent frame traces and drop counts`);
+    console.log(`  POST /api/edges - Receive delta-coded edge mask from Android`);
+    console.log(`  GET  /api/edges?after=SEQ - Get edge packets after SEQ`);
+    console.log(`  POST /api/edges/keyframe - Request a keyframe from the device`);
+    console.log(`  POST /api/metrics - Receive stage latency metrics from Android`);
+    console.log(`  GET  /api/metrics - Get metrics for all devices`);
     console.log(`\nWaiting for frames from Android app...`);
     console.log(`========================================\n`);
 });
@@ -0,0 +1,61 @@
+export interface EdgeStats {
+    edgePixelCount: number;
+    /** Mean Sobel magnitude per pixel; absent when the engine does not compute it (WASM kernel) */
+    meanMagnitude?: number;
+}
+
+/**
+ * Reference JavaScript edge kernel: grayscale + 3x3 Sobel, counting pixels
+ * whose L2 magnitude exceeds the threshold. Kept DOM-free so the Node
+ * benchmark can run it headlessly against the WASM kernel.
+ */
+export function calculateSobelEdges(data: Uint8ClampedArray | Uint8Array, width: number, height: number,
+                                    threshold = 50): EdgeStats {
+    const grayscale = new Uint8Array(width * height);
+    
+    // Convert to grayscale
+    for (let i = 0; i < data.length; i += 4) {
+        const r = data[i];
+        const g = data[i + 1];
+        const b = data[i + 2];
+        grayscale[i / 4] = Math.round(0.299 * r + 0.587 * g + 0.114 * b);
+    }
+    
+    // Apply Sobel edge detection (just for calculation, not display)
+    const sobelX = [[-1, 0, 1], [-2, 0, 2], [-1, 0, 1]];
+    const sobelY = [[-1, -2, -1], [0, 0, 0], [1, 2, 1]];
+    
+    // Calculate edge magnitudes (for stats/metrics)
+    let maxMagnitude = 0;
+    let magnitudeSum = 0;
+    let edgePixelCount = 0;
+    
+    for (let y = 1; y < height - 1; y++) {
+        for (let x = 1; x < width - 1; x++) {
+            let gx = 0, gy = 0;
+            
+            for (let ky = -1; ky <= 1; ky++) {
+                for (let kx = -1; kx <= 1; kx++) {
+                    const idx = (y + ky) * width + (x + kx);
+                    const gray = grayscale[idx];
+                    gx += gray * sobelX[ky + 1][kx + 1];
+                    gy += gray * sobelY[ky + 1][kx + 1];
+                }
+            }
+            
+            const magnitude = Math.sqrt(gx * gx + gy * gy);
+            magnitudeSum += magnitude;
+            if (magnitude > maxMagnitude) {
+                maxMagnitude = magnitude;
+            }
+            if (magnitude > threshold) {
+                edgePixelCount++;
+            }
+        }
+    }
+    
+    return {
+        edgePixelCount,
+        meanMagnitude: magnitudeSum / (width * height)
+    };
+}
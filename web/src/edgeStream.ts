@@ -0,0 +1,273 @@
+// Decoder for the delta-coded edge stream produced by EdgeDeltaEncoder (frame-core)
+// and relayed by server.js. Packet layout is documented in EdgeDeltaEncoder.java.
+
+const HEADER_BYTES = 28;
+const FLAG_KEYFRAME = 1;
+const FLAG_RAW = 2;
+
+export interface EdgePacket {
+    keyframe: boolean;
+    raw: boolean;
+    fps: number;
+    seq: number;
+    width: number;
+    height: number;
+    processingMicros: number;
+    sentAt: number;
+    payload: Uint8Array;
+}
+
+export function parseEdgePacket(bytes: Uint8Array): EdgePacket {
+    if (bytes.length < HEADER_BYTES || bytes[0] !== 1) {
+        throw new Error('Not an edge packet');
+    }
+    const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+    const flags = view.getUint8(1);
+    return {
+        keyframe: (flags & FLAG_KEYFRAME) !== 0,
+        raw: (flags & FLAG_RAW) !== 0,
+        fps: view.getUint16(2, true),
+        seq: view.getUint32(4, true),
+        width: view.getUint32(8, true),
+        height: view.getUint32(12, true),
+        processingMicros: view.getUint32(16, true),
+        sentAt: Number(view.getBigUint64(20, true)),
+        payload: bytes.subarray(HEADER_BYTES)
+    };
+}
+
+/** Splits a GET /api/edges response ([u32 length][packet]...) into packets. */
+export function splitEdgePackets(body: ArrayBuffer): EdgePacket[] {
+    const bytes = new Uint8Array(body);
+    const view = new DataView(body);
+    const packets: EdgePacket[] = [];
+    let offset = 0;
+    while (offset + 4 <= bytes.length) {
+        const length = view.getUint32(offset, true);
+        offset += 4;
+        packets.push(parseEdgePacket(bytes.subarray(offset, offset + length)));
+        offset += length;
+    }
+    return packets;
+}
+
+/**
+ * Rebuilds the edge mask (one byte per pixel, 0 or 1) from keyframes and XOR deltas.
+ */
+export class EdgeMaskDecoder {
+    mask = new Uint8Array(0);
+    width = 0;
+    height = 0;
+    lastSeq = -1;
+
+    /** Applies a packet; false if it is a delta that does not continue the current chain. */
+    apply(packet: EdgePacket): boolean {
+        if (packet.keyframe) {
+            const size = packet.width * packet.height;
+            if (this.mask.length !== size) {
+                this.mask = new Uint8Array(size);
+            } else {
+                this.mask.fill(0);
+            }
+            this.width = packet.width;
+            this.height = packet.height;
+        } else if (this.lastSeq < 0 || packet.seq !== this.lastSeq + 1 ||
+                   packet.width !== this.width || packet.height !== this.height) {
+            return false;
+        }
+        // Keyframe payload XORed into a cleared mask is the mask itself
+        if (packet.raw) {
+            this.xorRawBits(packet.payload);
+        } else {
+            this.xorRuns(packet.payload);
+        }
+        this.lastSeq = packet.seq;
+        return true;
+    }
+
+    reset(): void {
+        this.lastSeq = -1;
+    }
+
+    private xorRuns(payload: Uint8Array): void {
+        const mask = this.mask;
+        let pos = 0;
+        let bit = 0;
+        let i = 0;
+        while (i < payload.length && pos < mask.length) {
+            let run = 0;
+            let shift = 0;
+            let byte: number;
+            do {
+                byte = payload[i++];
+                run += (byte & 0x7f) * Math.pow(2, shift);
+                shift += 7;
+            } while (byte & 0x80);
+            const end = Math.min(pos + run, mask.length);
+            if (bit === 1) {
+                for (let p = pos; p < end; p++) {
+                    mask[p] ^= 1;
+                }
+            }
+            pos = end;
+            bit ^= 1;
+        }
+    }
+
+    private xorRawBits(payload: Uint8Array): void {
+        const mask = this.mask;
+        for (let p = 0; p < mask.length; p++) {
+            mask[p] ^= (payload[p >> 3] >> (p & 7)) & 1;
+        }
+    }
+}
+
+export interface EdgeStreamStats {
+    seq: number;
+    fps: number;
+    processingMs: number;
+    packetsPerSecond: number;
+    kbitPerSecond: number;
+    keyframes: number;
+    deltas: number;
+    lostDeltas: number;       // device -> server chain breaks
+    keyframeRequests: number; // sent by this viewer
+}
+
+/**
+ * Polls /api/edges for packets after the last applied one, reconstructs the
+ * mask and draws it. On a broken chain it asks the device for a keyframe.
+ */
+export class EdgeStreamViewer {
+    private canvas: HTMLCanvasElement;
+    private ctx: CanvasRenderingContext2D;
+    private statsContainer: HTMLElement;
+    private decoder = new EdgeMaskDecoder();
+    private imageData: ImageData | null = null;
+    private pollTimer: number | null = null;
+    private polling = false;
+    private keyframeRequests = 0;
+    private windowStart = performance.now();
+    private windowPackets = 0;
+    private windowBytes = 0;
+    private stats: EdgeStreamStats | null = null;
+
+    // stream: the app's camera stream ("main" unless it runs several cameras, e.g. "back"/"front")
+    constructor(canvasId: string, statsId: string, private serverUrl = '', private stream = 'main') {
+        const canvas = document.getElementById(canvasId) as HTMLCanvasElement;
+        const statsContainer = document.getElementById(statsId);
+        if (!canvas) {
+            throw new Error(`Canvas element with id "${canvasId}" not found`);
+        }
+        if (!statsContainer) {
+            throw new Error(`Stats container with id "${statsId}" not found`);
+        }
+        const ctx = canvas.getContext('2d');
+        if (!ctx) {
+            throw new Error('Failed to get 2D context');
+        }
+        this.canvas = canvas;
+        this.ctx = ctx;
+        this.statsContainer = statsContainer;
+    }
+
+    start(intervalMs = 50): void {
+        this.stop();
+        this.pollTimer = window.setInterval(() => this.poll(), intervalMs);
+    }
+
+    stop(): void {
+        if (this.pollTimer !== null) {
+            window.clearInterval(this.pollTimer);
+            this.pollTimer = null;
+        }
+    }
+
+    getStats(): EdgeStreamStats | null {
+        return this.stats;
+    }
+
+    private async poll(): Promise<void> {
+        if (this.polling) {
+            return;
+        }
+        this.polling = true;
+        try {
+            const response = await fetch(`${this.serverUrl}/api/edges?stream=${encodeURIComponent(this.stream)}&after=${this.decoder.lastSeq}`);
+            const serverStats = JSON.parse(response.headers.get('X-Edge-Stats') || '{}');
+            if (response.status !== 200) {
+                return;
+            }
+            const body = await response.arrayBuffer();
+            let last: EdgePacket | null = null;
+            for (const packet of splitEdgePackets(body)) {
+                if (!this.decoder.apply(packet)) {
+                    // Missed packets the server no longer has - resync from a new keyframe
+                    this.decoder.reset();
+                    this.keyframeRequests++;
+                    await fetch(`${this.serverUrl}/api/edges/keyframe?stream=${encodeURIComponent(this.stream)}`, { method: 'POST' });
+                    break;
+                }
+                last = packet;
+                this.windowPackets++;
+                this.windowBytes += packet.payload.length + HEADER_BYTES;
+            }
+            if (last) {
+                this.draw();
+                this.updateStats(last, serverStats);
+            }
+        } catch (error) {
+            // Server not running - nothing to show
+        } finally {
+            this.polling = false;
+        }
+    }
+
+    private draw(): void {
+        const { width, height, mask } = this.decoder;
+        if (this.canvas.width !== width || this.canvas.height !== height || !this.imageData) {
+            this.canvas.width = width;
+            this.canvas.height = height;
+            this.imageData = this.ctx.createImageData(width, height);
+        }
+        // 0xFFFFFFFF / 0xFF000000 are white / black on little-endian RGBA
+        const pixels = new Uint32Array(this.imageData.data.buffer);
+        for (let i = 0; i < mask.length; i++) {
+            pixels[i] = mask[i] ? 0xFFFFFFFF : 0xFF000000;
+        }
+        this.ctx.putImageData(this.imageData, 0, 0);
+    }
+
+    private updateStats(last: EdgePacket, serverStats: { keyframes?: number; deltas?: number; lostDeltas?: number }): void {
+        const now = performance.now();
+        const elapsed = (now - this.windowStart) / 1000;
+        const previous = this.stats;
+        const rates = elapsed >= 1
+            ? { packetsPerSecond: this.windowPackets / elapsed, kbitPerSecond: this.windowBytes * 8 / 1000 / elapsed }
+            : { packetsPerSecond: previous ? previous.packetsPerSecond : 0, kbitPerSecond: previous ? previous.kbitPerSecond : 0 };
+        if (elapsed >= 1) {
+            this.windowStart = now;
+            this.windowPackets = 0;
+            this.windowBytes = 0;
+        }
+        this.stats = {
+            seq: last.seq,
+            fps: last.fps,
+            processingMs: last.processingMicros / 1000,
+            ...rates,
+            keyframes: serverStats.keyframes ?? 0,
+            deltas: serverStats.deltas ?? 0,
+            lostDeltas: serverStats.lostDeltas ?? 0,
+            keyframeRequests: this.keyframeRequests
+        };
+        const s = this.stats;
+        this.statsContainer.innerHTML = `
+            <div><strong>Packet #:</strong> ${s.seq}</div>
+            <div><strong>Device FPS:</strong> ${s.fps}</div>
+            <div><strong>Processing:</strong> ${s.processingMs.toFixed(2)} ms</div>
+            <div><strong>Received:</strong> ${s.packetsPerSecond.toFixed(1)} packets/s, ${s.kbitPerSecond.toFixed(1)} kbit/s</div>
+            <div><strong>Keyframes / Deltas:</strong> ${s.keyframes} / ${s.deltas}</div>
+            <div><strong>Lost Deltas:</strong> ${s.lostDeltas} (keyframe requests: ${s.keyframeRequests})</div>
+        `;
+    }
+}
@@ -1,10 +1,34 @@
-import { EdgeDetectionViewer } from './viewer.js';
+import { EdgeStreamViewer } from './edgeStream.js';
+import { TraceMonitor } from './traceMonitor.js';
+import { EdgeDetectionViewer, EdgeEngine } from './viewer.js';
 
 let viewer: EdgeDetectionViewer | null = null;
+let traceMonitor: TraceMonitor | null = null;
+let edgeStreamViewer: EdgeStreamViewer | null = null;
 
 document.addEventListener('DOMContentLoaded', async () => {
     console.log('FLAM Edge Detection Web Viewer initialized');
     
+    // Camera stream to show: index.html?stream=front when the app runs both cameras
+    // (GET /api/streams lists them); "main" for the single-camera app
+    const stream = new URLSearchParams(window.location.search).get('stream') || 'main';
+    
+    // Frames streamed from the Android app, with end-to-end latency tracing
+    try {
+        traceMonitor = new TraceMonitor('remoteFrame', 'traceStats', '', stream);
+        traceMonitor.start();
+    } catch (error) {
+        console.warn('Remote frame tracing unavailable:', error);
+    }
+    
+    // Delta-coded edge masks streamed from the Android app (every frame)
+    try {
+        edgeStreamViewer = new EdgeStreamViewer('remoteEdges', 'edgeStreamStats', '', stream);
+        edgeStreamViewer.start();
+    } catch (error) {
+        console.warn('Remote edge stream unavailable:', error);
+    }
+    
     try {
         viewer = new EdgeDetectionViewer('frameCanvas', 'frameStats');
         
@@ -23,11 +47,48 @@ document.addEventListener('DOMContentLoaded', async () => {
             });
         }
         
+        // Engine selection (JS CPU path vs WebGL shaders)
+        const engineSelect = document.getElementById('engineSelect') as HTMLSelectElement | null;
+        if (engineSelect) {
+            engineSelect.addEventListener('change', () => {
+                if (viewer) {
+                    viewer.setEngine(engineSelect.value as EdgeEngine).then(engine => {
+                        engineSelect.value = engine;
+                    });
+                }
+            });
+        }
+        
+        const showEdgesCheckbox = document.getElementById('showEdgesCheckbox') as HTMLInputElement | null;
+        if (showEdgesCheckbox) {
+            showEdgesCheckbox.addEventListener('change', () => {
+                if (viewer) {
+                    viewer.setShowEdges(showEdgesCheckbox.checked);
+                }
+            });
+        }
+        
+        // Side-by-side benchmark of both engines on the current frame
+        const benchmarkButton = document.getElementById('benchmarkButton');
+        if (benchmarkButton) {
+            benchmarkButton.addEventListener('click', () => {
+                if (viewer) {
+                    viewer.runBenchmark();
+                }
+            });
+        }
+        
         // Cleanup on page unload
         window.addEventListener('beforeunload', () => {
             if (viewer) {
                 viewer.stop();
             }
+            if (traceMonitor) {
+                traceMonitor.stop();
+            }
+            if (edgeStreamViewer) {
+                edgeStreamViewer.stop();
+            }
         });
         
     } catch (error) {
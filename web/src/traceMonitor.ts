@@ -0,0 +1,146 @@
+export interface FrameTraceData {
+    seq: number;
+    sensorTimestamp: number;
+    sensorAgeMs: number;
+    hops: Record<string, number>; // ms relative to the 'analyze' hop
+    drops: { analyzer: number; renderer: number; sender: number };
+}
+
+interface RemoteFrame {
+    image?: string;
+    sendSeq?: number;
+    sentAt?: number;
+    serverReceivedAt?: number;
+    serverServedAt?: number;
+    receivedCount?: number;
+    networkDrops?: number;
+    trace?: FrameTraceData | null;
+    error?: string;
+}
+
+export interface LatencyBreakdown {
+    seq: number;
+    sensorToAnalyzeMs: number;
+    deviceMs: number;         // analyze -> handed to HTTP
+    networkMs: number;        // device sentAt -> server receive (needs synced clocks)
+    serverQueueMs: number;    // server receive -> served to viewer
+    viewerFetchMs: number;    // served -> received by viewer
+    displayMs: number;        // received -> image decoded and shown
+    totalMs: number;          // sensor/analyze -> shown in viewer
+    drops: { analyzer: number; renderer: number; sender: number; network: number; viewer: number };
+}
+
+/**
+ * Polls /api/frame for frames streamed from the Android app, shows them, and
+ * turns the per-frame trace into a latency breakdown plus drop counts per hop.
+ */
+export class TraceMonitor {
+    private image: HTMLImageElement;
+    private statsContainer: HTMLElement;
+    private pollTimer: number | null = null;
+    private lastReceivedCount = 0;
+    private viewerDrops = 0;
+    private latest: LatencyBreakdown | null = null;
+
+    constructor(imageId: string, statsId: string, private serverUrl = '', private stream = 'main') {
+        const image = document.getElementById(imageId) as HTMLImageElement;
+        const statsContainer = document.getElementById(statsId);
+        if (!image) {
+            throw new Error(`Image element with id "${imageId}" not found`);
+        }
+        if (!statsContainer) {
+            throw new Error(`Stats container with id "${statsId}" not found`);
+        }
+        this.image = image;
+        this.statsContainer = statsContainer;
+    }
+
+    start(intervalMs = 200): void {
+        this.stop();
+        this.pollTimer = window.setInterval(() => this.poll(), intervalMs);
+    }
+
+    stop(): void {
+        if (this.pollTimer !== null) {
+            window.clearInterval(this.pollTimer);
+            this.pollTimer = null;
+        }
+    }
+
+    getLatest(): LatencyBreakdown | null {
+        return this.latest;
+    }
+
+    private async poll(): Promise<void> {
+        let frame: RemoteFrame;
+        try {
+            const response = await fetch(`${this.serverUrl}/api/frame?stream=${encodeURIComponent(this.stream)}`);
+            frame = await response.json();
+        } catch (error) {
+            return; // Server not running - nothing to trace
+        }
+        const viewerReceivedAt = Date.now();
+
+        if (frame.error || !frame.image || !frame.receivedCount || frame.receivedCount === this.lastReceivedCount) {
+            return;
+        }
+        // Frames the server received but this viewer never fetched
+        if (this.lastReceivedCount > 0 && frame.receivedCount > this.lastReceivedCount + 1) {
+            this.viewerDrops += frame.receivedCount - this.lastReceivedCount - 1;
+        }
+        this.lastReceivedCount = frame.receivedCount;
+
+        this.image.onload = () => {
+            this.latest = this.buildBreakdown(frame, viewerReceivedAt, Date.now());
+            this.render();
+        };
+        this.image.src = frame.image;
+    }
+
+    private buildBreakdown(frame: RemoteFrame, viewerReceivedAt: number, displayedAt: number): LatencyBreakdown {
+        const trace = frame.trace;
+        const sentAt = frame.sentAt ?? 0;
+        const serverReceivedAt = frame.serverReceivedAt ?? viewerReceivedAt;
+        const serverServedAt = frame.serverServedAt ?? serverReceivedAt;
+        const deviceMs = trace ? (trace.hops.sent ?? 0) : 0;
+        const sensorToAnalyzeMs = trace ? trace.sensorAgeMs : 0;
+        const networkMs = sentAt > 0 ? serverReceivedAt - sentAt : 0;
+
+        return {
+            seq: trace ? trace.seq : 0,
+            sensorToAnalyzeMs,
+            deviceMs,
+            networkMs,
+            serverQueueMs: serverServedAt - serverReceivedAt,
+            viewerFetchMs: viewerReceivedAt - serverServedAt,
+            displayMs: displayedAt - viewerReceivedAt,
+            totalMs: sensorToAnalyzeMs + deviceMs + (sentAt > 0 ? displayedAt - sentAt : 0),
+            drops: {
+                analyzer: trace ? trace.drops.analyzer : 0,
+                renderer: trace ? trace.drops.renderer : 0,
+                sender: trace ? trace.drops.sender : 0,
+                network: frame.networkDrops ?? 0,
+                viewer: this.viewerDrops
+            }
+        };
+    }
+
+    private render(): void {
+        const b = this.latest;
+        if (!b) {
+            return;
+        }
+        this.statsContainer.innerHTML = `
+            <div><strong>Frame #:</strong> ${b.seq}</div>
+            <div><strong>Sensor → Analyze:</strong> ${b.sensorToAnalyzeMs.toFixed(1)} ms</div>
+            <div><strong>Device (analyze → send):</strong> ${b.deviceMs.toFixed(1)} ms</div>
+            <div><strong>Network:</strong> ${b.networkMs.toFixed(0)} ms</div>
+            <div><strong>Server Queue:</strong> ${b.serverQueueMs.toFixed(0)} ms</div>
+            <div><strong>Viewer Fetch:</strong> ${b.viewerFetchMs.toFixed(0)} ms</div>
+            <div><strong>Decode/Display:</strong> ${b.displayMs.toFixed(0)} ms</div>
+            <div><strong>Total Age:</strong> ${b.totalMs.toFixed(0)} ms</div>
+            <div><strong>Drops:</strong> analyzer ${b.drops.analyzer}, renderer ${b.drops.renderer},
+                sender ${b.drops.sender}, network ${b.drops.network}, viewer ${b.drops.viewer}</div>
+        `;
+    }
+}
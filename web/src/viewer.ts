@@ -1,7 +1,30 @@
+import { EdgeStats, calculateSobelEdges } from './edgeKernel.js';
+import { WasmEdgeKernel } from './wasmKernel.js';
+import { WebGLEdgeEngine } from './webglEngine.js';
+
+export type EdgeEngine = 'js' | 'wasm' | 'webgl';
+
+const WASM_KERNEL_URL = 'dist/edge_kernel.wasm';
+
+const ENGINE_LABELS: Record<EdgeEngine, string> = {
+    js: 'JavaScript (CPU)',
+    wasm: 'WASM SIMD (CPU)',
+    webgl: 'WebGL Shaders'
+};
+
 export interface FrameStats {
     fps: number;
     resolution: { width: number; height: number };
     processingTime: number;
+    engine: EdgeEngine;
+    edgePixelCount: number;
+}
+
+export interface BenchmarkResult {
+    engine: EdgeEngine;
+    iterations: number;
+    averageMs: number;
+    edgePixelCount: number;
 }
 
 export class EdgeDetectionViewer {
@@ -16,6 +39,12 @@ export class EdgeDetectionViewer {
     private currentFps = 0;
     private processingTime = 0;
     private isProcessing = true; // Edge detection enabled by default
+    private engine: EdgeEngine = 'js';
+    private webglEngine: WebGLEdgeEngine | null = null;
+    private wasmKernel: WasmEdgeKernel | null = null;
+    private showEdges = false; // WebGL engine only: display edge mask instead of raw feed
+    private lastEdgeStats: EdgeStats = { edgePixelCount: 0, meanMagnitude: 0 };
+    private benchmarkResults: BenchmarkResult[] = [];
 
     constructor(canvasId: string, statsId: string) {
         const canvas = document.getElementById(canvasId) as HTMLCanvasElement;
@@ -94,7 +123,17 @@ export class EdgeDetectionViewer {
                 
                 // Run edge detection in background for stats (but don't apply to display)
                 if (this.isProcessing) {
-                    this.calculateEdgeDetection();
+                    if (this.engine === 'webgl' && this.webglEngine) {
+                        this.lastEdgeStats = this.webglEngine.process(
+                            this.videoElement, this.canvas.width, this.canvas.height, this.showEdges);
+                        if (this.showEdges) {
+                            this.ctx.drawImage(this.webglEngine.canvas, 0, 0, this.canvas.width, this.canvas.height);
+                        }
+                    } else if (this.engine === 'wasm' && this.wasmKernel) {
+                        this.lastEdgeStats = this.calculateEdgeDetectionWasm(this.wasmKernel);
+                    } else {
+                        this.lastEdgeStats = this.calculateEdgeDetection();
+                    }
                 }
                 
                 // Calculate processing time
@@ -117,58 +156,26 @@ export class EdgeDetectionViewer {
      * Calculate edge detection in background (for stats) but don't apply to display
      * The raw camera feed is always shown to the user
      */
-    private calculateEdgeDetection(): void {
+    private calculateEdgeDetection(): EdgeStats {
         // Get image data from canvas (which has the raw video frame)
         const imageData = this.ctx.getImageData(0, 0, this.canvas.width, this.canvas.height);
-        const data = imageData.data;
-        
-        // Convert to grayscale and apply Sobel edge detection
-        const width = this.canvas.width;
-        const height = this.canvas.height;
-        const grayscale = new Uint8Array(width * height);
-        
-        // Convert to grayscale
-        for (let i = 0; i < data.length; i += 4) {
-            const r = data[i];
-            const g = data[i + 1];
-            const b = data[i + 2];
-            grayscale[i / 4] = Math.round(0.299 * r + 0.587 * g + 0.114 * b);
-        }
         
-        // Apply Sobel edge detection (just for calculation, not display)
-        const sobelX = [[-1, 0, 1], [-2, 0, 2], [-1, 0, 1]];
-        const sobelY = [[-1, -2, -1], [0, 0, 0], [1, 2, 1]];
-        
-        // Calculate edge magnitudes (for stats/metrics)
-        let maxMagnitude = 0;
-        let edgePixelCount = 0;
-        const threshold = 50; // Threshold for edge detection
-        
-        for (let y = 1; y < height - 1; y++) {
-            for (let x = 1; x < width - 1; x++) {
-                let gx = 0, gy = 0;
-                
-                for (let ky = -1; ky <= 1; ky++) {
-                    for (let kx = -1; kx <= 1; kx++) {
-                        const idx = (y + ky) * width + (x + kx);
-                        const gray = grayscale[idx];
-                        gx += gray * sobelX[ky + 1][kx + 1];
-                        gy += gray * sobelY[ky + 1][kx + 1];
-                    }
-                }
-                
-                const magnitude = Math.sqrt(gx * gx + gy * gy);
-                if (magnitude > maxMagnitude) {
-                    maxMagnitude = magnitude;
-                }
-                if (magnitude > threshold) {
-                    edgePixelCount++;
-                }
-            }
-        }
+        const stats = calculateSobelEdges(imageData.data, this.canvas.width, this.canvas.height);
         
         // Note: We don't draw the edges - raw feed stays visible
         // Edge detection is calculated for processing time measurement only
+        return stats;
+    }
+
+    /**
+     * Same readback and Sobel threshold as calculateEdgeDetection, but the
+     * grayscale/Sobel loops run in the WASM SIMD kernel. The kernel only counts
+     * edge pixels, so these stats carry no meanMagnitude.
+     */
+    private calculateEdgeDetectionWasm(kernel: WasmEdgeKernel): EdgeStats {
+        const imageData = this.ctx.getImageData(0, 0, this.canvas.width, this.canvas.height);
+        const edgePixelCount = kernel.process(imageData.data, this.canvas.width, this.canvas.height, 'sobel', 50);
+        return { edgePixelCount };
     }
 
     private updateFps(): void {
@@ -188,18 +195,130 @@ export class EdgeDetectionViewer {
                 width: this.canvas.width,
                 height: this.canvas.height
             },
-            processingTime: this.processingTime
+            processingTime: this.processingTime,
+            engine: this.engine,
+            edgePixelCount: this.lastEdgeStats.edgePixelCount
         };
 
+        const benchmarkHtml = this.benchmarkResults.map(result =>
+            `<div><strong>Benchmark (${result.engine}):</strong> ${result.averageMs.toFixed(2)} ms/frame, ` +
+            `${result.edgePixelCount} edge px</div>`
+        ).join('');
+
         this.statsContainer.innerHTML = `
             <div><strong>FPS:</strong> ${stats.fps}</div>
             <div><strong>Resolution:</strong> ${stats.resolution.width}x${stats.resolution.height}</div>
             <div><strong>Processing Time:</strong> ${stats.processingTime.toFixed(2)} ms</div>
-            <div><strong>Display:</strong> Raw Camera Feed</div>
+            <div><strong>Display:</strong> ${this.showEdges && stats.engine === 'webgl' ? 'WebGL Edge Mask' : 'Raw Camera Feed'}</div>
             <div><strong>Background:</strong> ${this.isProcessing ? 'Edge Detection Active' : 'Edge Detection Disabled'}</div>
+            <div><strong>Engine:</strong> ${ENGINE_LABELS[stats.engine]}</div>
+            <div><strong>Edge Pixels:</strong> ${stats.edgePixelCount}</div>
+            ${benchmarkHtml}
         `;
     }
 
+    /**
+     * Select the edge detection engine. Falls back to the JS path if WebGL2
+     * is not available.
+     */
+    async setEngine(engine: EdgeEngine): Promise<EdgeEngine> {
+        if ((engine === 'webgl' && !this.ensureWebGLEngine())
+            || (engine === 'wasm' && !(await this.ensureWasmKernel()))) {
+            this.engine = 'js';
+            return this.engine;
+        }
+        this.engine = engine;
+        console.log(`Edge detection engine: ${engine}`);
+        return this.engine;
+    }
+
+    private async ensureWasmKernel(): Promise<WasmEdgeKernel | null> {
+        if (!this.wasmKernel) {
+            try {
+                this.wasmKernel = await WasmEdgeKernel.load(WASM_KERNEL_URL);
+            } catch (error) {
+                console.error('❌ WASM kernel unavailable, staying on JS engine:', error);
+                return null;
+            }
+        }
+        return this.wasmKernel;
+    }
+
+    private ensureWebGLEngine(): WebGLEdgeEngine | null {
+        if (!this.webglEngine) {
+            try {
+                this.webglEngine = new WebGLEdgeEngine();
+            } catch (error) {
+                console.error('❌ WebGL engine unavailable, staying on JS engine:', error);
+                return null;
+            }
+        }
+        return this.webglEngine;
+    }
+
+    setShowEdges(show: boolean): void {
+        this.showEdges = show;
+    }
+
+    /**
+     * Run all engines back to back on the current video frame and record
+     * the average time per frame. WebGL timings include the reduced-mip
+     * readback, which waits for the GPU to finish.
+     */
+    async runBenchmark(iterations = 60): Promise<BenchmarkResult[]> {
+        const width = this.canvas.width;
+        const height = this.canvas.height;
+        const results: BenchmarkResult[] = [];
+
+        // JS path: same work as the live loop (draw + getImageData + Sobel)
+        let stats: EdgeStats = { edgePixelCount: 0, meanMagnitude: 0 };
+        let start = performance.now();
+        for (let i = 0; i < iterations; i++) {
+            this.ctx.drawImage(this.videoElement, 0, 0, width, height);
+            stats = this.calculateEdgeDetection();
+        }
+        results.push({
+            engine: 'js',
+            iterations,
+            averageMs: (performance.now() - start) / iterations,
+            edgePixelCount: stats.edgePixelCount
+        });
+
+        const kernel = await this.ensureWasmKernel();
+        if (kernel) {
+            start = performance.now();
+            for (let i = 0; i < iterations; i++) {
+                this.ctx.drawImage(this.videoElement, 0, 0, width, height);
+                stats = this.calculateEdgeDetectionWasm(kernel);
+            }
+            results.push({
+                engine: 'wasm',
+                iterations,
+                averageMs: (performance.now() - start) / iterations,
+                edgePixelCount: stats.edgePixelCount
+            });
+        }
+
+        const engine = this.ensureWebGLEngine();
+        if (engine) {
+            engine.process(this.videoElement, width, height, false); // warm up shaders/allocations
+            start = performance.now();
+            for (let i = 0; i < iterations; i++) {
+                stats = engine.process(this.videoElement, width, height, false);
+            }
+            results.push({
+                engine: 'webgl',
+                iterations,
+                averageMs: (performance.now() - start) / iterations,
+                edgePixelCount: stats.edgePixelCount
+            });
+        }
+
+        this.benchmarkResults = results;
+        console.table(results);
+        return results;
+    }
+
     toggleProcessing(): void {
         this.isProcessing = !this.isProcessing;
         console.log(`Edge detection calculation ${this.isProcessing ? 'enabled' : 'disabled'} (background processing)`);
@@ -220,5 +339,10 @@ export class EdgeDetectionViewer {
         if (this.videoElement.srcObject) {
             this.videoElement.srcObject = null;
         }
+        
+        if (this.webglEngine) {
+            this.webglEngine.release();
+            this.webglEngine = null;
+        }
     }
 }
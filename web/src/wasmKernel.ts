@@ -0,0 +1,71 @@
+export type KernelMode = 'sobel' | 'canny';
+
+interface KernelExports {
+    memory: WebAssembly.Memory;
+    edge_prepare(width: number, height: number): number;
+    edge_process(mode: number, low: number, high: number): number;
+    edge_output(): number;
+}
+
+const MODE_IDS: Record<KernelMode, number> = { sobel: 0, canny: 1 };
+
+/**
+ * Thin wrapper around the WASM SIMD edge kernel (wasm/edge_kernel.c).
+ * Frames are copied into a linear-memory buffer that is reused between calls;
+ * it is only re-sized when the resolution grows.
+ * Works in the browser and in Node (pass the .wasm bytes to instantiate()).
+ */
+export class WasmEdgeKernel {
+    private exports: KernelExports;
+    private width = 0;
+    private height = 0;
+    private inputPtr = 0;
+    private inputView = new Uint8Array(0);
+
+    private constructor(exports: KernelExports) {
+        this.exports = exports;
+    }
+
+    static async instantiate(bytes: BufferSource): Promise<WasmEdgeKernel> {
+        const { instance } = await WebAssembly.instantiate(bytes, {});
+        return new WasmEdgeKernel(instance.exports as unknown as KernelExports);
+    }
+
+    static async load(url: string): Promise<WasmEdgeKernel> {
+        const response = await fetch(url);
+        if (!response.ok) {
+            throw new Error(`Failed to fetch WASM kernel from ${url}: ${response.status}`);
+        }
+        return WasmEdgeKernel.instantiate(await response.arrayBuffer());
+    }
+
+    /**
+     * Run the kernel on an RGBA frame and return the number of edge pixels.
+     * low is the Sobel threshold in 'sobel' mode and the Canny low threshold in 'canny' mode.
+     */
+    process(rgba: Uint8ClampedArray | Uint8Array, width: number, height: number,
+            mode: KernelMode = 'sobel', low = 50, high = 150): number {
+        this.input(width, height).set(rgba);
+        return this.exports.edge_process(MODE_IDS[mode], low, high);
+    }
+
+    /** View of the RGBA input region for a width x height frame (valid until the next resize). */
+    input(width: number, height: number): Uint8Array {
+        if (width !== this.width || height !== this.height
+            || this.inputView.buffer !== this.exports.memory.buffer) {
+            this.inputPtr = this.exports.edge_prepare(width, height);
+            if (this.inputPtr === 0) {
+                throw new Error(`WASM kernel could not reserve memory for ${width}x${height}`);
+            }
+            this.width = width;
+            this.height = height;
+            this.inputView = new Uint8Array(this.exports.memory.buffer, this.inputPtr, width * height * 4);
+        }
+        return this.inputView;
+    }
+
+    /** 0/255 edge mask from the last process() call. */
+    edges(): Uint8Array {
+        return new Uint8Array(this.exports.memory.buffer, this.exports.edge_output(), this.width * this.height);
+    }
+}
@@ -0,0 +1,316 @@
+import { EdgeStats } from './edgeKernel.js';
+
+// Largest Sobel magnitude for 8-bit input: sqrt(1020^2 + 1020^2)
+const MAX_SOBEL_MAGNITUDE = 1442.5;
+
+// Reduced mip level is read back once it is at most this many texels wide/high
+const REDUCTION_TARGET_SIZE = 16;
+
+const VERTEX_SHADER_SOURCE = `#version 300 es
+in vec2 aPosition;
+out vec2 vTexCoord;
+void main() {
+    vTexCoord = aPosition * 0.5 + 0.5;
+    gl_Position = vec4(aPosition, 0.0, 1.0);
+}`;
+
+const GRAYSCALE_SHADER_SOURCE = `#version 300 es
+precision mediump float;
+in vec2 vTexCoord;
+uniform sampler2D uFrame;
+out vec4 outColor;
+void main() {
+    vec3 rgb = texture(uFrame, vTexCoord).rgb;
+    outColor = vec4(dot(rgb, vec3(0.299, 0.587, 0.114)), 0.0, 0.0, 1.0);
+}`;
+
+// Same kernels and threshold as EdgeDetectionViewer.calculateEdgeDetection:
+// R = binary edge mask, G = normalized magnitude (both averaged by the mip chain)
+const SOBEL_SHADER_SOURCE = `#version 300 es
+precision highp float;
+uniform sampler2D uGray;
+uniform float uThreshold;
+out vec4 outColor;
+float gray(ivec2 p, ivec2 size) {
+    return texelFetch(uGray, clamp(p, ivec2(0), size - 1), 0).r * 255.0;
+}
+void main() {
+    ivec2 size = textureSize(uGray, 0);
+    ivec2 p = ivec2(gl_FragCoord.xy);
+    float tl = gray(p + ivec2(-1,  1), size);
+    float t  = gray(p + ivec2( 0,  1), size);
+    float tr = gray(p + ivec2( 1,  1), size);
+    float l  = gray(p + ivec2(-1,  0), size);
+    float r  = gray(p + ivec2( 1,  0), size);
+    float bl = gray(p + ivec2(-1, -1), size);
+    float b  = gray(p + ivec2( 0, -1), size);
+    float br = gray(p + ivec2( 1, -1), size);
+    float gx = (tr + 2.0 * r + br) - (tl + 2.0 * l + bl);
+    float gy = (bl + 2.0 * b + br) - (tl + 2.0 * t + tr);
+    float magnitude = sqrt(gx * gx + gy * gy);
+    float edge = magnitude > uThreshold ? 1.0 : 0.0;
+    outColor = vec4(edge, magnitude / ${MAX_SOBEL_MAGNITUDE.toFixed(1)}, 0.0, 1.0);
+}`;
+
+const DISPLAY_SHADER_SOURCE = `#version 300 es
+precision mediump float;
+in vec2 vTexCoord;
+uniform sampler2D uEdges;
+out vec4 outColor;
+void main() {
+    float edge = texture(uEdges, vTexCoord).r;
+    outColor = vec4(vec3(edge), 1.0);
+}`;
+
+/**
+ * WebGL2 edge detection engine.
+ * Uploads the video frame as a texture and runs grayscale, Sobel and threshold
+ * as fragment shader passes, so no full-frame GPU->CPU readback is needed.
+ * Stats are derived from a small reduced mip level of the edge texture.
+ */
+export class WebGLEdgeEngine {
+    readonly canvas: HTMLCanvasElement;
+    private gl: WebGL2RenderingContext;
+    private quadBuffer: WebGLBuffer;
+    private grayProgram: WebGLProgram;
+    private sobelProgram: WebGLProgram;
+    private displayProgram: WebGLProgram;
+    private frameTexture: WebGLTexture;
+    private grayTexture: WebGLTexture | null = null;
+    private edgeTexture: WebGLTexture | null = null;
+    private grayFramebuffer: WebGLFramebuffer;
+    private edgeFramebuffer: WebGLFramebuffer;
+    private reductionFramebuffer: WebGLFramebuffer;
+    private reductionLevel = 0;
+    private reductionWidth = 0;
+    private reductionHeight = 0;
+    private reductionPixels = new Uint8Array(0);
+    private width = 0;
+    private height = 0;
+    private threshold = 50;
+
+    constructor() {
+        this.canvas = document.createElement('canvas');
+        const gl = this.canvas.getContext('webgl2', {
+            antialias: false,
+            depth: false,
+            preserveDrawingBuffer: true
+        });
+        if (!gl) {
+            throw new Error('WebGL2 is not supported by this browser');
+        }
+        this.gl = gl;
+
+        this.grayProgram = this.createProgram(GRAYSCALE_SHADER_SOURCE);
+        this.sobelProgram = this.createProgram(SOBEL_SHADER_SOURCE);
+        this.displayProgram = this.createProgram(DISPLAY_SHADER_SOURCE);
+
+        const quadBuffer = gl.createBuffer();
+        if (!quadBuffer) {
+            throw new Error('Could not create quad buffer');
+        }
+        this.quadBuffer = quadBuffer;
+        gl.bindBuffer(gl.ARRAY_BUFFER, quadBuffer);
+        gl.bufferData(gl.ARRAY_BUFFER, new Float32Array([-1, -1, 1, -1, -1, 1, 1, 1]), gl.STATIC_DRAW);
+
+        this.frameTexture = this.createTexture();
+        this.grayFramebuffer = this.createFramebuffer();
+        this.edgeFramebuffer = this.createFramebuffer();
+        this.reductionFramebuffer = this.createFramebuffer();
+    }
+
+    setThreshold(threshold: number): void {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Run edge detection on the current video frame.
+     * When renderEdges is true the edge mask is also drawn to this.canvas.
+     */
+    process(source: TexImageSource, width: number, height: number, renderEdges: boolean): EdgeStats {
+        const gl = this.gl;
+        if (width !== this.width || height !== this.height) {
+            this.resize(width, height);
+        }
+
+        // Upload frame (flipped so texture rows match GL's bottom-up convention)
+        gl.activeTexture(gl.TEXTURE0);
+        gl.bindTexture(gl.TEXTURE_2D, this.frameTexture);
+        gl.pixelStorei(gl.UNPACK_FLIP_Y_WEBGL, true);
+        gl.texImage2D(gl.TEXTURE_2D, 0, gl.RGBA, gl.RGBA, gl.UNSIGNED_BYTE, source);
+        gl.pixelStorei(gl.UNPACK_FLIP_Y_WEBGL, false);
+
+        gl.viewport(0, 0, width, height);
+
+        // Pass 1: grayscale
+        gl.bindFramebuffer(gl.FRAMEBUFFER, this.grayFramebuffer);
+        this.drawQuad(this.grayProgram, 'uFrame', this.frameTexture);
+
+        // Pass 2: Sobel + threshold
+        gl.bindFramebuffer(gl.FRAMEBUFFER, this.edgeFramebuffer);
+        gl.useProgram(this.sobelProgram);
+        gl.uniform1f(gl.getUniformLocation(this.sobelProgram, 'uThreshold'), this.threshold);
+        this.drawQuad(this.sobelProgram, 'uGray', this.grayTexture!);
+
+        // Optional on-screen output
+        if (renderEdges) {
+            gl.bindFramebuffer(gl.FRAMEBUFFER, null);
+            this.drawQuad(this.displayProgram, 'uEdges', this.edgeTexture!);
+        }
+
+        return this.reduce();
+    }
+
+    /**
+     * Average the edge texture down the mip chain and read back only the small
+     * reduced level. Counts are estimates: each reduced texel stands for
+     * (width * height) / (reducedWidth * reducedHeight) source pixels and is
+     * quantized to 8 bits.
+     */
+    private reduce(): EdgeStats {
+        const gl = this.gl;
+        gl.bindTexture(gl.TEXTURE_2D, this.edgeTexture);
+        gl.generateMipmap(gl.TEXTURE_2D);
+
+        gl.bindFramebuffer(gl.FRAMEBUFFER, this.reductionFramebuffer);
+        gl.readPixels(0, 0, this.reductionWidth, this.reductionHeight,
+            gl.RGBA, gl.UNSIGNED_BYTE, this.reductionPixels);
+        gl.bindFramebuffer(gl.FRAMEBUFFER, null);
+
+        let edgeSum = 0;
+        let magnitudeSum = 0;
+        for (let i = 0; i < this.reductionPixels.length; i += 4) {
+            edgeSum += this.reductionPixels[i];
+            magnitudeSum += this.reductionPixels[i + 1];
+        }
+
+        const texelCount = this.reductionWidth * this.reductionHeight;
+        const pixelsPerTexel = (this.width * this.height) / texelCount;
+        return {
+            edgePixelCount: Math.round((edgeSum / 255) * pixelsPerTexel),
+            meanMagnitude: (magnitudeSum / 255 / texelCount) * MAX_SOBEL_MAGNITUDE
+        };
+    }
+
+    private resize(width: number, height: number): void {
+        const gl = this.gl;
+        this.width = width;
+        this.height = height;
+        this.canvas.width = width;
+        this.canvas.height = height;
+
+        if (this.grayTexture) gl.deleteTexture(this.grayTexture);
+        if (this.edgeTexture) gl.deleteTexture(this.edgeTexture);
+
+        this.grayTexture = this.createTexture();
+        gl.texStorage2D(gl.TEXTURE_2D, 1, gl.R8, width, height);
+        gl.bindFramebuffer(gl.FRAMEBUFFER, this.grayFramebuffer);
+        gl.framebufferTexture2D(gl.FRAMEBUFFER, gl.COLOR_ATTACHMENT0, gl.TEXTURE_2D, this.grayTexture, 0);
+
+        // Pick the first mip level small enough to read back cheaply
+        let level = 0;
+        while ((width >> level) > REDUCTION_TARGET_SIZE || (height >> level) > REDUCTION_TARGET_SIZE) {
+            level++;
+        }
+        this.reductionLevel = level;
+        this.reductionWidth = Math.max(1, width >> level);
+        this.reductionHeight = Math.max(1, height >> level);
+        this.reductionPixels = new Uint8Array(this.reductionWidth * this.reductionHeight * 4);
+
+        this.edgeTexture = this.createTexture();
+        gl.texStorage2D(gl.TEXTURE_2D, level + 1, gl.RGBA8, width, height);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_MIN_FILTER, gl.LINEAR_MIPMAP_NEAREST);
+        gl.bindFramebuffer(gl.FRAMEBUFFER, this.edgeFramebuffer);
+        gl.framebufferTexture2D(gl.FRAMEBUFFER, gl.COLOR_ATTACHMENT0, gl.TEXTURE_2D, this.edgeTexture, 0);
+        gl.bindFramebuffer(gl.FRAMEBUFFER, this.reductionFramebuffer);
+        gl.framebufferTexture2D(gl.FRAMEBUFFER, gl.COLOR_ATTACHMENT0, gl.TEXTURE_2D, this.edgeTexture, this.reductionLevel);
+        gl.bindFramebuffer(gl.FRAMEBUFFER, null);
+
+        console.log(`WebGL engine resized to ${width}x${height}, reduction level ${level} (${this.reductionWidth}x${this.reductionHeight})`);
+    }
+
+    private drawQuad(program: WebGLProgram, samplerName: string, texture: WebGLTexture): void {
+        const gl = this.gl;
+        gl.useProgram(program);
+
+        gl.activeTexture(gl.TEXTURE0);
+        gl.bindTexture(gl.TEXTURE_2D, texture);
+        gl.uniform1i(gl.getUniformLocation(program, samplerName), 0);
+
+        const positionLocation = gl.getAttribLocation(program, 'aPosition');
+        gl.bindBuffer(gl.ARRAY_BUFFER, this.quadBuffer);
+        gl.enableVertexAttribArray(positionLocation);
+        gl.vertexAttribPointer(positionLocation, 2, gl.FLOAT, false, 0, 0);
+        gl.drawArrays(gl.TRIANGLE_STRIP, 0, 4);
+    }
+
+    private createTexture(): WebGLTexture {
+        const gl = this.gl;
+        const texture = gl.createTexture();
+        if (!texture) {
+            throw new Error('Could not create texture');
+        }
+        gl.bindTexture(gl.TEXTURE_2D, texture);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_MIN_FILTER, gl.LINEAR);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_MAG_FILTER, gl.LINEAR);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_WRAP_S, gl.CLAMP_TO_EDGE);
+        gl.texParameteri(gl.TEXTURE_2D, gl.TEXTURE_WRAP_T, gl.CLAMP_TO_EDGE);
+        return texture;
+    }
+
+    private createFramebuffer(): WebGLFramebuffer {
+        const framebuffer = this.gl.createFramebuffer();
+        if (!framebuffer) {
+            throw new Error('Could not create framebuffer');
+        }
+        return framebuffer;
+    }
+
+    private createProgram(fragmentSource: string): WebGLProgram {
+        const gl = this.gl;
+        const vertexShader = this.compileShader(gl.VERTEX_SHADER, VERTEX_SHADER_SOURCE);
+        const fragmentShader = this.compileShader(gl.FRAGMENT_SHADER, fragmentSource);
+        const program = gl.createProgram();
+        if (!program) {
+            throw new Error('Could not create shader program');
+        }
+        gl.attachShader(program, vertexShader);
+        gl.attachShader(program, fragmentShader);
+        gl.bindAttribLocation(program, 0, 'aPosition');
+        gl.linkProgram(program);
+        if (!gl.getProgramParameter(program, gl.LINK_STATUS)) {
+            throw new Error(`Shader program linking failed: ${gl.getProgramInfoLog(program)}`);
+        }
+        gl.deleteShader(vertexShader);
+        gl.deleteShader(fragmentShader);
+        return program;
+    }
+
+    private compileShader(type: number, source: string): WebGLShader {
+        const gl = this.gl;
+        const shader = gl.createShader(type);
+        if (!shader) {
+            throw new Error('Could not create shader');
+        }
+        gl.shaderSource(shader, source);
+        gl.compileShader(shader);
+        if (!gl.getShaderParameter(shader, gl.COMPILE_STATUS)) {
+            throw new Error(`Shader compilation failed: ${gl.getShaderInfoLog(shader)}`);
+        }
+        return shader;
+    }
+
+    release(): void {
+        const gl = this.gl;
+        gl.deleteTexture(this.frameTexture);
+        if (this.grayTexture) gl.deleteTexture(this.grayTexture);
+        if (this.edgeTexture) gl.deleteTexture(this.edgeTexture);
+        gl.deleteFramebuffer(this.grayFramebuffer);
+        gl.deleteFramebuffer(this.edgeFramebuffer);
+        gl.deleteFramebuffer(this.reductionFramebuffer);
+        gl.deleteBuffer(this.quadBuffer);
+        gl.deleteProgram(this.grayProgram);
+        gl.deleteProgram(this.sobelProgram);
+        gl.deleteProgram(this.displayProgram);
+    }
+}
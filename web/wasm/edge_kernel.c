@@ -0,0 +1,323 @@
+/*
+ * Portable edge-detection kernel shared by the web viewer and the Node benchmark.
+ *
+ * Pipeline: RGBA -> grayscale -> 3x3 Sobel -> either
+ *   EDGE_MODE_SOBEL: L2 magnitude > low (same rule as calculateSobelEdges in edgeKernel.ts)
+ *   EDGE_MODE_CANNY: L1 magnitude, non-maximum suppression, hysteresis(low, high)
+ *
+ * All buffers live in one region of linear memory that is sized by edge_prepare()
+ * and reused for every frame; edge_process() never allocates.
+ *
+ * Built for wasm32 with SIMD128 (see "build:wasm" in package.json). Without
+ * __wasm_simd128__ the scalar path is used, so the same file also builds natively.
+ *
+ * Parity with the native OpenCV path (cvtColor NV21->RGB->GRAY, Canny(50, 150)):
+ *   - grayscale uses OpenCV's fixed-point BT.601 weights; OpenCV versions with
+ *     other rounding differ by at most one gray level for a few RGB values;
+ *   - gradients, L1 magnitude, NMS direction test and tie-breaking follow
+ *     OpenCV's Canny (apertureSize 3, L2gradient = false);
+ *   - the 1-pixel frame border is always 0 here, whereas OpenCV replicates the
+ *     border, so NMS and hysteresis can also differ one pixel further in.
+ * The host test edge_kernel_parity (app/src/main/cpp/host) builds this file
+ * natively and checks that, outside a 2-pixel border band, at most 0.5% of
+ * OpenCV's edge pixels differ.
+ */
+
+#include <stdint.h>
+
+#ifdef __wasm_simd128__
+#include <wasm_simd128.h>
+#endif
+
+#if defined(__wasm__)
+#define EXPORT(name) __attribute__((export_name(name)))
+#else
+#include <stdlib.h>
+#define EXPORT(name)
+#endif
+
+#define EDGE_MODE_SOBEL 0
+#define EDGE_MODE_CANNY 1
+
+/* OpenCV cvtColor RGB2GRAY fixed-point coefficients (Q14) */
+#define GRAY_SHIFT 14
+#define GRAY_R 4899
+#define GRAY_G 9617
+#define GRAY_B 1868
+
+/* tan(22.5 deg) in Q15, as used by OpenCV's Canny */
+#define CANNY_TG22 13573
+
+static uint8_t *g_rgba;
+static uint8_t *g_gray;
+static int16_t *g_gx;
+static int16_t *g_gy;
+static int16_t *g_mag;
+static uint8_t *g_edges;
+static int32_t *g_stack;
+static int g_width;
+static int g_height;
+
+#if defined(__wasm__)
+extern unsigned char __heap_base;
+#endif
+
+/*
+ * Size the shared buffers for a width x height frame and return a pointer to
+ * the RGBA input region. Memory only grows when a larger frame is seen.
+ */
+EXPORT("edge_prepare")
+uint8_t *edge_prepare(int width, int height) {
+    uint32_t n = (uint32_t) width * (uint32_t) height;
+    /* rgba(4) + gray(1) + gx(2) + gy(2) + mag(2) + edges(1) + stack(4), 16-byte aligned */
+    uint32_t needed = n * 16 + 64;
+
+#if defined(__wasm__)
+    uintptr_t base = ((uintptr_t) &__heap_base + 15) & ~(uintptr_t) 15;
+    uintptr_t have = __builtin_wasm_memory_size(0) * 65536u;
+    if (base + needed > have) {
+        uintptr_t pages = (base + needed - have + 65535u) / 65536u;
+        if (__builtin_wasm_memory_grow(0, pages) == (uintptr_t) -1) {
+            return 0;
+        }
+    }
+    uint8_t *p = (uint8_t *) base;
+#else
+    static uint8_t *arena;
+    static uint32_t arenaSize;
+    if (needed > arenaSize) {
+        free(arena);
+        arena = (uint8_t *) aligned_alloc(16, (needed + 15) & ~15u);
+        if (!arena) {
+            arenaSize = 0;
+            return 0;
+        }
+        arenaSize = needed;
+    }
+    uint8_t *p = arena;
+#endif
+
+    g_rgba = p;              p += n * 4;
+    g_gx = (int16_t *) p;    p += n * 2;
+    g_gy = (int16_t *) p;    p += n * 2;
+    g_mag = (int16_t *) p;   p += n * 2;
+    g_stack = (int32_t *) p; p += n * 4;
+    g_gray = p;              p += n;
+    g_edges = p;
+    g_width = width;
+    g_height = height;
+    return g_rgba;
+}
+
+EXPORT("edge_output")
+uint8_t *edge_output(void) {
+    return g_edges;
+}
+
+static inline int gray_of(const uint8_t *px) {
+    return (px[0] * GRAY_R + px[1] * GRAY_G + px[2] * GRAY_B + (1 << (GRAY_SHIFT - 1))) >> GRAY_SHIFT;
+}
+
+static void grayscale(int n) {
+    int i = 0;
+#ifdef __wasm_simd128__
+    const v128_t mask = wasm_i32x4_splat(0xFF);
+    const v128_t round = wasm_i32x4_splat(1 << (GRAY_SHIFT - 1));
+    for (; i + 8 <= n; i += 8) {
+        v128_t lo = wasm_v128_load(g_rgba + i * 4);
+        v128_t hi = wasm_v128_load(g_rgba + i * 4 + 16);
+        v128_t ylo = wasm_i32x4_add(
+            wasm_i32x4_add(wasm_i32x4_mul(wasm_v128_and(lo, mask), wasm_i32x4_splat(GRAY_R)),
+                           wasm_i32x4_mul(wasm_v128_and(wasm_u32x4_shr(lo, 8), mask), wasm_i32x4_splat(GRAY_G))),
+            wasm_i32x4_add(wasm_i32x4_mul(wasm_v128_and(wasm_u32x4_shr(lo, 16), mask), wasm_i32x4_splat(GRAY_B)),
+                           round));
+        v128_t yhi = wasm_i32x4_add(
+            wasm_i32x4_add(wasm_i32x4_mul(wasm_v128_and(hi, mask), wasm_i32x4_splat(GRAY_R)),
+                           wasm_i32x4_mul(wasm_v128_and(wasm_u32x4_shr(hi, 8), mask), wasm_i32x4_splat(GRAY_G))),
+            wasm_i32x4_add(wasm_i32x4_mul(wasm_v128_and(wasm_u32x4_shr(hi, 16), mask), wasm_i32x4_splat(GRAY_B)),
+                           round));
+        v128_t y16 = wasm_i16x8_narrow_i32x4(wasm_u32x4_shr(ylo, GRAY_SHIFT), wasm_u32x4_shr(yhi, GRAY_SHIFT));
+        v128_t y8 = wasm_u8x16_narrow_i16x8(y16, y16);
+        wasm_v128_store64_lane(g_gray + i, y8, 0);
+    }
+#endif
+    for (; i < n; i++) {
+        g_gray[i] = (uint8_t) gray_of(g_rgba + i * 4);
+    }
+}
+
+/* Scalar Sobel for x in [x0, x1) of row y; returns the number of SOBEL-mode edges */
+static uint32_t sobel_span(int y, int x0, int x1, int mode, int32_t low2) {
+    const int w = g_width;
+    const uint8_t *a = g_gray + (y - 1) * w;
+    const uint8_t *b = g_gray + y * w;
+    const uint8_t *c = g_gray + (y + 1) * w;
+    uint32_t count = 0;
+    for (int x = x0; x < x1; x++) {
+        int gx = (a[x + 1] - a[x - 1]) + 2 * (b[x + 1] - b[x - 1]) + (c[x + 1] - c[x - 1]);
+        int gy = (c[x - 1] + 2 * c[x] + c[x + 1]) - (a[x - 1] + 2 * a[x] + a[x + 1]);
+        int idx = y * w + x;
+        g_gx[idx] = (int16_t) gx;
+        g_gy[idx] = (int16_t) gy;
+        if (mode == EDGE_MODE_SOBEL) {
+            uint8_t edge = gx * gx + gy * gy > low2;
+            g_edges[idx] = edge ? 255 : 0;
+            count += edge;
+        } else {
+            g_mag[idx] = (int16_t) ((gx < 0 ? -gx : gx) + (gy < 0 ? -gy : gy));
+        }
+    }
+    return count;
+}
+
+static uint32_t sobel(int mode, int32_t low2) {
+    const int w = g_width;
+    const int h = g_height;
+    uint32_t count = 0;
+
+    /* Border ring is never an edge */
+    for (int x = 0; x < w; x++) {
+        g_mag[x] = 0;
+        g_mag[(h - 1) * w + x] = 0;
+        g_edges[x] = 0;
+        g_edges[(h - 1) * w + x] = 0;
+    }
+
+    for (int y = 1; y < h - 1; y++) {
+        int idx0 = y * w;
+        g_mag[idx0] = 0;
+        g_mag[idx0 + w - 1] = 0;
+        g_edges[idx0] = 0;
+        g_edges[idx0 + w - 1] = 0;
+
+        int x = 1;
+#ifdef __wasm_simd128__
+        const uint8_t *a = g_gray + (y - 1) * w;
+        const uint8_t *b = g_gray + y * w;
+        const uint8_t *c = g_gray + (y + 1) * w;
+        const v128_t t2 = wasm_i32x4_splat(low2);
+        for (; x + 8 < w; x += 8) {
+            v128_t a0 = wasm_u16x8_load8x8(a + x - 1);
+            v128_t a1 = wasm_u16x8_load8x8(a + x);
+            v128_t a2 = wasm_u16x8_load8x8(a + x + 1);
+            v128_t b0 = wasm_u16x8_load8x8(b + x - 1);
+            v128_t b2 = wasm_u16x8_load8x8(b + x + 1);
+            v128_t c0 = wasm_u16x8_load8x8(c + x - 1);
+            v128_t c1 = wasm_u16x8_load8x8(c + x);
+            v128_t c2 = wasm_u16x8_load8x8(c + x + 1);
+
+            v128_t gx = wasm_i16x8_add(
+                wasm_i16x8_add(wasm_i16x8_sub(a2, a0), wasm_i16x8_sub(c2, c0)),
+                wasm_i16x8_shl(wasm_i16x8_sub(b2, b0), 1));
+            v128_t gy = wasm_i16x8_sub(
+                wasm_i16x8_add(wasm_i16x8_add(c0, c2), wasm_i16x8_shl(c1, 1)),
+                wasm_i16x8_add(wasm_i16x8_add(a0, a2), wasm_i16x8_shl(a1, 1)));
+
+            int idx = idx0 + x;
+            wasm_v128_store(g_gx + idx, gx);
+            wasm_v128_store(g_gy + idx, gy);
+
+            if (mode == EDGE_MODE_SOBEL) {
+                v128_t lo = wasm_i32x4_add(wasm_i32x4_extmul_low_i16x8(gx, gx),
+                                           wasm_i32x4_extmul_low_i16x8(gy, gy));
+                v128_t hi = wasm_i32x4_add(wasm_i32x4_extmul_high_i16x8(gx, gx),
+                                           wasm_i32x4_extmul_high_i16x8(gy, gy));
+                v128_t mlo = wasm_i32x4_gt(lo, t2);
+                v128_t mhi = wasm_i32x4_gt(hi, t2);
+                count += __builtin_popcount(wasm_i32x4_bitmask(mlo)) + __builtin_popcount(wasm_i32x4_bitmask(mhi));
+                v128_t m16 = wasm_i16x8_narrow_i32x4(mlo, mhi);
+                wasm_v128_store64_lane(g_edges + idx, wasm_i8x16_narrow_i16x8(m16, m16), 0);
+            } else {
+                wasm_v128_store(g_mag + idx, wasm_i16x8_add(wasm_i16x8_abs(gx), wasm_i16x8_abs(gy)));
+            }
+        }
+#endif
+        count += sobel_span(y, x, w - 1, mode, low2);
+    }
+    return count;
+}
+
+/* Non-maximum suppression + hysteresis, following OpenCV's Canny rules */
+static uint32_t canny(int low, int high) {
+    const int w = g_width;
+    const int h = g_height;
+    uint8_t *map = g_edges; /* 0 = none, 1 = weak, 2 = strong */
+    int32_t top = 0;
+
+    for (int y = 1; y < h - 1; y++) {
+        for (int x = 1; x < w - 1; x++) {
+            int idx = y * w + x;
+            int m = g_mag[idx];
+            map[idx] = 0;
+            if (m <= low) {
+                continue;
+            }
+            int gx = g_gx[idx];
+            int gy = g_gy[idx];
+            int xs = gx < 0 ? -gx : gx;
+            int ys = (gy < 0 ? -gy : gy) << 15;
+            int tg22x = xs * CANNY_TG22;
+            int isMax;
+            if (ys < tg22x) {
+                isMax = m > g_mag[idx - 1] && m >= g_mag[idx + 1];
+            } else {
+                int tg67x = tg22x + (xs << 16);
+                if (ys > tg67x) {
+                    isMax = m > g_mag[idx - w] && m >= g_mag[idx + w];
+                } else {
+                    int s = (gx ^ gy) < 0 ? -1 : 1;
+                    isMax = m > g_mag[idx - w - s] && m > g_mag[idx + w + s];
+                }
+            }
+            if (!isMax) {
+                continue;
+            }
+            if (m > high) {
+                map[idx] = 2;
+                g_stack[top++] = idx;
+            } else {
+                map[idx] = 1;
+            }
+        }
+    }
+
+    /* Grow strong edges into connected weak pixels */
+    while (top > 0) {
+        int idx = g_stack[--top];
+        const int neighbours[8] = { -w - 1, -w, -w + 1, -1, 1, w - 1, w, w + 1 };
+        for (int k = 0; k < 8; k++) {
+            int j = idx + neighbours[k];
+            if (map[j] == 1) {
+                map[j] = 2;
+                g_stack[top++] = j;
+            }
+        }
+    }
+
+    uint32_t count = 0;
+    const int n = w * h;
+    for (int i = 0; i < n; i++) {
+        uint8_t edge = map[i] == 2;
+        map[i] = edge ? 255 : 0;
+        count += edge;
+    }
+    return count;
+}
+
+/*
+ * Run the kernel on the RGBA frame previously written at edge_prepare()'s
+ * pointer. The 0/255 edge mask is left at edge_output(); returns the number
+ * of edge pixels.
+ */
+EXPORT("edge_process")
+uint32_t edge_process(int mode, int low, int high) {
+    if (!g_rgba || g_width < 3 || g_height < 3) {
+        return 0;
+    }
+    grayscale(g_width * g_height);
+    uint32_t count = sobel(mode, low * low);
+    if (mode == EDGE_MODE_CANNY) {
+        count = canny(low, high);
+    }
+    return count;
+}